@@ -0,0 +1,53 @@
+package qp;
+
+import java.io.*;
+
+import qp.utils.*;
+/*
+  builds the B+-tree index of one column of a table, which is written
+  to <tablename>.<column>.idx next to the table. The table must be
+  written in pages by ConvertTxtToTbl. The index is not updated with
+  the table: build it again whenever the table is converted again.
+*/
+
+public class BuildIndex {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("usage: java BuildIndex <tablename> <column> \n creates <tablename>.<column>.idx file");
+            System.exit(1);
+        }
+        String tblname = args[0];
+        String colname = args[1];
+        String tblfile = tblname + ".tbl";
+
+        if (!PageFormat.isPageFile(tblfile)) {
+            System.err.println("BuildIndex: " + tblfile + " is not written in pages, convert it with ConvertTxtToTbl");
+            System.exit(1);
+        }
+
+        Schema schema = null;
+        try {
+            ObjectInputStream ins = new ObjectInputStream(new FileInputStream(tblname + ".md"));
+            schema = (Schema) ins.readObject();
+            ins.close();
+        } catch (ClassNotFoundException ce) {
+            System.out.println("class not found exception --- error in schema object file");
+            System.exit(1);
+        }
+
+        int col = schema.indexOf(new Attribute(tblname, colname));
+        if (col < 0) {
+            System.err.println("BuildIndex: no column " + colname + " in " + tblname);
+            System.exit(1);
+        }
+
+        String idxfile = BPlusTree.fileName(tblname, colname);
+        BPlusTree.build(tblfile, schema, col, idxfile);
+
+        BPlusTree tree = new BPlusTree(idxfile);
+        System.out.println(idxfile + ": " + tree.getNumEntries() + " entries, "
+                + tree.getNumLeaves() + " leaves, height " + tree.getHeight());
+        tree.close();
+    }
+}
@@ -9,17 +9,53 @@ import qp.utils.*;
   attributes of the relation. each subsequent line represents 1
   tuple of the relation. also assume that the fields of each line
   is delimited by tabs ("\t")
+
+  the table is written as fixed-width pages of <pagesize> bytes, see
+  PageFormat. Use the same page size as the queries to be run so that
+  every page on disk is exactly one batch.
+
+  the smallest and largest value of every column in every page are
+  written to <tablename>.zone, see ZoneMap.
+
+  with -columns, every column is also written to a file of its own,
+  <tablename>.<column>.col, so that a scan needing only some of the
+  columns reads only their files.
+
+  with -dictionary, the distinct values of every STRING column are
+  written to <tablename>.<column>.dict, and the pages store the code
+  of each value instead of its characters, see StringDictionary. The
+  text file is then read twice.
 */
 
 public class ConvertTxtToTbl {
 
+    static final int DEFAULT_PAGE_SIZE = 4096;
+
     public static void main(String[] args) throws IOException {
         // check the arguments
-        if (args.length != 1) {
-            System.out.println("usage: java ConvertTxtToTbl <tablename> \n creats <tablename>.tbl files");
+        boolean columns = false;
+        boolean dictionary = false;
+        String pageSizeArg = null;
+        boolean badArgs = args.length == 0;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-columns")) {
+                columns = true;
+            } else if (args[i].equals("-dictionary")) {
+                dictionary = true;
+            } else if (pageSizeArg == null && !args[i].startsWith("-")) {
+                pageSizeArg = args[i];
+            } else {
+                badArgs = true;
+            }
+        }
+        if (badArgs) {
+            System.out.println("usage: java ConvertTxtToTbl <tablename> [pagesize] [-columns] [-dictionary] \n creats <tablename>.tbl files");
+            System.out.println(" -columns also writes every column to <tablename>.<column>.col");
+            System.out.println(" -dictionary stores the STRING columns as codes of <tablename>.<column>.dict");
             System.exit(1);
         }
         String tblname = args[0];
+        int pageSize = (pageSizeArg != null) ? Integer.parseInt(pageSizeArg) : DEFAULT_PAGE_SIZE;
         String mdfile = tblname + ".md";
         String tblfile = tblname + ".tbl";
 
@@ -27,7 +63,6 @@ public class ConvertTxtToTbl {
         /** open the input and output streams **/
         BufferedReader in = new BufferedReader(new FileReader(tblname + ".txt"));
         //ObjectOutputStream outmd = new ObjectOutputStream(new FileOutputStream(mdfile));
-        ObjectOutputStream outtbl = new ObjectOutputStream(new FileOutputStream(tblfile));
 
         /** First Line is METADATA **/
         int linenum = 0;
@@ -121,45 +156,109 @@ public class ConvertTxtToTbl {
             System.exit(1);
         }
 
-        boolean flag = false;
-        StringTokenizer tokenizer;
-        while ((line = in.readLine()) != null) {
-            linenum++;
-            tokenizer = new StringTokenizer(line);
-            //int tokencount = tokenizer.countTokens();
-            //System.out.println("numtokens= "+tokenizer.countTokens()+"numcols="+numCols);
-            //if(tokencount != numCols){
-            //System.err.println("Incomplete tuple: linenum= "+linenum);
-            //System.exit(1);
-            //}
-
-            Vector data = new Vector();
-            int attrIndex = 0;
-
-            while (tokenizer.hasMoreElements()) {
-                String dataElement = tokenizer.nextToken();
-                int datatype = schema.typeOf(attrIndex);
-                //System.out.print("Convert :"+ dataElement+"  "+datatype);
-                if (datatype == Attribute.INT) {
-                    //System.out.println("Integer data:"+dataElement);
-                    data.add(Integer.valueOf(dataElement));
-                } else if (datatype == Attribute.REAL) {
-                    data.add(Float.valueOf(dataElement));
-                } else if (datatype == Attribute.STRING) {
-                    data.add(dataElement);
-                } else {
-                    System.err.println("Invalid data type");
-                    System.exit(1);
+        /** first pass, collecting the values of the STRING columns **/
+        StringDictionary[] dicts = null;
+        if (dictionary) {
+            dicts = buildDictionaries(in, schema);
+            in.close();
+            in = new BufferedReader(new FileReader(tblname + ".txt"));
+            for (int i = 0; i < dicts.length; i++) {
+                if (dicts[i] != null) {
+                    dicts[i].write(StringDictionary.fileName(tblname, schema.getAttribute(i).getColName()));
                 }
-                attrIndex++;
             }
+        }
+
+        TableWriter outtbl = new TableWriter(tblfile, schema, pageSize, dicts);
+        ZoneMap zones = new ZoneMap(schema, outtbl.getFormat().getTuplesPerPage());
+        TableWriter[] outcols = new TableWriter[columns ? schema.getNumCols() : 0];
+        for (int i = 0; i < outcols.length; i++) {
+            Attribute attr = schema.getAttribute(i);
+            outcols[i] = new TableWriter(PageFormat.columnFileName(tblname, attr.getColName()),
+                    PageFormat.columnSchema(attr), pageSize,
+                    dicts != null ? new StringDictionary[]{dicts[i]} : null);
+        }
+
+        while ((line = in.readLine()) != null) {
+            linenum++;
+            Vector data = parseLine(line, schema);
             Tuple tuple = new Tuple(data);
-            outtbl.writeObject(tuple);
+            outtbl.write(tuple);
+            zones.add(tuple);
+            for (int i = 0; i < outcols.length; i++) {
+                Vector value = new Vector();
+                value.add(data.elementAt(i));
+                outcols[i].write(new Tuple(value));
+            }
         }
         outtbl.close();
+        for (int i = 0; i < outcols.length; i++) {
+            outcols[i].close();
+        }
+        zones.write(ZoneMap.fileName(tblname));
 
         in.close();
     }
+
+    /** The values of one line of the text file **/
+
+    static Vector parseLine(String line, Schema schema) {
+        StringTokenizer tokenizer = new StringTokenizer(line);
+        //int tokencount = tokenizer.countTokens();
+        //System.out.println("numtokens= "+tokenizer.countTokens()+"numcols="+numCols);
+        //if(tokencount != numCols){
+        //System.err.println("Incomplete tuple: linenum= "+linenum);
+        //System.exit(1);
+        //}
+
+        Vector data = new Vector();
+        int attrIndex = 0;
+
+        while (tokenizer.hasMoreElements()) {
+            String dataElement = tokenizer.nextToken();
+            int datatype = schema.typeOf(attrIndex);
+            //System.out.print("Convert :"+ dataElement+"  "+datatype);
+            if (datatype == Attribute.INT) {
+                //System.out.println("Integer data:"+dataElement);
+                data.add(Integer.valueOf(dataElement));
+            } else if (datatype == Attribute.REAL) {
+                data.add(Float.valueOf(dataElement));
+            } else if (datatype == Attribute.STRING) {
+                data.add(dataElement);
+            } else {
+                System.err.println("Invalid data type");
+                System.exit(1);
+            }
+            attrIndex++;
+        }
+        return data;
+    }
+
+    /** The dictionary of every STRING column, null for the other columns **/
+
+    static StringDictionary[] buildDictionaries(BufferedReader in, Schema schema) throws IOException {
+        int numCols = schema.getNumCols();
+        List<Set<String>> values = new ArrayList<>();
+        for (int i = 0; i < numCols; i++) {
+            values.add(schema.typeOf(i) == Attribute.STRING ? new HashSet<>() : null);
+        }
+        String line;
+        while ((line = in.readLine()) != null) {
+            Vector data = parseLine(line, schema);
+            for (int i = 0; i < data.size(); i++) {
+                if (values.get(i) != null) {
+                    values.get(i).add((String) data.elementAt(i));
+                }
+            }
+        }
+        StringDictionary[] dicts = new StringDictionary[numCols];
+        for (int i = 0; i < numCols; i++) {
+            if (values.get(i) != null) {
+                dicts[i] = new StringDictionary(values.get(i));
+            }
+        }
+        return dicts;
+    }
 }
 
 
@@ -6,6 +6,7 @@ package qp;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Vector;
 
 import qp.utils.*;
 import qp.operators.*;
@@ -15,12 +16,14 @@ import qp.parser.*;
 public class QueryMain {
 
     private static PrintWriter out;
+    private static boolean printStats = false;  // print the I/O and buffer counters after the query
 
     public static void main(String[] args) {
-        if (args.length != 2) {
-            System.out.println("usage: java QueryMain <queryfilename> <resultfile>");
+        if (args.length < 2) {
+            printUsage();
             System.exit(1);
         }
+        parseOptions(args);
 
         /** Enter the number of bytes per page **/
         System.out.println("enter the number of bytes per page");
@@ -61,14 +64,31 @@ public class QueryMain {
         SQLQuery sqlquery = p.getSQLQuery();
         int numOrderBy = sqlquery.getOrderByList().size();
         int numJoin = sqlquery.getNumJoin();
-        numJoin = Math.max(numJoin, numOrderBy > 0 ? 1: 0);
+        numJoin = Math.max(numJoin, (numOrderBy > 0 || sqlquery.isDistinct() || sqlquery.isAggregated()) ? 1: 0);
+
+        /* Every selected attribute of a grouped query is grouped on or aggregated */
+        if (sqlquery.isAggregated()) {
+            Vector projectlist = sqlquery.getProjectList();
+            if (projectlist.isEmpty()) {
+                System.out.println("SELECT * cannot be grouped");
+                System.exit(1);
+            }
+            for (int i = 0; i < projectlist.size(); i++) {
+                Attribute attr = (Attribute) projectlist.elementAt(i);
+                if (!attr.isAggregated() && !containsAttribute(sqlquery.getGroupByList(), attr)) {
+                    System.out.println(attr.getTabName() + "." + attr.getColName()
+                            + " must be in the GROUP BY or in an aggregate function");
+                    System.exit(1);
+                }
+            }
+        }
 
         /*
          If there are joins then assigns buffers to each join operator
          while preparing the plan
 
-         As buffer manager is not implemented, just input the number of
-         buffers available
+         The pages of the files read by the query are held in a
+         BufferPool sized once the buffers are shared out, see below
         */
         if (numJoin != 0 || numOrderBy != 0) {
             System.out.println("enter the number of buffers available");
@@ -83,7 +103,7 @@ public class QueryMain {
 
         // Check the number of buffers available is enough or not **/
         int numBuff = BufferManager.getBuffersPerJoin();
-        if ((numJoin > 0 || numOrderBy > 0) && numBuff < 3) {
+        if (numJoin > 0 && numBuff < 3) {
             System.out.println("Minimum 3 buffers are required per a join operator ");
             System.exit(1);
         }
@@ -108,21 +128,82 @@ public class QueryMain {
         RandomOptimizer ro = new RandomOptimizer(sqlquery);
         Operator logicalRoot = ro.getOptimizedPlan();
         */
+        /*
+         Use the greedy optimizer to get a left-deep plan with the smallest
+         relations first
+
         GreedyOptimizer go = new GreedyOptimizer(sqlquery);
         Operator logicalRoot = go.getOptimizedPlan();
+        */
+        DynamicProgrammingOptimizer dpo = new DynamicProgrammingOptimizer(sqlquery);
+        Operator logicalRoot = dpo.getOptimizedPlan();
         if (logicalRoot == null) {
             System.out.println("root is null");
             System.exit(1);
         }
 
+        /* With an ORDER BY the duplicates are dropped by its sort */
+        boolean sortDistinct = false;
+        if (numOrderBy > 0 && logicalRoot.getOpType() == OpType.DISTINCT) {
+            logicalRoot = ((Distinct) logicalRoot).getBase();
+            sortDistinct = true;
+        }
+
+        /* The ORDER BY needs no sort if the plan leaves the result in its
+           order, as a sort-merge join on the first ORDER BY attribute does */
+        List<Order> orders = new ArrayList<>(sqlquery.getOrderByList());
+        boolean ordered = numOrderBy > 0 && !sortDistinct && Order.satisfies(logicalRoot.getOrder(), orders);
+
+        /* With a LIMIT, the ORDER BY keeps the first rows in a heap instead
+           of sorting, if they fit in the buffers the plan leaves at its minimum */
+        int limit = sqlquery.getLimit();
+        boolean topN = numOrderBy > 0 && sqlquery.hasLimit() && !sortDistinct && !ordered
+                && TopN.isApplicable(limit, logicalRoot.getSchema(), BufferManager.getNumBuffers(),
+                        BufferManager.getMinBuffers(logicalRoot, false));
+        if (topN) {
+            BufferManager.reserve(TopN.numPages(limit, logicalRoot.getSchema()));
+        }
+
+        /* Share the buffers out among the joins, the distinct and the sort of the ORDER BY.
+           The BufferPool holds the input pages those operators count for the
+           tables they read, and the buffers no operator is given */
+        if (numJoin != 0 || numOrderBy != 0) {
+            boolean sorted = numOrderBy > 0 && !topN && !ordered;
+            int minBuff = BufferManager.getMinBuffers(logicalRoot, sorted);
+            if (BufferManager.getNumBuffers() < minBuff) {
+                /* Block nested loop joins and a plain sort need the fewest buffers */
+                DynamicProgrammingOptimizer.blockNested(logicalRoot);
+                ordered = false;
+                sorted = numOrderBy > 0;
+                int fallbackBuff = BufferManager.getMinBuffers(logicalRoot, sorted);
+                if (BufferManager.getNumBuffers() < fallbackBuff) {
+                    System.out.println("Minimum " + Math.min(minBuff, fallbackBuff) + " buffers are required for the "
+                            + "joins, distinct, aggregate and sort of this query, " + BufferManager.getNumBuffers()
+                            + " are given");
+                    System.exit(1);
+                }
+            }
+            BufferManager.allocate(logicalRoot, sorted);
+            BufferPool.setNumFrames(BufferManager.countFrames(logicalRoot) + BufferManager.getSpareBuffers());
+        }
+
         /* Preparing the execution plan */
         Operator root = RandomOptimizer.makeExecPlan(logicalRoot);
 
-        if (!sqlquery.getOrderByList().isEmpty()) {
+        if (topN) {
+            root = placeLimit(root, orders, limit);
+        } else if (!orders.isEmpty() && !ordered) {
             Schema schema = root.getSchema();
-            List<Order> orders = new ArrayList<>(sqlquery.getOrderByList());
-            root = new ExternalSort(root, orders, numBuff);
+            ExternalSort sort = new ExternalSort(root, orders, BufferManager.getBuffersForSort());
+            sort.setDistinct(sortDistinct);
+            root = sort;
             root.setSchema(schema);
+            if (sqlquery.hasLimit()) {
+                root = new Limit(sort, limit, OpType.LIMIT);
+                root.setSchema(schema);
+            }
+        } else if (sqlquery.hasLimit()) {
+            root = placeLimit(root, null, limit);
         }
 
         /* Print final Plan */
@@ -178,17 +259,69 @@ public class QueryMain {
         long endTime = System.currentTimeMillis();
         double executionTime = (endTime - startTime) / 1000.0;
         System.out.println("Execution time = " + executionTime);
+        if (printStats) {
+            printStats();
+        }
+    }
+
+    private static void printStats() {
+        System.out.println("Table bytes read = " + TableReader.getBytesRead()
+                + ", mapped = " + TableReader.getBytesMapped());
+        System.out.println("Sort merge comparisons = " + ExternalSort.getMergeComparisons());
+        System.out.println("Prefetch stall time = " + PrefetchReader.getStallTime() + " ms");
+        System.out.println("Pages skipped by zone maps = " + Scan.getPagesSkipped());
+        System.out.println("Buffer pool hits = " + BufferPool.getHits() + ", misses = " + BufferPool.getMisses());
+    }
+
+    private static void printUsage() {
+        System.out.println("usage: java QueryMain <queryfilename> <resultfile> [options]");
+        System.out.println("options:");
+        System.out.println("  -mmap        memory map the table files instead of reading them page by page");
+        System.out.println("  -vectorized  pass column batches through selections and projections");
+        System.out.println("  -replacement generate the initial sorted runs by replacement selection");
+        System.out.println("  -parallelsort <threads>  sort runs and merge groups of runs on that many threads");
+        System.out.println("  -prefetch <pages>  read that many pages ahead in scans, inner joins and sort runs");
+        System.out.println("  -policy <lru|clock|lruk|mru>  page replacement policy of the buffer pool");
+        System.out.println("  -stats       print the I/O, sort and buffer pool counters after the query");
+    }
+
+    /** Options following the query and result file names apply to this query only **/
+
+    private static void parseOptions(String[] args) {
+        for (int i = 2; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("-mmap")) {
+                Scan.setScanMode(Scan.MMAP);
+            } else if (option.equals("-vectorized")) {
+                Operator.setVectorized(true);
+            } else if (option.equals("-replacement")) {
+                ExternalSort.setRunGeneration(ExternalSort.REPLACEMENT_SELECTION);
+            } else if (option.equals("-parallelsort") && i + 1 < args.length) {
+                ExternalSort.setParallelism(Integer.parseInt(args[++i]));
+            } else if (option.equals("-prefetch") && i + 1 < args.length) {
+                PrefetchReader.setDepth(Integer.parseInt(args[++i]));
+            } else if (option.equals("-policy") && i + 1 < args.length
+                    && ReplacementPolicy.forName(args[i + 1]) != null) {
+                BufferPool.setPolicy(ReplacementPolicy.forName(args[++i]));
+            } else if (option.equals("-stats")) {
+                printStats = true;
+            } else {
+                System.out.println("Unknown option: " + option);
+                printUsage();
+                System.exit(1);
+            }
+        }
     }
 
     private static void printTuple(Tuple t, PrintWriter out) {
-        for (int i = 0; i < t.data().size(); i++) {
-            Object data = t.dataAt(i);
-            if (data instanceof Integer) {
-                out.print(((Integer) data).intValue() + "\t");
-            } else if (data instanceof Float) {
-                out.print(((Float) data).floatValue() + "\t");
+        for (int i = 0; i < t.size(); i++) {
+            int type = t.typeAt(i);
+            if (type == Attribute.INT) {
+                out.print(t.getInt(i) + "\t");
+            } else if (type == Attribute.REAL) {
+                out.print(t.getFloat(i) + "\t");
             } else {
-                out.print(((String) data) + "\t");
+                out.print(t.getString(i) + "\t");
             }
         }
         out.println();
@@ -197,10 +330,49 @@ public class QueryMain {
     private static void printSchema(Schema schema, PrintWriter out) {
         for (int i = 0; i < schema.getNumCols(); i++) {
             Attribute attr = schema.getAttribute(i);
-            out.print(attr.getTabName() + '.' + attr.getColName());
+            if (attr.isAggregated()) {
+                out.print(attr.getAggName() + "(" + attr.getTabName() + '.' + attr.getColName() + ")");
+            } else {
+                out.print(attr.getTabName() + '.' + attr.getColName());
+            }
         }
         out.println();
     }
+
+    /** Puts a Limit, or a TopN if there are sort orders, below the
+     ** projections at the top of the plan. A projection returns a row
+     ** per input row, so the rows cut by the limit are not projected
+     **/
+
+    private static Operator placeLimit(Operator root, List<Order> orders, int limit) {
+        Project parent = null;
+        Operator node = root;
+        while (node.getOpType() == OpType.PROJECT) {
+            parent = (Project) node;
+            node = parent.getBase();
+        }
+        Operator op;
+        if (orders == null) {
+            op = new Limit(node, limit, OpType.LIMIT);
+        } else {
+            op = new TopN(node, orders, limit, OpType.TOPN);
+        }
+        op.setSchema(node.getSchema());
+        if (parent == null) {
+            return op;
+        }
+        parent.setBase(op);
+        return root;
+    }
+
+    private static boolean containsAttribute(Vector attrs, Attribute attr) {
+        for (int i = 0; i < attrs.size(); i++) {
+            if (attr.equals((Attribute) attrs.elementAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
 
 
@@ -0,0 +1,399 @@
+/**
+ * Groups the tuples of its input and computes the aggregate functions
+ * of every group, for GROUP BY and the aggregates of the SELECT list
+ **/
+
+package qp.operators;
+
+import qp.utils.Attribute;
+import qp.utils.Batch;
+import qp.utils.Schema;
+import qp.utils.Tuple;
+import qp.utils.TupleLayout;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Hash aggregation: the groups are kept in a hash table of B-2 pages,
+ * each with the running COUNT, SUM, MIN and MAX of its aggregated columns,
+ * and returned once the input is used up.
+ *
+ * Once the table is full, a tuple of a group already in the table is
+ * still added to it, while a tuple of a new group is written to one of
+ * B-1 partition files by the hash of its group. A group is thus either
+ * all in the table or all in one partition, and every partition is
+ * aggregated the same way in turn, hashing on other bits if its groups
+ * do not fit either.
+ *
+ * Without a GROUP BY the whole input is a single group, and an empty
+ * input has no group, so the result is empty.
+ */
+public class Aggregate extends Operator {
+
+    private static final int MAX_LEVELS = 8;   // partitioning depth before keeping the groups in memory anyway
+
+    private static int NUMBER_OF_INSTANCES = 0;
+
+    private Operator base;
+    private Vector attrSet;     // attributes of the SELECT list, aggregated or grouped on
+    private Vector groupBy;     // attributes of the GROUP BY
+    private int numBuff;
+
+    private int instanceNumber;
+    private int batchSize;
+    private int inBatchSize;    // tuples per page of the input, as written to the partitions
+
+    private int[] groupIndex;   // index in the input of each GROUP BY attribute
+    private int[] attrIndex;    // index in the input of the column of each output attribute
+    private int[] aggType;      // aggregate function of each output attribute
+    private TupleLayout layout;
+
+    // Variables used during the execution
+    private Iterator<Group> output;           // groups of the input or partition in memory
+    private SpillPartitions partitions;       // partitions still to be aggregated
+
+
+    public Aggregate(Operator base, Vector as, Vector groupBy, int type) {
+        super(type);
+        this.base = base;
+        this.attrSet = as;
+        this.groupBy = groupBy;
+        this.instanceNumber = NUMBER_OF_INSTANCES++;
+    }
+
+    public void setBase(Operator base) {
+        this.base = base;
+    }
+
+    public Operator getBase() {
+        return base;
+    }
+
+    public Vector getAggAttr() {
+        return attrSet;
+    }
+
+    public Vector getGroupBy() {
+        return groupBy;
+    }
+
+    public void setNumBuff(int num) {
+        this.numBuff = num;
+    }
+
+    public int getNumBuff() {
+        return numBuff;
+    }
+
+
+    /**
+     * Schema of the result, the attributes of the SELECT list in order.
+     * A grouped attribute is the one of the input, an aggregated one is
+     * a copy with its aggregate function: COUNT is an INT, AVG a REAL,
+     * and SUM, MIN and MAX keep the type of the column.
+     */
+    public static Schema outputSchema(Schema baseSchema, Vector attrs) {
+        Vector newVec = new Vector();
+        int newtupsize = 0;
+        for (int i = 0; i < attrs.size(); i++) {
+            Attribute resAttr = (Attribute) attrs.elementAt(i);
+            Attribute baseAttr = baseSchema.getAttribute(baseSchema.indexOf(resAttr.getBaseAttribute()));
+            Attribute outAttr = baseAttr;
+            if (resAttr.isAggregated()) {
+                outAttr = (Attribute) baseAttr.clone();
+                outAttr.setAggType(resAttr.getAggType());
+                if (resAttr.getAggType() == Attribute.COUNT) {
+                    outAttr.setType(Attribute.INT);
+                    outAttr.setAttrSize(4);
+                } else if (resAttr.getAggType() == Attribute.AVG) {
+                    outAttr.setType(Attribute.REAL);
+                    outAttr.setAttrSize(4);
+                }
+            }
+            newVec.add(outAttr);
+            newtupsize = newtupsize + outAttr.getAttrSize();
+        }
+        Schema newsche = new Schema(newVec);
+        newsche.setTupleSize(newtupsize);
+        return newsche;
+    }
+
+
+    public boolean open() {
+        batchSize = Batch.getPageSize() / schema.getTupleSize();
+        Schema baseSchema = base.getSchema();
+        inBatchSize = Batch.getPageSize() / baseSchema.getTupleSize();
+
+        groupIndex = new int[groupBy.size()];
+        for (int i = 0; i < groupBy.size(); i++) {
+            groupIndex[i] = baseSchema.indexOf((Attribute) groupBy.elementAt(i));
+        }
+        attrIndex = new int[attrSet.size()];
+        aggType = new int[attrSet.size()];
+        for (int i = 0; i < attrSet.size(); i++) {
+            Attribute attr = (Attribute) attrSet.elementAt(i);
+            attrIndex[i] = baseSchema.indexOf(attr.getBaseAttribute());
+            aggType[i] = attr.getAggType();
+            if ((aggType[i] == Attribute.SUM || aggType[i] == Attribute.AVG)
+                    && baseSchema.typeOf(attrIndex[i]) == Attribute.STRING) {
+                System.err.println("Aggregate: Cannot " + attr.getAggName() + " the strings of "
+                        + attr.getTabName() + "." + attr.getColName());
+                return false;
+            }
+        }
+        layout = TupleLayout.of(schema);
+
+        if (!base.open()) {
+            return false;
+        }
+        output = null;
+        partitions = new SpillPartitions("AGtemp-" + instanceNumber + "-", inBatchSize);
+        try {
+            aggregate(base::next, 0);
+        } catch (IOException e) {
+            System.err.println("Aggregate: Error in writing the partitions");
+            return false;
+        }
+        return true;
+    }
+
+    public Batch next() {
+        Batch outbatch = new Batch(batchSize);
+        try {
+            while (!outbatch.isFull()) {
+                if (output != null && output.hasNext()) {
+                    outbatch.add(output.next().result());
+                    continue;
+                }
+                output = null;
+                if (!partitions.hasPending()) {
+                    break;
+                }
+                partitions.readNext(this::aggregate);
+            }
+        } catch (IOException e) {
+            System.err.println("Aggregate: Error in reading the partitions");
+            System.exit(1);
+        }
+        if (outbatch.isEmpty()) {
+            close();
+            return null;
+        }
+        return outbatch;
+    }
+
+    public boolean close() {
+        if (partitions != null) {
+            partitions.clear();
+        }
+        output = null;
+        return true;
+    }
+
+
+    /**
+     * Adds the tuples to the groups of the hash table. Once the table
+     * holds B-2 pages of groups, the tuples of the other groups are
+     * written to the partitions, which are aggregated later.
+     */
+    private void aggregate(SpillPartitions.BatchSource source, int level) throws IOException {
+        int capacity = Math.max(1, numBuff - 2) * batchSize;
+        Map<GroupKey, Group> table = new HashMap<>();
+
+        Batch batch;
+        while ((batch = source.next()) != null) {
+            for (int i = 0; i < batch.size(); i++) {
+                Tuple tuple = batch.elementAt(i);
+                GroupKey key = new GroupKey(tuple);
+                Group group = table.get(key);
+                if (group == null) {
+                    if (table.size() >= capacity && level < MAX_LEVELS) {
+                        if (!partitions.isWriting()) {
+                            partitions.start(Math.max(2, numBuff - 1), level);
+                        }
+                        partitions.write(tuple, key.hash);
+                        continue;
+                    }
+                    group = new Group(tuple);
+                    table.put(key, group);
+                }
+                group.add(tuple);
+            }
+        }
+
+        if (partitions.isWriting()) {
+            partitions.finish();
+        }
+        output = table.values().iterator();
+    }
+
+
+    /** The GROUP BY columns of a tuple as a hash table key **/
+
+    private class GroupKey {
+        final Tuple tuple;
+        final int hash;
+
+        GroupKey(Tuple tuple) {
+            this.tuple = tuple;
+            int h = 1;
+            for (int i = 0; i < groupIndex.length; i++) {
+                int col = groupIndex[i];
+                int type = tuple.typeAt(col);
+                int v;
+                if (type == Attribute.INT) {
+                    v = tuple.getInt(col);
+                } else if (type == Attribute.REAL) {
+                    v = Float.floatToIntBits(tuple.getFloat(col));
+                } else {
+                    v = tuple.getString(col).hashCode();
+                }
+                h = 31 * h + v;
+            }
+            this.hash = h;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof GroupKey)) {
+                return false;
+            }
+            GroupKey other = (GroupKey) o;
+            if (other.hash != hash) {
+                return false;
+            }
+            for (int i = 0; i < groupIndex.length; i++) {
+                if (Tuple.compareTuples(tuple, other.tuple, groupIndex[i]) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    /** Running aggregates of a group, one slot per output attribute **/
+
+    private class Group {
+        final Tuple first;      // first tuple of the group, holds its GROUP BY values
+        long count;
+        final long[] intSums;
+        final double[] realSums;
+        final Tuple[] extremes; // tuple with the MIN or MAX so far
+
+        Group(Tuple first) {
+            this.first = first;
+            this.intSums = new long[attrIndex.length];
+            this.realSums = new double[attrIndex.length];
+            this.extremes = new Tuple[attrIndex.length];
+        }
+
+        void add(Tuple tuple) {
+            count++;
+            for (int i = 0; i < attrIndex.length; i++) {
+                int col = attrIndex[i];
+                switch (aggType[i]) {
+                    case Attribute.SUM:
+                    case Attribute.AVG:
+                        if (tuple.typeAt(col) == Attribute.INT) {
+                            intSums[i] += tuple.getInt(col);
+                        } else {
+                            realSums[i] += tuple.getFloat(col);
+                        }
+                        break;
+                    case Attribute.MIN:
+                        if (extremes[i] == null || Tuple.compareTuples(tuple, extremes[i], col) < 0) {
+                            extremes[i] = tuple;
+                        }
+                        break;
+                    case Attribute.MAX:
+                        if (extremes[i] == null || Tuple.compareTuples(tuple, extremes[i], col) > 0) {
+                            extremes[i] = tuple;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        Tuple result() {
+            Tuple out = Tuple.allocate(layout);
+            for (int i = 0; i < attrIndex.length; i++) {
+                int col = attrIndex[i];
+                boolean intColumn = first.typeAt(col) == Attribute.INT;
+                switch (aggType[i]) {
+                    case Attribute.COUNT:
+                        out.setInt(i, (int) count);
+                        break;
+                    case Attribute.SUM:
+                        if (intColumn) {
+                            out.setInt(i, intSum(i));
+                        } else {
+                            out.setFloat(i, (float) realSums[i]);
+                        }
+                        break;
+                    case Attribute.AVG:
+                        double sum = intColumn ? intSums[i] : realSums[i];
+                        out.setFloat(i, (float) (sum / count));
+                        break;
+                    case Attribute.MIN:
+                    case Attribute.MAX:
+                        copyColumn(extremes[i], col, out, i);
+                        break;
+                    default:
+                        copyColumn(first, col, out, i);
+                        break;
+                }
+            }
+            return out;
+        }
+
+        /** SUM of the INT column of slot i, which is an INT as well,
+         ** so a sum beyond its range stops the query
+         **/
+
+        private int intSum(int i) {
+            try {
+                return Math.toIntExact(intSums[i]);
+            } catch (ArithmeticException e) {
+                Attribute attr = (Attribute) attrSet.elementAt(i);
+                System.err.println("Aggregate: SUM of " + attr.getTabName() + "." + attr.getColName()
+                        + " overflows an INT");
+                System.exit(1);
+                return 0;
+            }
+        }
+    }
+
+
+    private static void copyColumn(Tuple from, int fromCol, Tuple to, int toCol) {
+        int type = from.typeAt(fromCol);
+        if (type == Attribute.INT) {
+            to.setInt(toCol, from.getInt(fromCol));
+        } else if (type == Attribute.REAL) {
+            to.setFloat(toCol, from.getFloat(fromCol));
+        } else {
+            to.setString(toCol, from.getString(fromCol));
+        }
+    }
+
+
+    public Object clone() {
+        Operator newbase = (Operator) base.clone();
+        Vector newattr = new Vector();
+        for (int i = 0; i < attrSet.size(); i++)
+            newattr.add((Attribute) ((Attribute) attrSet.elementAt(i)).clone());
+        Vector newgroup = new Vector();
+        for (int i = 0; i < groupBy.size(); i++)
+            newgroup.add((Attribute) ((Attribute) groupBy.elementAt(i)).clone());
+        Aggregate newagg = new Aggregate(newbase, newattr, newgroup, optype);
+        newagg.setSchema(outputSchema(newbase.getSchema(), newattr));
+        newagg.setNumBuff(numBuff);
+        return newagg;
+    }
+}
@@ -2,14 +2,18 @@ package qp.operators;
 
 import qp.utils.Attribute;
 import qp.utils.Batch;
+import qp.utils.PrefetchReader;
 import qp.utils.Tuple;
+import qp.utils.TupleTable;
 
 import java.io.*;
 import java.util.*;
 
 /**
  * The BlockNested join uses (B-2) batches for the left table, 1 batch for right
- * table, and 1 batch for output.
+ * table, and 1 batch for output. The tuples of the left block are indexed in
+ * a hash table on the join column, so each right tuple is joined by a single
+ * probe instead of a comparison with every left tuple.
  */
 public class BlockNestedJoin extends Join {
 
@@ -18,16 +22,18 @@ public class BlockNestedJoin extends Join {
     private int leftIndex, rightIndex; // Index of the join column in tuple
 
     private String tempFileName; // Temporary file for right table.
+    private boolean rescan; // Whether the right table is scanned again instead
 
     private Batch rightBatch; // Right batch
 
     private List<Batch> leftBatches = new LinkedList<>(); // Left batches
-    private ArrayList<Tuple> leftTuples = new ArrayList<>(); // Flattened left batches
+    private TupleTable leftTable; // Left batches by join value
 
     private ObjectInputStream in;
+    private PrefetchReader<Batch> inPrefetch; // Reads the materialized file ahead, if enabled
 
     // Variables used during the iteration
-    private int leftCursor;
+    private int matchCursor;  // Next left tuple among the matches of the right tuple
     private int rightCursor;
     private boolean leftEndReached;
     private boolean rightEndReached;
@@ -59,7 +65,7 @@ public class BlockNestedJoin extends Join {
         while (!outBatch.isFull()) {
 
             // End buffer reached, cycle the left buffer
-            if (this.leftCursor == 0 && this.rightEndReached) {
+            if (this.rightCursor == 0 && this.matchCursor == 0 && this.rightEndReached) {
                 this.loadLeftBatches();
                 if (this.leftBatches.isEmpty()) {
                     this.leftEndReached = true;
@@ -70,47 +76,45 @@ public class BlockNestedJoin extends Join {
             // Iterate right buffer until end
             while (!this.rightEndReached) {
                 try {
-                    // If we are in the beginning of left batches, read
+                    // If we are in the beginning of a right batch, read
                     // a batch from materialized file.
-                    if (this.leftCursor == 0 && this.rightCursor == 0) {
-                        this.rightBatch = (Batch) this.in.readObject();
+                    if (this.rightCursor == 0 && this.matchCursor == 0) {
+                        this.rightBatch = this.nextRightBatch();
+                        if (this.rightBatch == null) {
+                            this.rightEndReached = true;
+                            break;
+                        }
                     }
 
-                    for (int i = this.leftCursor; i < this.leftTuples.size(); i++) {
-                        for (int j = this.rightCursor; j < this.rightBatch.size(); j++) {
-                            Tuple leftTuple = leftTuples.get(i);
-                            Tuple rightTuple = rightBatch.elementAt(j);
-
-                            if (leftTuple.checkJoin(rightTuple, this.leftIndex, this.rightIndex)) {
-                                Tuple result = leftTuple.joinWith(rightTuple);
-                                outBatch.add(result);
-
-                                if (outBatch.isFull()) {
-                                    // Left batches and right batch done
-                                    if (i == leftTuples.size() - 1 && j == rightBatch.size() - 1) {
-                                        this.leftCursor = 0;
-                                        this.rightCursor = 0;
-
-                                        // Right batch done
-                                    } else if (i != leftTuples.size() - 1 && j == rightBatch.size() - 1) {
-                                        this.leftCursor = i + 1;
-                                        this.rightCursor = 0;
-
-                                        //  Next tuple in right batch
-                                    } else if (i == leftTuples.size() - 1 && j != rightBatch.size() - 1) {
-                                        this.leftCursor = i;
-                                        this.rightCursor = j + 1;
-                                    } else {
-                                        this.leftCursor = i;
-                                        this.rightCursor = j + 1;
-                                    }
-                                    return outBatch;
+                    for (int j = this.rightCursor; j < this.rightBatch.size(); j++) {
+                        Tuple rightTuple = rightBatch.elementAt(j);
+                        List<Tuple> matches = this.leftTable.get(rightTuple, this.rightIndex);
+                        if (matches == null) {
+                            continue;
+                        }
+                        for (int i = this.matchCursor; i < matches.size(); i++) {
+                            outBatch.add(matches.get(i).joinWith(rightTuple));
+
+                            if (outBatch.isFull()) {
+                                if (i != matches.size() - 1) {
+                                    // More matches of this right tuple
+                                    this.rightCursor = j;
+                                    this.matchCursor = i + 1;
+                                } else if (j != rightBatch.size() - 1) {
+                                    // Next tuple in right batch
+                                    this.rightCursor = j + 1;
+                                    this.matchCursor = 0;
+                                } else {
+                                    // Right batch done
+                                    this.rightCursor = 0;
+                                    this.matchCursor = 0;
                                 }
+                                return outBatch;
                             }
                         }
-                        this.rightCursor = 0;
+                        this.matchCursor = 0;
                     }
-                    this.leftCursor = 0;
+                    this.rightCursor = 0;
                 } catch (EOFException e) {
                     try {
                         in.close();
@@ -131,12 +135,18 @@ public class BlockNestedJoin extends Join {
     }
 
     public boolean close() {
+        if (this.inPrefetch != null) {
+            this.inPrefetch.close();
+        }
+        if (this.tempFileName == null) {
+            return true;
+        }
         File f = new File(this.tempFileName);
         return f.delete();
     }
 
     private void resetCursors() {
-        this.leftCursor = 0;
+        this.matchCursor = 0;
         this.rightCursor = 0;
         this.leftEndReached = false;
         this.rightEndReached = true;
@@ -149,6 +159,12 @@ public class BlockNestedJoin extends Join {
     }
 
     private boolean materializeRightTable() {
+        // A base table is not copied, it is scanned again for every block
+        this.rescan = this.isRightRescannable();
+        if (this.rescan) {
+            this.tempFileName = null;
+            return true;
+        }
         if (!this.right.open()) {
             return false;
         } else {
@@ -170,12 +186,47 @@ public class BlockNestedJoin extends Join {
         }
     }
 
+    /**
+     * Pages of the left block. The pages read ahead from the right
+     * table are taken out of the B-2 buffers of the block.
+     */
+    private int blockPages() {
+        return Math.max(1, this.numBuff - 2 - PrefetchReader.getDepth());
+    }
+
+    /** Next batch of the right table, null at its end **/
+    private Batch nextRightBatch() throws IOException, ClassNotFoundException {
+        if (this.rescan) {
+            return this.right.next();
+        }
+        if (this.inPrefetch != null) {
+            Batch batch = this.inPrefetch.next();
+            if (batch == null) {
+                this.inPrefetch = null;
+                this.in.close();
+            }
+            return batch;
+        }
+        return (Batch) this.in.readObject();
+    }
+
+    private static Batch readMaterialized(ObjectInputStream stream) throws IOException {
+        try {
+            return (Batch) stream.readObject();
+        } catch (EOFException e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
     private void setIndexFromJoinAttribute() {
         Attribute leftAtrribute = this.con.getLhs();
         Attribute rightAttribute = (Attribute) this.con.getRhs();
 
         this.leftIndex = this.left.getSchema().indexOf(leftAtrribute);
         this.rightIndex = this.right.getSchema().indexOf(rightAttribute);
+        this.leftTable = new TupleTable(this.leftIndex, this.left.getSchema().typeOf(this.leftIndex));
     }
 
     private String getUniqueFileName() {
@@ -187,8 +238,8 @@ public class BlockNestedJoin extends Join {
     private void loadLeftBatches() {
         // Load new batches to left buffers
         this.leftBatches.clear();
-        this.leftTuples.clear();
-        for (int i = 1; i <= this.numBuff - 2; i++) {
+        this.leftTable.clear();
+        for (int i = 1; i <= this.blockPages(); i++) {
             Batch b = left.next();
             if (b != null) {
                 this.leftBatches.add(b);
@@ -196,15 +247,28 @@ public class BlockNestedJoin extends Join {
         }
         for (Batch b: this.leftBatches) {
             for (int i = 0; i < b.size(); i++) {
-                this.leftTuples.add(b.elementAt(i));
+                Tuple t = b.elementAt(i);
+                this.leftTable.add(t);
             }
         }
         if (!this.leftBatches.isEmpty()) {
-            // Reset right materialized stream
+            // Reset right materialized stream, or restart the scan
+            if (this.rescan) {
+                if (!this.right.open()) {
+                    System.err.println("BlockNestedJoin: Error in scanning the right table");
+                    System.exit(1);
+                }
+                this.rightEndReached = false;
+                return;
+            }
             try {
                 FileInputStream file = new FileInputStream(this.tempFileName);
                 InputStream buffer = new BufferedInputStream(file);
                 this.in = new ObjectInputStream(buffer);
+                if (PrefetchReader.getDepth() > 0) {
+                    ObjectInputStream stream = this.in;
+                    this.inPrefetch = new PrefetchReader<>(() -> readMaterialized(stream), PrefetchReader.getDepth());
+                }
                 this.rightEndReached = false;
             } catch (IOException e) {
                 System.err.println("BlockNestedJoin: Error in reading the file");
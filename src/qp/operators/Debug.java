@@ -12,7 +12,11 @@ public class Debug {
     public static void PPrint(Attribute attr) {
         String tabName = attr.getTabName();
         String colName = attr.getColName();
-        System.out.print(tabName + "." + colName);
+        if (attr.isAggregated()) {
+            System.out.print(attr.getAggName() + "(" + tabName + "." + colName + ")");
+        } else {
+            System.out.print(tabName + "." + colName);
+        }
     }
 
     /**
@@ -89,6 +93,9 @@ public class Debug {
                 case JoinType.HASHJOIN:
                     System.out.print("HashJoin(");
                     break;
+                case JoinType.INDEXNESTED:
+                    System.out.print("IndexNested(");
+                    break;
             }
             //System.out.print("Join(");
             PPrint(((Join) node).getLeft());
@@ -111,6 +118,43 @@ public class Debug {
             PPrint(((Project) node).getBase());
             System.out.print(")");
 
+        } else if (opType == OpType.SORT) {
+            System.out.print("Sort(");
+            PPrint(((ExternalSort) node).getSource());
+            System.out.print(")");
+
+        } else if (opType == OpType.LIMIT) {
+            System.out.print("Limit(");
+            PPrint(((Limit) node).getBase());
+            System.out.print("  " + ((Limit) node).getLimit() + ")");
+
+        } else if (opType == OpType.TOPN) {
+            System.out.print("TopN(");
+            PPrint(((TopN) node).getBase());
+            System.out.print("  " + ((TopN) node).getLimit() + ")");
+
+        } else if (opType == OpType.AGGREGATE) {
+            System.out.print("Aggregate(");
+            PPrint(((Aggregate) node).getBase());
+            System.out.print(")");
+
+        } else if (opType == OpType.DISTINCT) {
+            if (((Distinct) node).getDistinctType() == Distinct.SORT) {
+                System.out.print("SortDistinct(");
+            } else {
+                System.out.print("HashDistinct(");
+            }
+            PPrint(((Distinct) node).getBase());
+            System.out.print(")");
+
+        } else if (node instanceof IndexScan) {
+            System.out.print("IndexScan(");
+            System.out.print(((Scan) node).getTabName());
+            System.out.print("  '");
+            PPrint(((IndexScan) node).getCondition());
+            System.out.print("'  ");
+            System.out.print(")");
+
         } else if (opType == OpType.SCAN) {
             System.out.print(((Scan) node).getTabName());
         }
@@ -122,14 +166,14 @@ public class Debug {
      **/
 
     public static void PPrint(Tuple t) {
-        for (int i = 0; i < t.data().size(); i++) {
-            Object data = t.dataAt(i);
-            if (data instanceof Integer) {
-                System.out.print(((Integer) data).intValue() + "\t");
-            } else if (data instanceof Float) {
-                System.out.print(((Float) data).floatValue() + "\t");
+        for (int i = 0; i < t.size(); i++) {
+            int type = t.typeAt(i);
+            if (type == Attribute.INT) {
+                System.out.print(t.getInt(i) + "\t");
+            } else if (type == Attribute.REAL) {
+                System.out.print(t.getFloat(i) + "\t");
             } else {
-                System.out.print(((String) data) + "\t");
+                System.out.print(t.getString(i) + "\t");
             }
         }
         System.out.println();
@@ -0,0 +1,248 @@
+/**
+ * Removes the duplicate tuples of its input, for SELECT DISTINCT
+ **/
+
+package qp.operators;
+
+import qp.utils.Attribute;
+import qp.utils.Batch;
+import qp.utils.Schema;
+import qp.utils.Tuple;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Two strategies, chosen by the optimizer from their cost:
+ *   - HASH : the distinct tuples are kept in a hash table of B-2 pages and
+ *            returned once the input is used up. If they do not fit, the
+ *            table and the rest of the input are hashed into B-1 partition
+ *            files, where duplicates meet, and every partition is done the
+ *            same way in turn, hashing on other bits if it does not fit.
+ *   - SORT : an ExternalSort on every column, which drops the tuples equal
+ *            to the one before them as it sorts the runs and merges them.
+ *            The output is sorted.
+ */
+public class Distinct extends Operator {
+
+    /** enumeration of the ways the duplicates are found **/
+    public static final int HASH = 0;
+    public static final int SORT = 1;
+
+    private static final int MAX_LEVELS = 8;   // partitioning depth before keeping a partition in memory anyway
+
+    private static int NUMBER_OF_INSTANCES = 0;
+
+    private Operator base;
+    private int distinctType;
+    private int numBuff;
+
+    private int instanceNumber;
+    private int batchSize;
+
+    // HASH execution
+    private Iterator<TupleKey> output;        // distinct tuples of the input or partition in memory
+    private SpillPartitions partitions;       // partitions still to be done
+
+    // SORT execution
+    private ExternalSort sort;
+
+
+    public Distinct(Operator base, int type) {
+        super(type);
+        this.base = base;
+        this.distinctType = HASH;
+        this.instanceNumber = NUMBER_OF_INSTANCES++;
+    }
+
+    public void setBase(Operator base) {
+        this.base = base;
+    }
+
+    public Operator getBase() {
+        return base;
+    }
+
+    public void setDistinctType(int type) {
+        this.distinctType = type;
+    }
+
+    public int getDistinctType() {
+        return distinctType;
+    }
+
+    /** Sorting leaves the tuples in the order of all their columns **/
+
+    public List<Order> getOrder() {
+        if (distinctType == SORT) {
+            return ExternalSort.orderOf(Collections.emptyList(), schema, true);
+        }
+        return Collections.emptyList();
+    }
+
+    public void setNumBuff(int num) {
+        this.numBuff = num;
+    }
+
+    public int getNumBuff() {
+        return numBuff;
+    }
+
+
+    public boolean open() {
+        batchSize = Batch.getPageSize() / schema.getTupleSize();
+        if (distinctType == SORT) {
+            sort = new ExternalSort(base, new ArrayList<>(), numBuff);
+            sort.setSchema(schema);
+            sort.setDistinct(true);
+            return sort.open();
+        }
+
+        if (!base.open()) {
+            return false;
+        }
+        output = null;
+        partitions = new SpillPartitions("DStemp-" + instanceNumber + "-", batchSize);
+        try {
+            load(base::next, 0);
+        } catch (IOException e) {
+            System.err.println("Distinct: Error in writing the partitions");
+            return false;
+        }
+        return true;
+    }
+
+    public Batch next() {
+        if (sort != null) {
+            return sort.next();
+        }
+        Batch outbatch = new Batch(batchSize);
+        try {
+            while (!outbatch.isFull()) {
+                if (output != null && output.hasNext()) {
+                    outbatch.add(output.next().tuple);
+                    continue;
+                }
+                output = null;
+                if (!partitions.hasPending()) {
+                    break;
+                }
+                partitions.readNext(this::load);
+            }
+        } catch (IOException e) {
+            System.err.println("Distinct: Error in reading the partitions");
+            System.exit(1);
+        }
+        if (outbatch.isEmpty()) {
+            close();
+            return null;
+        }
+        return outbatch;
+    }
+
+    public boolean close() {
+        if (sort != null) {
+            sort.close();
+            sort = null;
+        }
+        if (partitions != null) {
+            partitions.clear();
+        }
+        output = null;
+        return true;
+    }
+
+
+    /**
+     * Reads the tuples into the hash table. If the distinct tuples do not
+     * fit in B-2 pages, the table and the rest of the tuples are written to
+     * partitions instead, to be done later.
+     */
+    private void load(SpillPartitions.BatchSource source, int level) throws IOException {
+        int capacity = Math.max(1, numBuff - 2) * batchSize;
+        Set<TupleKey> table = new HashSet<>();
+        Batch batch;
+        while ((batch = source.next()) != null) {
+            for (int i = 0; i < batch.size(); i++) {
+                table.add(new TupleKey(batch.elementAt(i)));
+            }
+            if (table.size() > capacity && level < MAX_LEVELS) {
+                spill(table, source, level);
+                return;
+            }
+        }
+        output = table.iterator();
+    }
+
+    private void spill(Set<TupleKey> table, SpillPartitions.BatchSource source, int level) throws IOException {
+        partitions.start(Math.max(2, numBuff - 1), level);
+        for (TupleKey key : table) {
+            partitions.write(key.tuple, key.hash);
+        }
+        table.clear();
+        Batch batch;
+        while ((batch = source.next()) != null) {
+            for (int i = 0; i < batch.size(); i++) {
+                TupleKey key = new TupleKey(batch.elementAt(i));
+                partitions.write(key.tuple, key.hash);
+            }
+        }
+        partitions.finish();
+    }
+
+
+    /** A tuple as a hash table key, equal to the tuples with the same value in every column **/
+
+    private static class TupleKey {
+        final Tuple tuple;
+        final int hash;
+
+        TupleKey(Tuple tuple) {
+            this.tuple = tuple;
+            int h = 1;
+            for (int i = 0; i < tuple.size(); i++) {
+                int type = tuple.typeAt(i);
+                int v;
+                if (type == Attribute.INT) {
+                    v = tuple.getInt(i);
+                } else if (type == Attribute.REAL) {
+                    v = Float.floatToIntBits(tuple.getFloat(i));
+                } else {
+                    v = tuple.getString(i).hashCode();
+                }
+                h = 31 * h + v;
+            }
+            this.hash = h;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof TupleKey)) {
+                return false;
+            }
+            TupleKey other = (TupleKey) o;
+            if (other.hash != hash) {
+                return false;
+            }
+            for (int i = 0; i < tuple.size(); i++) {
+                if (Tuple.compareTuples(tuple, other.tuple, i) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    public Object clone() {
+        Operator newbase = (Operator) base.clone();
+        Distinct newdistinct = new Distinct(newbase, optype);
+        newdistinct.setSchema((Schema) newbase.getSchema().clone());
+        newdistinct.setDistinctType(distinctType);
+        newdistinct.setNumBuff(numBuff);
+        return newdistinct;
+    }
+}
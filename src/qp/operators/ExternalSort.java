@@ -1,18 +1,34 @@
 package qp.operators;
 
 import qp.utils.AppendingObjectOutputStream;
+import qp.utils.Attribute;
 import qp.utils.Batch;
+import qp.utils.PrefetchReader;
 import qp.utils.Schema;
 import qp.utils.Tuple;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by michaellimantara on 20/3/17.
  */
 public class ExternalSort extends Operator {
 
+    /** enumeration of the ways the initial sorted runs are generated **/
+    public static final int LOAD_AND_SORT = 0;          // sort B pages at a time
+    public static final int REPLACEMENT_SELECTION = 1;  // stream tuples through a heap
+
+    private static int runGeneration = LOAD_AND_SORT;
+
+    /** Number of threads sorting runs and merging them, 1 to sort on the calling thread **/
+    private static int parallelism = 1;
+
     private static int NUMBER_OF_INSTANCES = 0;
 
     private int instanceNumber;
@@ -21,12 +37,17 @@ public class ExternalSort extends Operator {
     private int numBuffers;
     private List<Order> sortOrders;
     private Comparator<Tuple> comparator;
+    private boolean distinct;        // drop the tuples equal to another on every column
 
     private int fileNum;
     private int roundNum;
     private List<File> sortedRunFiles;
 
-    private ObjectInputStream iteratorInputStream;
+    private RunMerger finalMerge;    // merges the last runs as next() is called
+
+    private int runPrefetch;         // pages read ahead for every run being merged
+    private ForkJoinPool pool;       // sorts runs and merges groups of runs, if parallel
+    private Semaphore freeBuffers;   // buffers not held by the runs being sorted or merged
 
     private int initialNumTuples;
     private int tuplesProcessedThisRound;
@@ -35,12 +56,16 @@ public class ExternalSort extends Operator {
 
     private static boolean FILE_CLEANUP = true;
 
+    /** Comparisons made to pick tuples while merging runs, over all sorts **/
+    private static final AtomicLong mergeComparisons = new AtomicLong();
+
 
     /**
      * Sorts the tuples from source using multi-way merge sort algorithm.
+     * The last merge pass is not written out, next() returns its output.
      * I/O cost, given N batches / pages of tuples:
-     *   - num of passes = 1 + ceil( log(ceil(N/B)) / log(B-1) )
-     *   - cost = 2N * num of passes
+     *   - num of merge passes = ceil( log(ceil(N/B)) / log(B-1) )
+     *   - cost = 2N for the runs + 2N per merge pass but the last + N
      */
     public ExternalSort(Operator source, List<Order> sortOrders, int numBuffers) {
         super(OpType.SORT);
@@ -52,6 +77,73 @@ public class ExternalSort extends Operator {
         this.numBuffers = numBuffers;
     }
 
+    /** Set how the initial runs are generated by all the sorts of the query **/
+    public static void setRunGeneration(int mode) {
+        runGeneration = mode;
+    }
+
+    public static int getRunGeneration() {
+        return runGeneration;
+    }
+
+    /** Set the number of threads used by all the sorts of the query **/
+    public static void setParallelism(int threads) {
+        parallelism = Math.max(1, threads);
+    }
+
+    public static int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Removes the duplicates as it sorts, for a DISTINCT. The columns
+     * that are not sort attributes are compared after them, so equal
+     * tuples end up side by side in every run, and a tuple equal to the
+     * one written before it is dropped when the runs are generated and
+     * at every merge pass. The runs shrink as the duplicates go, so the
+     * later passes read and write fewer pages.
+     */
+    public void setDistinct(boolean distinct) {
+        this.distinct = distinct;
+    }
+
+    public boolean isDistinct() {
+        return distinct;
+    }
+
+    public Operator getSource() {
+        return source;
+    }
+
+    public List<Order> getSortOrders() {
+        return sortOrders;
+    }
+
+    public List<Order> getOrder() {
+        return orderOf(sortOrders, source.getSchema(), distinct);
+    }
+
+    /** Order of the tuples as the SortComparator over the same
+     ** arguments leaves them
+     **/
+
+    static List<Order> orderOf(List<Order> sortOrders, Schema schema, boolean allColumns) {
+        List<Order> order = new ArrayList<>(sortOrders);
+        if (allColumns) {
+            for (int i = 0; i < schema.getNumCols(); i++) {
+                Attribute attr = schema.getAttribute(i);
+                boolean sorted = false;
+                for (Order o : sortOrders) {
+                    sorted = sorted || schema.indexOf(o.getAttribute()) == i;
+                }
+                if (!sorted) {
+                    order.add(new Order(attr, Order.OrderType.ASC));
+                }
+            }
+        }
+        return order;
+    }
+
     public boolean open() {
         if (!source.open()) {
             return false;
@@ -65,8 +157,23 @@ public class ExternalSort extends Operator {
         tupleSize = source.getSchema().getTupleSize();
         batchSize = Batch.getPageSize() / tupleSize;
 
+        // read ahead the merged runs only if the fan-in stays at least 2
+        int depth = PrefetchReader.getDepth();
+        runPrefetch = (depth > 0 && (numBuffers - 1) / (1 + depth) >= 2) ? depth : 0;
+
+        if (parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+            freeBuffers = new Semaphore(numBuffers);
+        }
+
         // Phase 1
-        generateSortedRuns();
+        if (runGeneration == REPLACEMENT_SELECTION) {
+            generateRunsByReplacement();
+        } else if (pool != null) {
+            generateSortedRunsInParallel();
+        } else {
+            generateSortedRuns();
+        }
         roundNum++;
         fileNum = 0;
         // System.out.printf("Initial number of tuples = %d\n", initialNumTuples);
@@ -74,30 +181,41 @@ public class ExternalSort extends Operator {
         // Phase 2
         executeMerge();
 
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        if (!sortedRunFiles.isEmpty()) {
+            finalMerge = new RunMerger(sortedRunFiles);
+        }
         return true;
     }
 
     public Batch next() {
-        assert sortedRunFiles.size() == 1;
-        try {
-            if (iteratorInputStream == null) {
-                iteratorInputStream = new ObjectInputStream(new FileInputStream(sortedRunFiles.get(0)));
+        if (finalMerge == null) {
+            return null;   // the source was empty
+        }
+        Batch batch = new Batch(batchSize);
+        while (!batch.isFull()) {
+            Tuple tuple = finalMerge.next();
+            if (tuple == null) {
+                break;
             }
-
-            return readBatch(iteratorInputStream);
-        } catch (IOException e) {
-            e.printStackTrace();
+            batch.add(tuple);
         }
-        return null;
+        if (batch.isEmpty()) {
+            close();    // the run files are not needed any more
+            return null;
+        }
+        return batch;
     }
 
     public boolean close() {
-        clearSortedRuns(sortedRunFiles);
-        try {
-            iteratorInputStream.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (finalMerge != null) {
+            finalMerge.close();
+            finalMerge = null;
         }
+        clearSortedRuns(sortedRunFiles);
         return super.close();
     }
 
@@ -107,7 +225,7 @@ public class ExternalSort extends Operator {
 
     private void generateSortedRuns() {
         initialNumTuples = 0;
-        Batch currentBatch = source.next();  // read first batch
+        Batch currentBatch = nextSourceBatch();  // read first batch
         while (currentBatch != null) {
             ArrayList<Batch> run = new ArrayList<>();
             for (int i = 0; i < numBuffers; i++) {
@@ -115,7 +233,7 @@ public class ExternalSort extends Operator {
                 run.add(currentBatch);
 
                 // read next batch
-                currentBatch = source.next();
+                currentBatch = nextSourceBatch();
 
                 if (currentBatch == null) {
                     break;
@@ -128,13 +246,172 @@ public class ExternalSort extends Operator {
         }
     }
 
-    private void executeMerge() {
-        int numBuffersAvailable = numBuffers - 1;
+    /**
+     * Reads the runs on the calling thread and sorts and writes them on the
+     * pool, so that the next run is read while the previous ones are sorted.
+     * The B buffers are split into runs of B/(p+1) pages, p being the number
+     * of threads, and a run is read in only when its buffers are free again.
+     */
+    private void generateSortedRunsInParallel() {
+        initialNumTuples = 0;
+        int runPages = Math.max(1, numBuffers / Math.min(parallelism + 1, numBuffers));
+        List<Future<?>> sorts = new ArrayList<>();
+        Batch currentBatch = nextSourceBatch();  // read first batch
+        while (currentBatch != null) {
+            acquireBuffers(runPages);
+            ArrayList<Batch> run = new ArrayList<>();
+            for (int i = 0; i < runPages; i++) {
+                initialNumTuples += currentBatch.size();
+                run.add(currentBatch);
+
+                // read next batch
+                currentBatch = nextSourceBatch();
+
+                if (currentBatch == null) {
+                    break;
+                }
+            }
+
+            File sortedRunFile = nextRunFile();
+            sortedRunFiles.add(sortedRunFile);
+            sorts.add(pool.submit(() -> {
+                try {
+                    writeRun(sortedRun(run), sortedRunFile);
+                } finally {
+                    freeBuffers.release(runPages);
+                }
+            }));
+        }
+        awaitAll(sorts);
+    }
+
+    /**
+     * Generates the runs by replacement selection. B-2 buffers hold a heap
+     * of tuples, one buffer is the input and one the output. The smallest
+     * tuple of the heap is written out and replaced by the next input tuple,
+     * which joins the current run if it is not smaller than the tuple just
+     * written and is held back for the next run otherwise. Runs average 2(B-2)
+     * pages on random input, and sorted input gives a single run.
+     */
+    private void generateRunsByReplacement() {
+        initialNumTuples = 0;
+        int capacity = Math.max(1, numBuffers - 2) * batchSize;
+        PriorityQueue<HeapEntry> heap = new PriorityQueue<>(capacity, (e1, e2) -> {
+            if (e1.run != e2.run) {
+                return Integer.compare(e1.run, e2.run);
+            }
+            return comparator.compare(e1.tuple, e2.tuple);
+        });
+
+        Batch inputBuffer = source.next();
+        int inputPointer = 0;
+        while (inputBuffer != null && heap.size() < capacity) {
+            if (inputPointer == inputBuffer.size()) {
+                inputBuffer = source.next();
+                inputPointer = 0;
+                continue;
+            }
+            heap.add(new HeapEntry(0, inputBuffer.elementAt(inputPointer++)));
+            initialNumTuples++;
+        }
+
+        int currentRun = 0;
+        Batch outputBuffer = new Batch(batchSize);
+        ObjectOutputStream out = null;
+        Tuple written = null;   // last tuple written to the current run
+        try {
+            while (!heap.isEmpty()) {
+                HeapEntry smallest = heap.poll();
+                if (out == null || smallest.run != currentRun) {
+                    if (out != null) {
+                        if (!outputBuffer.isEmpty()) {
+                            out.writeObject(outputBuffer);
+                            outputBuffer = new Batch(batchSize);
+                        }
+                        out.close();
+                    }
+                    currentRun = smallest.run;
+                    out = startRun();
+                    written = null;
+                }
+                if (distinct && written != null && comparator.compare(smallest.tuple, written) == 0) {
+                    // duplicate, still replaced by the next input tuple below
+                } else {
+                    outputBuffer.add(smallest.tuple);
+                    written = smallest.tuple;
+                }
+                if (outputBuffer.isFull()) {
+                    out.writeObject(outputBuffer);
+                    outputBuffer = new Batch(batchSize);
+                }
+
+                // replace the tuple written out by the next input tuple
+                while (inputBuffer != null && inputPointer == inputBuffer.size()) {
+                    inputBuffer = source.next();
+                    inputPointer = 0;
+                }
+                if (inputBuffer != null) {
+                    Tuple next = inputBuffer.elementAt(inputPointer++);
+                    initialNumTuples++;
+                    int run = (comparator.compare(next, smallest.tuple) >= 0) ? currentRun : currentRun + 1;
+                    heap.add(new HeapEntry(run, next));
+                }
+            }
+            if (out != null) {
+                if (!outputBuffer.isEmpty()) {
+                    out.writeObject(outputBuffer);
+                }
+                out.close();
+            }
+        } catch (IOException e) {
+            System.out.println("ExternalSort: Error in writing the temporary file");
+        }
+    }
+
+    /** Creates the file of the next run and adds it to the sorted runs **/
+    private ObjectOutputStream startRun() throws IOException {
+        File temp = nextRunFile();
+        sortedRunFiles.add(temp);
+        return new ObjectOutputStream(new FileOutputStream(temp));
+    }
+
+    /** Name of the next run file of this round **/
+    private File nextRunFile() {
+        File temp = new File("EStemp-" + instanceNumber + "-" + roundNum + "-" + fileNum);
+        fileNum++;
+        return temp;
+    }
+
+    private static class HeapEntry {
+        final int run;      // run the tuple is to be written to
+        final Tuple tuple;
 
-        while (sortedRunFiles.size() > 1) {
+        HeapEntry(int run, Tuple tuple) {
+            this.run = run;
+            this.tuple = tuple;
+        }
+    }
+
+    /** Next non-empty batch of the source, some operators end with an empty one **/
+    private Batch nextSourceBatch() {
+        Batch batch = source.next();
+        while (batch != null && batch.isEmpty()) {
+            batch = source.next();
+        }
+        return batch;
+    }
+
+    /**
+     * Merges until the runs are few enough to be merged by next(), with
+     * one input buffer each and the output buffer
+     */
+    private void executeMerge() {
+        while (sortedRunFiles.size() > maxFanIn()) {
             // System.out.printf("ROUND %d. Number of sorted runs = %d.\n", roundNum, sortedRunFiles.size());
             int numberOfSortedRuns = sortedRunFiles.size();
+            int numBuffersAvailable = mergeFanIn(numberOfSortedRuns);
             List<File> newSortedRuns = new ArrayList<>();
+            List<Future<?>> merges = new ArrayList<>();
             tuplesProcessedThisRound = 0;
             for (int subRound = 0; subRound * numBuffersAvailable < numberOfSortedRuns; subRound++) {
                 int startIdx = subRound * numBuffersAvailable;
@@ -142,14 +419,29 @@ public class ExternalSort extends Operator {
                 endIdx = Math.min(endIdx, sortedRunFiles.size());  // in case of last few runs
 
                 List<File> runsToSort = sortedRunFiles.subList(startIdx, endIdx);
-                File resultSortedRun = mergeSortedRuns(runsToSort);
+                File resultSortedRun = nextRunFile();
                 newSortedRuns.add(resultSortedRun);
+                if (pool == null) {
+                    mergeSortedRuns(runsToSort, resultSortedRun);
+                } else {
+                    // the merge holds one buffer per input run and the output buffer
+                    int buffersNeeded = runsToSort.size() * (1 + runPrefetch) + 1;
+                    acquireBuffers(buffersNeeded);
+                    merges.add(pool.submit(() -> {
+                        try {
+                            mergeSortedRuns(runsToSort, resultSortedRun);
+                        } finally {
+                            freeBuffers.release(buffersNeeded);
+                        }
+                    }));
+                }
             }
+            awaitAll(merges);
 
             roundNum++;
             fileNum = 0;
             // System.out.printf("\tTuples processed = %d\n", tuplesProcessedThisRound);
-            assert initialNumTuples == tuplesProcessedThisRound;
+            assert distinct || initialNumTuples == tuplesProcessedThisRound;
 
             // Replace sorted runs with the newer batch
             clearSortedRuns(sortedRunFiles);
@@ -157,6 +449,72 @@ public class ExternalSort extends Operator {
         }
     }
 
+    /**
+     * Number of runs merged together in a pass over numRuns runs. Merging
+     * B-1 runs takes all the buffers, so merges can only run side by side
+     * with a lower fan-in. The fan-in is lowered for as many concurrent
+     * merges as the threads allow, but never so far that the merge takes
+     * an extra pass.
+     */
+    private int mergeFanIn(int numRuns) {
+        int fanIn = maxFanIn();
+        if (pool == null || numRuns <= fanIn) {
+            return fanIn;
+        }
+        int passes = numPasses(numRuns, fanIn);
+        int maxConcurrent = Math.min(parallelism, (numRuns + fanIn - 1) / fanIn);
+        for (int concurrent = maxConcurrent; concurrent > 1; concurrent--) {
+            int lowerFanIn = (numBuffers / concurrent - 1) / (1 + runPrefetch);
+            if (lowerFanIn >= 2 && numPasses(numRuns, lowerFanIn) <= passes) {
+                return lowerFanIn;
+            }
+        }
+        return fanIn;
+    }
+
+    /** Runs merged at once: one buffer for the output, and one buffer
+     ** plus the pages read ahead for every run
+     **/
+    private int maxFanIn() {
+        return (numBuffers - 1) / (1 + runPrefetch);
+    }
+
+    private static int numPasses(int numRuns, int fanIn) {
+        int passes = 0;
+        while (numRuns > 1) {
+            numRuns = (numRuns + fanIn - 1) / fanIn;
+            passes++;
+        }
+        return passes;
+    }
+
+    private void acquireBuffers(int count) {
+        try {
+            freeBuffers.acquire(count);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("ExternalSort: Interrupted while waiting for buffers", e);
+        }
+    }
+
+    /** Waits for the sorts or merges submitted to the pool **/
+    private void awaitAll(List<Future<?>> tasks) {
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("ExternalSort: Interrupted while sorting", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("ExternalSort: Error in sorting the runs", e.getCause());
+            }
+        }
+    }
+
+    private synchronized void addTuplesProcessed(int count) {
+        tuplesProcessedThisRound += count;
+    }
+
     private void clearSortedRuns(List<File> sortedRuns) {
         if (!FILE_CLEANUP) return;
 
@@ -168,88 +526,212 @@ public class ExternalSort extends Operator {
     /**
      * Receives a list of sorted runs and produces one longer sorted run.
      */
-    private File mergeSortedRuns(List<File> sortedRuns) {
-        assert sortedRuns.size() <= numBuffers - 1;
-
-        if (sortedRuns.isEmpty()) {
-            return null;
-        }
+    private void mergeSortedRuns(List<File> sortedRuns, File outputFile) {
+        assert sortedRuns.size() <= maxFanIn();
 
-        int numBuffersAvailable = sortedRuns.size();
-        ArrayList<Batch> inputBuffers = new ArrayList<>();
+        RunMerger merger = new RunMerger(sortedRuns);
+        Batch outputBuffer = new Batch(batchSize);
+        boolean written = false;
+        int numTuples = 0;
 
-        List<ObjectInputStream> inputStreams = new ArrayList<>();
+        Tuple smallest;
+        while ((smallest = merger.next()) != null) {
+            outputBuffer.add(smallest);
+            numTuples++;
 
-        // open files
-        for (File sortedRun: sortedRuns) {
-            try {
-                ObjectInputStream is = new ObjectInputStream(new FileInputStream(sortedRun));
-                inputStreams.add(is);
-            } catch (IOException e) {
-                System.out.println("ExternalSort: Error in reading the temporary sorted runs");
+            if (outputBuffer.isFull()) {
+                if (!written) {
+                    writeRun(Arrays.asList(outputBuffer), outputFile);
+                    written = true;
+                } else {
+                    appendRun(outputBuffer, outputFile);
+                }
+                outputBuffer.clear();
             }
         }
 
-        // do initial reading
-        for (ObjectInputStream inputStream: inputStreams) {
-            Batch batch = readBatch(inputStream);
-            inputBuffers.add(batch);
+        if (!written) {
+            writeRun(outputBuffer.isEmpty() ? Collections.emptyList() : Arrays.asList(outputBuffer), outputFile);
+        } else if (!outputBuffer.isEmpty()) {
+            appendRun(outputBuffer, outputFile);
         }
+        addTuplesProcessed(numTuples);
+        merger.close();
+    }
 
-        // merging
-        Batch outputBuffer = new Batch(batchSize);
-        File outputFile = null;
-        int[] batchPointers = new int[numBuffersAvailable];
-
-        while (true) {
-            Tuple smallest = null;
-            int indexOfSmallest = 0;
-            for (int i = 0; i < inputBuffers.size(); i++) {
-                Batch batch = inputBuffers.get(i);
-                if (batchPointers[i] >= batch.size()) {
-                    continue;
+    /**
+     * Merges a list of sorted runs tuple by tuple, with one input buffer
+     * per run. The smallest head tuple of the runs is found by a loser
+     * tree, so every output tuple costs about log2(k) comparisons instead
+     * of k.
+     */
+    private class RunMerger {
+
+        private final List<ObjectInputStream> inputStreams = new ArrayList<>();
+        private final List<PrefetchReader<Batch>> prefetchers = new ArrayList<>();
+        private final Batch[] inputBuffers;
+        private final int[] batchPointers;
+        private final Tuple[] heads;
+        private final LoserTree tree;
+        private Tuple last;     // last tuple returned, to skip its duplicates
+
+        RunMerger(List<File> sortedRuns) {
+            int numInputs = sortedRuns.size();
+            inputBuffers = new Batch[numInputs];
+            batchPointers = new int[numInputs];
+            heads = new Tuple[numInputs];
+
+            // open files
+            for (File sortedRun: sortedRuns) {
+                try {
+                    ObjectInputStream is = new ObjectInputStream(new FileInputStream(sortedRun));
+                    inputStreams.add(is);
+                    if (runPrefetch > 0) {
+                        prefetchers.add(new PrefetchReader<>(() -> readBatch(is), runPrefetch));
+                    }
+                } catch (IOException e) {
+                    System.err.println("ExternalSort: Error in reading the temporary sorted runs");
+                    System.exit(1);
                 }
+            }
 
-                Tuple tuple = batch.elementAt(batchPointers[i]);
-                if (smallest == null || comparator.compare(tuple, smallest) < 0) {
-                    smallest = tuple;
-                    indexOfSmallest = i;
+            // do initial reading
+            for (int i = 0; i < numInputs; i++) {
+                inputBuffers[i] = readInput(i);
+                heads[i] = nextHead(i);
+            }
+            tree = new LoserTree(heads);
+        }
+
+        /** The next tuple in sorted order, null when all the runs are used up **/
+        Tuple next() {
+            while (true) {
+                int indexOfSmallest = tree.winner();
+                Tuple smallest = heads[indexOfSmallest];
+                if (smallest == null) {
+                    return null;
+                }
+                batchPointers[indexOfSmallest] += 1;
+                heads[indexOfSmallest] = nextHead(indexOfSmallest);
+                tree.replay(indexOfSmallest);
+                if (distinct && last != null && comparator.compare(smallest, last) == 0) {
+                    continue;
                 }
+                last = smallest;
+                return smallest;
             }
-            if (smallest == null) {
-                break;
+        }
+
+        /**
+         * Returns the tuple at the pointer of input i, reading in the next
+         * batches of the run when the current one is used up. Null at the
+         * end of the run.
+         */
+        private Tuple nextHead(int i) {
+            while (inputBuffers[i] != null && batchPointers[i] >= inputBuffers[i].size()) {
+                inputBuffers[i] = readInput(i);
+                batchPointers[i] = 0;
             }
+            return inputBuffers[i] == null ? null : inputBuffers[i].elementAt(batchPointers[i]);
+        }
 
-            batchPointers[indexOfSmallest] += 1;
-            if (batchPointers[indexOfSmallest] == inputBuffers.get(indexOfSmallest).capacity()) {
-                Batch batch = readBatch(inputStreams.get(indexOfSmallest));
-                if (batch != null) {
-                    inputBuffers.set(indexOfSmallest, batch);
-                    batchPointers[indexOfSmallest] = 0;
+        /** Next batch of run i, null at its end. A run that cannot be
+         ** read is not taken for its end, which would drop the rest of it
+         **/
+        private Batch readInput(int i) {
+            try {
+                if (prefetchers.isEmpty()) {
+                    return readBatch(inputStreams.get(i));
                 }
+                return prefetchers.get(i).next();
+            } catch (IOException e) {
+                System.err.println("ExternalSort: Error in reading the temporary sorted runs");
+                System.exit(1);
+                return null;
             }
-            outputBuffer.add(smallest);
-            tuplesProcessedThisRound++;
+        }
 
-            if (outputBuffer.isFull()) {
-                if (outputFile == null) {
-                    outputFile = writeRun(Arrays.asList(outputBuffer));
-                } else {
-                    appendRun(outputBuffer, outputFile);
+        void close() {
+            mergeComparisons.addAndGet(tree.comparisons);
+            for (PrefetchReader<Batch> prefetcher: prefetchers) {
+                prefetcher.close();
+            }
+            for (ObjectInputStream inputStream: inputStreams) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
-                outputBuffer.clear();
             }
         }
+    }
+
+    public static long getMergeComparisons() {
+        return mergeComparisons.get();
+    }
+
+    public static void resetMergeComparisons() {
+        mergeComparisons.set(0);
+    }
 
-        if (!outputBuffer.isEmpty()) {
-            if (outputFile == null) {
-                outputFile = writeRun(Arrays.asList(outputBuffer));
-            } else {
-                appendRun(outputBuffer, outputFile);
+    /**
+     * Tournament tree over the head tuples of k runs. Leaf i is node k+i,
+     * and every internal node keeps the loser of the match played there,
+     * so that when the winner is replaced only the matches on its path
+     * to the root are replayed. An exhausted run (null head) loses every
+     * match, and ties go to the lower run to keep the merge stable.
+     */
+    private class LoserTree {
+
+        private final Tuple[] heads;
+        private final int[] tree;   // tree[0] is the overall winner
+        long comparisons = 0;
+
+        LoserTree(Tuple[] heads) {
+            this.heads = heads;
+            this.tree = new int[heads.length];
+            tree[0] = heads.length == 1 ? 0 : build(1);
+        }
+
+        private int build(int node) {
+            int k = heads.length;
+            if (node >= k) {
+                return node - k;
+            }
+            int left = build(2 * node);
+            int right = build(2 * node + 1);
+            if (beats(right, left)) {
+                tree[node] = left;
+                return right;
+            }
+            tree[node] = right;
+            return left;
+        }
+
+        int winner() {
+            return tree[0];
+        }
+
+        /** The head of run i, the last winner, has changed **/
+        void replay(int i) {
+            int winner = i;
+            for (int node = (i + heads.length) / 2; node >= 1; node /= 2) {
+                if (beats(tree[node], winner)) {
+                    int loser = winner;
+                    winner = tree[node];
+                    tree[node] = loser;
+                }
             }
+            tree[0] = winner;
         }
 
-        return outputFile;
+        private boolean beats(int a, int b) {
+            if (heads[a] == null) return false;
+            if (heads[b] == null) return true;
+            comparisons++;
+            int compareResult = comparator.compare(heads[a], heads[b]);
+            return compareResult < 0 || (compareResult == 0 && a < b);
+        }
     }
 
     private List<Batch> sortedRun(ArrayList<Batch> run) {
@@ -261,14 +743,19 @@ public class ExternalSort extends Operator {
         List<Batch> batches = new ArrayList<>();
 
         Batch currentBatch = new Batch(batchSize);
+        Tuple previous = null;
         for (Tuple tuple: tuples) {
+            if (distinct && previous != null && comparator.compare(tuple, previous) == 0) {
+                continue;
+            }
+            previous = tuple;
             currentBatch.add(tuple);
             if (currentBatch.isFull()) {
                 batches.add(currentBatch);
                 currentBatch = new Batch(batchSize);
             }
         }
-        if (!currentBatch.isFull()) {
+        if (!currentBatch.isEmpty()) {
             batches.add(currentBatch);
         }
         return batches;
@@ -281,15 +768,17 @@ public class ExternalSort extends Operator {
     }
 
     private File writeRun(List<Batch> run) {
+        return writeRun(run, nextRunFile());
+    }
+
+    private File writeRun(List<Batch> run, File temp) {
         try {
             int numTuples = 0;
-            File temp = new File("EStemp-" + instanceNumber + "-" + roundNum + "-" + fileNum);
             ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(temp));
             for (Batch batch: run) {
                 out.writeObject(batch);
                 numTuples += batch.size();
             }
-            fileNum++;
             out.close();
             // System.out.printf("Initialized file %s with %d batches (%d tuples)\n", temp.getName(), run.size(), numTuples);
             return temp;
@@ -313,42 +802,59 @@ public class ExternalSort extends Operator {
         }
     }
 
-    private Batch readBatch(ObjectInputStream inputStream) {
+    private Batch readBatch(ObjectInputStream inputStream) throws IOException {
         try {
-            Batch batch = (Batch) inputStream.readObject();
-            return batch;
+            return (Batch) inputStream.readObject();
         } catch (EOFException e) {
             return null;
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-            assert false;
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
         }
-        return null;
     }
 
     private Comparator<Tuple> composeComparator() {
-        return new SortComparator(sortOrders, source.getSchema());
+        return new SortComparator(sortOrders, source.getSchema(), distinct);
     }
 
-    class SortComparator implements Comparator<Tuple> {
+    /** Compares the tuples on the sort attributes in order, and on every
+     ** other column after them if allColumns is set
+     **/
+
+    static class SortComparator implements Comparator<Tuple> {
 
-        private Schema schema;
-        private List<Order> sortOrders;
+        private int[] attributeIdxs;  // index of each sort attribute, resolved once
+        private int[] multipliers;    // 1 for ascending, -1 for descending
 
-        SortComparator(List<Order> sortOrders, Schema schema) {
-            this.sortOrders = new ArrayList<>(sortOrders);
-            this.schema = schema;
+        SortComparator(List<Order> sortOrders, Schema schema, boolean allColumns) {
+            List<Integer> idxs = new ArrayList<>();
+            List<Integer> mults = new ArrayList<>();
+            for (Order order : sortOrders) {
+                idxs.add(schema.indexOf(order.getAttribute()));
+                mults.add((order.getOrderType() == Order.OrderType.ASC) ? 1 : -1);
+            }
+            if (allColumns) {
+                // then every other column, so that equal tuples compare as 0
+                for (int i = 0; i < schema.getNumCols(); i++) {
+                    if (!idxs.contains(i)) {
+                        idxs.add(i);
+                        mults.add(1);
+                    }
+                }
+            }
+            attributeIdxs = new int[idxs.size()];
+            multipliers = new int[idxs.size()];
+            for (int i = 0; i < idxs.size(); i++) {
+                attributeIdxs[i] = idxs.get(i);
+                multipliers[i] = mults.get(i);
+            }
         }
 
         @Override
         public int compare(Tuple t1, Tuple t2) {
-            for (int i = 0; i < sortOrders.size(); i++) {
-                Order order = sortOrders.get(i);
-                int attributeIdx = schema.indexOf(order.getAttribute());
-                int compareResult = Tuple.compareTuples(t1, t2, attributeIdx);
+            for (int i = 0; i < attributeIdxs.length; i++) {
+                int compareResult = Tuple.compareTuples(t1, t2, attributeIdxs[i]);
                 if (compareResult != 0) {
-                    int multiplier = (order.getOrderType() == Order.OrderType.ASC) ? 1 : -1;
-                    return multiplier * compareResult;
+                    return multipliers[i] * compareResult;
                 }
             }
             return 0;
@@ -0,0 +1,321 @@
+package qp.operators;
+
+import qp.utils.Attribute;
+import qp.utils.Batch;
+import qp.utils.Tuple;
+import qp.utils.TupleTable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The partitioned (Grace) hash join.
+ *
+ * Partitioning phase: both inputs are hashed on the join attribute into
+ * B-1 partitions, using 1 input buffer and B-1 output buffers. Every
+ * partition is written to its own temporary file.
+ *
+ * Probing phase: for each partition pair, the left partition is loaded
+ * into an in-memory hash table (B-2 buffers), and the right partition is
+ * streamed through 1 input buffer to probe it, with 1 buffer for output.
+ * A left partition larger than B-2 pages is built and probed in chunks of
+ * B-2 pages, so a skewed partition degrades gracefully instead of
+ * overflowing memory.
+ *
+ * I/O cost, given M left pages and N right pages: 3(M+N) when every left
+ * partition fits in B-2 pages.
+ */
+public class HashJoin extends Join {
+
+    private int batchSize; // Number of tuple per output batch
+    private int leftBatchSize;
+    private int rightBatchSize;
+
+    private int leftIndex, rightIndex; // Index of the join column in tuple
+
+    private int numPartitions;
+    private List<File> leftPartitions = new ArrayList<>();
+    private List<File> rightPartitions = new ArrayList<>();
+
+    // Variables used during the probing phase
+    private int partitionCursor;
+    private ObjectInputStream leftIn;
+    private ObjectInputStream rightIn;
+    private boolean leftPartitionDone;
+    private TupleTable hashTable;
+
+    private Batch rightBatch;
+    private int rightCursor;
+    private List<Tuple> matches;
+    private int matchCursor;
+    private boolean eos;
+
+    private int instanceNumber;
+    private static int fileId = 0; // ID of generated file
+
+    public HashJoin(Join join) {
+        super(join.getLeft(), join.getRight(), join.getCondition(), join.getOpType());
+        this.schema = join.getSchema();
+        this.jointype = join.getJoinType();
+        this.numBuff = join.getNumBuff();
+        this.instanceNumber = HashJoin.fileId++;
+    }
+
+    public boolean open() {
+        if (this.numBuff < 3) {
+            System.err.println("HashJoin: Minimum 3 buffers are required");
+            return false;
+        }
+        this.setBatchSize();
+        this.setIndexFromJoinAttribute();
+        this.hashTable = new TupleTable(this.leftIndex, this.left.getSchema().typeOf(this.leftIndex));
+        this.numPartitions = this.numBuff - 1;
+
+        this.leftPartitions = this.partition(this.left, this.leftIndex, this.leftBatchSize, "L");
+        this.rightPartitions = this.partition(this.right, this.rightIndex, this.rightBatchSize, "R");
+        if (this.leftPartitions == null || this.rightPartitions == null) {
+            return false;
+        }
+
+        this.partitionCursor = -1;
+        this.leftPartitionDone = true;
+        this.rightBatch = null;
+        this.matches = null;
+        this.eos = false;
+        return true;
+    }
+
+    public Batch next() {
+        if (this.eos) {
+            this.close();
+            return null;
+        }
+
+        Batch outBatch = new Batch(this.batchSize);
+
+        while (!outBatch.isFull()) {
+            // Emit the pending matches of the current right tuple first
+            if (this.matches != null) {
+                Tuple rightTuple = this.rightBatch.elementAt(this.rightCursor);
+                while (this.matchCursor < this.matches.size() && !outBatch.isFull()) {
+                    outBatch.add(this.matches.get(this.matchCursor).joinWith(rightTuple));
+                    this.matchCursor++;
+                }
+                if (this.matchCursor < this.matches.size()) {
+                    return outBatch;
+                }
+                this.matches = null;
+                this.rightCursor++;
+            }
+
+            // Probe the hash table with the next right tuple
+            if (this.rightBatch != null && this.rightCursor < this.rightBatch.size()) {
+                Tuple rightTuple = this.rightBatch.elementAt(this.rightCursor);
+                List<Tuple> found = this.hashTable.get(rightTuple, this.rightIndex);
+                if (found == null) {
+                    this.rightCursor++;
+                } else {
+                    this.matches = found;
+                    this.matchCursor = 0;
+                }
+                continue;
+            }
+
+            // Current right batch consumed, read the next one of this partition
+            this.rightBatch = (this.rightIn == null) ? null : this.readBatch(this.rightIn);
+            this.rightCursor = 0;
+            if (this.rightBatch != null) {
+                continue;
+            }
+
+            // Right partition exhausted for this chunk, build the next chunk
+            if (!this.buildNextChunk()) {
+                this.eos = true;
+                return outBatch.isEmpty() ? null : outBatch;
+            }
+        }
+        return outBatch;
+    }
+
+    public boolean close() {
+        this.closeStream(this.leftIn);
+        this.closeStream(this.rightIn);
+        this.leftIn = null;
+        this.rightIn = null;
+        if (this.hashTable != null) {
+            this.hashTable.clear();
+        }
+        for (File f : this.leftPartitions) {
+            f.delete();
+        }
+        for (File f : this.rightPartitions) {
+            f.delete();
+        }
+        return true;
+    }
+
+    private void setBatchSize() {
+        this.batchSize = Batch.getPageSize() / this.schema.getTupleSize();
+        this.leftBatchSize = Batch.getPageSize() / this.left.getSchema().getTupleSize();
+        this.rightBatchSize = Batch.getPageSize() / this.right.getSchema().getTupleSize();
+    }
+
+    private void setIndexFromJoinAttribute() {
+        Attribute leftAttribute = this.con.getLhs();
+        Attribute rightAttribute = (Attribute) this.con.getRhs();
+
+        this.leftIndex = this.left.getSchema().indexOf(leftAttribute);
+        this.rightIndex = this.right.getSchema().indexOf(rightAttribute);
+    }
+
+    /**
+     * Loads the next B-2 pages of the left partition into the hash table and
+     * restarts the scan of the matching right partition. Moves on to the next
+     * partition pair once the current left partition is exhausted.
+     */
+    private boolean buildNextChunk() {
+        this.hashTable.clear();
+        this.closeStream(this.rightIn);
+        this.rightIn = null;
+
+        while (true) {
+            if (this.leftPartitionDone) {
+                this.closeStream(this.leftIn);
+                this.leftIn = null;
+                this.partitionCursor++;
+                if (this.partitionCursor >= this.numPartitions) {
+                    return false;
+                }
+                File leftFile = this.leftPartitions.get(this.partitionCursor);
+                File rightFile = this.rightPartitions.get(this.partitionCursor);
+                if (leftFile.length() == 0 || rightFile.length() == 0) {
+                    continue;
+                }
+                this.leftIn = this.openStream(leftFile);
+                this.leftPartitionDone = false;
+            }
+
+            for (int i = 0; i < this.numBuff - 2; i++) {
+                Batch b = this.readBatch(this.leftIn);
+                if (b == null) {
+                    this.leftPartitionDone = true;
+                    break;
+                }
+                for (int j = 0; j < b.size(); j++) {
+                    Tuple t = b.elementAt(j);
+                    this.hashTable.add(t);
+                }
+            }
+
+            if (!this.hashTable.isEmpty()) {
+                this.rightIn = this.openStream(this.rightPartitions.get(this.partitionCursor));
+                this.rightBatch = null;
+                this.rightCursor = 0;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Hashes every tuple of the input into one of the B-1 partitions,
+     * flushing each partition's output buffer to its file when full.
+     */
+    private List<File> partition(Operator input, int index, int inputBatchSize, String side) {
+        if (!input.open()) {
+            return null;
+        }
+
+        List<File> files = new ArrayList<>();
+        ObjectOutputStream[] outs = new ObjectOutputStream[this.numPartitions];
+        Batch[] buffers = new Batch[this.numPartitions];
+        try {
+            for (int p = 0; p < this.numPartitions; p++) {
+                File f = new File("HJtemp-" + this.instanceNumber + "-" + side + "-" + p);
+                files.add(f);
+                buffers[p] = new Batch(inputBatchSize);
+            }
+
+            Batch in;
+            while ((in = input.next()) != null) {
+                for (int i = 0; i < in.size(); i++) {
+                    Tuple t = in.elementAt(i);
+                    int p = this.partitionOf(TupleTable.hash(t, index));
+                    buffers[p].add(t);
+                    if (buffers[p].isFull()) {
+                        this.flush(outs, buffers, files, p);
+                        buffers[p] = new Batch(inputBatchSize);
+                    }
+                }
+            }
+            for (int p = 0; p < this.numPartitions; p++) {
+                if (!buffers[p].isEmpty()) {
+                    this.flush(outs, buffers, files, p);
+                }
+                if (outs[p] != null) {
+                    outs[p].close();
+                } else {
+                    files.get(p).createNewFile();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("HashJoin: Error in writing the partition files");
+            return null;
+        }
+
+        input.close();
+        return files;
+    }
+
+    private void flush(ObjectOutputStream[] outs, Batch[] buffers, List<File> files, int p) throws IOException {
+        if (outs[p] == null) {
+            outs[p] = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(files.get(p))));
+        }
+        outs[p].writeObject(buffers[p]);
+        outs[p].reset();
+    }
+
+    /**
+     * Partition of a key hash; the bits are mixed so that keys clustered
+     * modulo the partition count are still spread evenly.
+     */
+    private int partitionOf(int hash) {
+        int h = hash * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), this.numPartitions);
+    }
+
+    private ObjectInputStream openStream(File file) {
+        try {
+            return new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (IOException e) {
+            System.err.println("HashJoin: Error in reading the partition file");
+            System.exit(1);
+        }
+        return null;
+    }
+
+    private Batch readBatch(ObjectInputStream in) {
+        try {
+            return (Batch) in.readObject();
+        } catch (EOFException e) {
+            return null;
+        } catch (ClassNotFoundException c) {
+            System.err.println("HashJoin: Deserialization Error");
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("HashJoin: Partition File Reading Error");
+            System.exit(1);
+        }
+        return null;
+    }
+
+    private void closeStream(ObjectInputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            System.err.println("HashJoin: Partition File Closing Error");
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package qp.operators;
+
+import qp.utils.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The index nested-loop join reads the left input one batch at a time and
+ * probes a B+-tree over the join column of the right table with every left
+ * tuple. Only the leaf pages and the data pages that hold matches are read,
+ * so the right table is never scanned. The right input must be a base table
+ * stored in pages, with an index on its join column (see BuildIndex).
+ *
+ * Uses 1 buffer for the left input, 1 for the output, 1 for the index page
+ * being searched and 1 for the data page of the last match.
+ */
+public class IndexNestedJoin extends Join {
+
+    private int batchSize; // Number of tuple per output batch
+
+    private int leftIndex; // Index of the join column in the left tuple
+
+    private BPlusTree tree;
+    private TableReader reader;
+    private PageFormat format;
+    private ByteBuffer dataPage;   // Data page holding the last match
+    private int dataPageNum;
+
+    // Variables used during the iteration
+    private Batch leftBatch;
+    private int leftCursor;
+    private BPlusTree.Cursor matches; // Rids of the right tuples matching the left tuple
+    private boolean eos;
+
+    public IndexNestedJoin(Join join) {
+        super(join.getLeft(), join.getRight(), join.getCondition(), join.getOpType());
+        this.schema = join.getSchema();
+        this.jointype = join.getJoinType();
+        this.numBuff = join.getNumBuff();
+    }
+
+    /** Whether the right input of the join can be probed through an index **/
+
+    public static boolean isApplicable(Join join) {
+        if (join.getRight().getOpType() != OpType.SCAN || join.getRight() instanceof IndexScan) {
+            return false;
+        }
+        String tabname = ((Scan) join.getRight()).getTabName();
+        Attribute attr = (Attribute) join.getCondition().getRhs();
+        return BPlusTree.exists(tabname, attr.getColName()) && PageFormat.isPageFile(tabname + ".tbl");
+    }
+
+    /** Name of the index file probed by the join **/
+
+    public static String indexFileName(Join join) {
+        String tabname = ((Scan) join.getRight()).getTabName();
+        return BPlusTree.fileName(tabname, ((Attribute) join.getCondition().getRhs()).getColName());
+    }
+
+    public boolean open() {
+        if (!isApplicable(this)) {
+            System.err.println("IndexNestedJoin: No index on the join column of the right table");
+            return false;
+        }
+        this.batchSize = Batch.getPageSize() / this.schema.getTupleSize();
+        this.leftIndex = this.left.getSchema().indexOf(this.con.getLhs());
+
+        String tabname = ((Scan) this.right).getTabName();
+        try {
+            this.tree = new BPlusTree(indexFileName(this));
+            this.reader = new TableReader(tabname + ".tbl", ((Scan) this.right).getTableSchema(),
+                    Scan.getScanMode() == Scan.MMAP);
+        } catch (IOException e) {
+            System.err.println("IndexNestedJoin: Error in opening the index of " + tabname);
+            return false;
+        }
+        this.format = this.reader.getFormat();
+        this.dataPage = null;
+        this.dataPageNum = -1;
+
+        this.leftBatch = null;
+        this.leftCursor = 0;
+        this.matches = null;
+        this.eos = false;
+        return this.left.open();
+    }
+
+    public Batch next() {
+        if (this.eos) {
+            this.close();
+            return null;
+        }
+
+        Batch outBatch = new Batch(this.batchSize);
+        try {
+            while (!outBatch.isFull()) {
+                // Emit the remaining matches of the current left tuple
+                if (this.matches != null) {
+                    int rid = this.matches.next();
+                    if (rid >= 0) {
+                        outBatch.add(this.leftBatch.elementAt(this.leftCursor).joinWith(this.fetch(rid)));
+                        continue;
+                    }
+                    this.matches = null;
+                    this.leftCursor++;
+                }
+
+                if (this.leftBatch == null || this.leftCursor >= this.leftBatch.size()) {
+                    this.leftBatch = this.left.next();
+                    this.leftCursor = 0;
+                    if (this.leftBatch == null) {
+                        this.eos = true;
+                        break;
+                    }
+                    continue;
+                }
+
+                // Probe the index with the next left tuple
+                this.matches = this.probe(this.leftBatch.elementAt(this.leftCursor));
+            }
+        } catch (IOException e) {
+            System.err.println("IndexNestedJoin: Error in reading the index or the right table");
+            System.exit(1);
+        }
+
+        if (outBatch.isEmpty()) {
+            this.close();
+            return null;
+        }
+        return outBatch;
+    }
+
+    /** Finds the rids of the right tuples matching the join column of
+     ** the left tuple, passing the tree the value in its own type
+     **/
+
+    private BPlusTree.Cursor probe(Tuple leftTuple) throws IOException {
+        switch (leftTuple.typeAt(this.leftIndex)) {
+            case Attribute.INT:
+                return this.tree.find(leftTuple.getInt(this.leftIndex));
+            case Attribute.REAL:
+                return this.tree.find(leftTuple.getFloat(this.leftIndex));
+            default:
+                return this.tree.find(leftTuple.getString(this.leftIndex));
+        }
+    }
+
+    /** Reads the right tuple with the given rid, from the cached page if it is there **/
+
+    private Tuple fetch(int rid) throws IOException {
+        int perPage = this.format.getTuplesPerPage();
+        int pageNum = rid / perPage;
+        if (pageNum != this.dataPageNum) {
+            this.dataPage = this.reader.readPage(pageNum);
+            this.dataPageNum = pageNum;
+        }
+        return ((Scan) this.right).projectRow(this.format.readTuple(this.dataPage, rid % perPage));
+    }
+
+    public boolean close() {
+        try {
+            if (this.tree != null) {
+                this.tree.close();
+                this.tree = null;
+            }
+            if (this.reader != null) {
+                this.reader.close();
+                this.reader = null;
+            }
+        } catch (IOException e) {
+            System.err.println("IndexNestedJoin: Error in closing the index");
+        }
+        return true;
+    }
+}
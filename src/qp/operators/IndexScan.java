@@ -0,0 +1,189 @@
+/**
+ * Scans the tuples of a base table that satisfy a selection condition
+ * through the index on the selected column
+ **/
+
+package qp.operators;
+
+import qp.utils.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stands for a Select over a Scan of the table. The range of keys that
+ * satisfies the condition is looked up in the B+-tree of the column, and
+ * only the leaf pages of the range and the data pages of the matching
+ * records are read. The tuples are returned in the order of the key.
+ * Not equal conditions are left to Select, as they match most of the table.
+ */
+
+public class IndexScan extends Scan {
+
+    Condition con;          // selection condition answered by the index
+
+    BPlusTree tree;
+    BPlusTree.Cursor matches;   // Rids of the records in the range
+    ByteBuffer dataPage;        // Data page holding the last match
+    int dataPageNum;
+
+
+    public IndexScan(String tabname, Condition con, int type) {
+        super(tabname, type);
+        this.con = con;
+    }
+
+    public Condition getCondition() {
+        return con;
+    }
+
+    public List<Order> getOrder() {
+        return Arrays.asList(new Order(con.getLhs(), Order.OrderType.ASC));
+    }
+
+    /** Whether the condition over the base operator can be answered by an index **/
+
+    public static boolean isApplicable(Operator base, Condition con) {
+        if (base.getOpType() != OpType.SCAN || base instanceof IndexScan) {
+            return false;
+        }
+        if (con.getOpType() != Condition.SELECT || con.getExprType() == Condition.NOTEQUAL) {
+            return false;
+        }
+        String tabname = ((Scan) base).getTabName();
+        return BPlusTree.exists(tabname, con.getLhs().getColName()) && PageFormat.isPageFile(tabname + ".tbl");
+    }
+
+    public String getIndexFileName() {
+        return BPlusTree.fileName(tabname, con.getLhs().getColName());
+    }
+
+
+    public boolean open() {
+        closeIndex();
+        if (!super.open()) {
+            return false;
+        }
+        if (reader == null) {
+            System.err.println("IndexScan: " + filename + " is not written in pages");
+            return false;
+        }
+        try {
+            tree = new BPlusTree(getIndexFileName());
+            matches = findRange();
+        } catch (IOException e) {
+            System.err.println("IndexScan: Error in reading the index of " + tabname);
+            return false;
+        }
+        dataPage = null;
+        dataPageNum = -1;
+        return true;
+    }
+
+    /** Looks up the first key of the range satisfying the condition **/
+
+    private BPlusTree.Cursor findRange() throws IOException {
+        int datatype = schema.typeOf(con.getLhs());
+        String checkValue = (String) con.getRhs();
+        Object value;
+        Object last = null;     // open end of the range
+        if (datatype == Attribute.INT) {
+            value = Integer.valueOf(checkValue);
+        } else if (datatype == Attribute.REAL) {
+            value = Float.valueOf(checkValue);
+            last = Float.NaN;   // NaN is ordered last, but fails every comparison
+        } else {
+            value = checkValue;
+        }
+
+        switch (con.getExprType()) {
+            case Condition.EQUAL:
+                return tree.find(value, true, value, true);
+            case Condition.LESSTHAN:
+                return tree.find(null, false, value, false);
+            case Condition.LTOE:
+                return tree.find(null, false, value, true);
+            case Condition.GREATERTHAN:
+                return tree.find(value, false, last, false);
+            case Condition.GTOE:
+                return tree.find(value, true, last, false);
+            default:
+                throw new IOException("IndexScan: Condition not supported by the index");
+        }
+    }
+
+
+    /** Reads the records of the next rids of the range. May be run
+     ** by the reading thread, which closes the files at the end
+     **/
+
+    protected Batch readBatch() throws IOException {
+        if (eos) {
+            closeIndex();
+            closeFile();
+            return null;
+        }
+        Batch tuples = new Batch(batchsize);
+        PageFormat format = reader.getFormat();
+        int perPage = format.getTuplesPerPage();
+        while (!tuples.isFull()) {
+            int rid = matches.next();
+            if (rid < 0) {
+                eos = true;
+                break;
+            }
+            if (rid / perPage != dataPageNum) {
+                dataPageNum = rid / perPage;
+                dataPage = reader.readPage(dataPageNum);
+            }
+            tuples.add(projectRow(format.readTuple(dataPage, rid % perPage)));
+        }
+        if (tuples.isEmpty()) {
+            closeIndex();
+            closeFile();
+            return null;
+        }
+        return tuples;
+    }
+
+    /** The records are not read in the order of the file, so the
+     ** columns are taken from the tuples
+     **/
+
+    public ColumnBatch nextColumns() {
+        Batch batch = next();
+        if (batch == null) {
+            return null;
+        }
+        return ColumnBatch.fromBatch(batch, TupleLayout.of(schema));
+    }
+
+    public boolean close() {
+        boolean closed = super.close();  // stops the reading thread first
+        closeIndex();
+        return closed;
+    }
+
+    private void closeIndex() {
+        try {
+            if (tree != null) {
+                tree.close();
+                tree = null;
+            }
+        } catch (IOException e) {
+            System.err.println("IndexScan: Error closing the index of " + tabname);
+        }
+    }
+
+
+    public Object clone() {
+        IndexScan newscan = new IndexScan(tabname, (Condition) con.clone(), optype);
+        newscan.setSchema((Schema) getTableSchema().clone());
+        if (projection != null) {
+            newscan.setProjection(schema.getAttList());
+        }
+        return newscan;
+    }
+}
@@ -7,6 +7,9 @@ package qp.operators;
 
 import qp.utils.*;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Vector;
 
 public class Join extends Operator {
@@ -76,6 +79,14 @@ public class Join extends Operator {
         this.right = right;
     }
 
+    /** Whether the right input is a base table, which can be
+     ** scanned again by reopening it instead of being materialized
+     **/
+
+    public boolean isRightRescannable() {
+        return right.getOpType() == OpType.SCAN;
+    }
+
     public void setCondition(Condition cond) {
         this.con = cond;
     }
@@ -84,6 +95,20 @@ public class Join extends Operator {
         return con;
     }
 
+    /** A sort-merge join returns the tuples in the order of the join
+     ** attribute, and an index nested join in the order of the left input.
+     ** The other joins read the inputs in blocks or partitions
+     **/
+
+    public List<Order> getOrder() {
+        if (jointype == JoinType.SORTMERGE) {
+            return Arrays.asList(new Order(con.getLhs(), Order.OrderType.ASC));
+        } else if (jointype == JoinType.INDEXNESTED) {
+            return left.getOrder();
+        }
+        return Collections.emptyList();
+    }
+
     public Object clone() {
         Operator newleft = (Operator) left.clone();
         Operator newright = (Operator) right.clone();
@@ -0,0 +1,90 @@
+/**
+ * Returns the first rows of its input, for LIMIT without ORDER BY
+ **/
+
+package qp.operators;
+
+import qp.utils.Batch;
+import qp.utils.Schema;
+
+import java.util.List;
+
+/**
+ * Once the limit is reached the input is closed and never asked for
+ * another batch, so the operators below stop reading their tables
+ * early. As a Project returns a row per input row, the optimizer puts
+ * the Limit below the projections (see QueryMain).
+ */
+public class Limit extends Operator {
+
+    private Operator base;
+    private int limit;       // number of rows to return
+
+    private int returned;    // rows returned so far
+
+    public Limit(Operator base, int limit, int type) {
+        super(type);
+        this.base = base;
+        this.limit = limit;
+    }
+
+    public void setBase(Operator base) {
+        this.base = base;
+    }
+
+    public Operator getBase() {
+        return base;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public List<Order> getOrder() {
+        return base.getOrder();
+    }
+
+    public boolean open() {
+        returned = 0;
+        if (limit == 0) {
+            return true;
+        }
+        return base.open();
+    }
+
+    public Batch next() {
+        if (returned >= limit) {
+            return null;
+        }
+        Batch inbatch = base.next();
+        if (inbatch == null) {
+            returned = limit;
+            return null;
+        }
+        if (returned + inbatch.size() <= limit) {
+            returned += inbatch.size();
+        } else {
+            Batch outbatch = new Batch(inbatch.capacity());
+            for (int i = 0; returned < limit; i++) {
+                outbatch.add(inbatch.elementAt(i));
+                returned++;
+            }
+            inbatch = outbatch;
+        }
+        if (returned >= limit) {
+            base.close();   // nothing more is read from the input
+        }
+        return inbatch;
+    }
+
+    public boolean close() {
+        return true;
+    }
+
+    public Object clone() {
+        Operator newbase = (Operator) base.clone();
+        Limit newlimit = new Limit(newbase, limit, optype);
+        newlimit.setSchema((Schema) newbase.getSchema().clone());
+        return newlimit;
+    }
+}
@@ -22,6 +22,7 @@ public class NestedJoin extends Join {
     int rightindex;    // Index of the join attribute in right table
 
     String rfname;    // The file name where the right table is materialize
+    boolean rescan;   // Whether the right table is scanned again instead
 
     static int filenum = 0;   // To get unique filenum for this operation
 
@@ -71,10 +72,14 @@ public class NestedJoin extends Join {
         eosr = true;
 
         /** Right hand side table is to be materialized
-         ** for the Nested join to perform
+         ** for the Nested join to perform, unless it is
+         ** a base table which is simply scanned again
          **/
 
-        if (!right.open()) {
+        rescan = isRightRescannable();
+        if (rescan) {
+            rfname = null;
+        } else if (!right.open()) {
             return false;
         } else {
             /** If the right operator is not a base table then
@@ -82,7 +87,6 @@ public class NestedJoin extends Join {
              ** into a file
              **/
 
-            //if(right.getOpType() != OpType.SCAN){
             filenum++;
             rfname = "NJtemp-" + String.valueOf(filenum);
             try {
@@ -95,7 +99,6 @@ public class NestedJoin extends Join {
                 System.out.println("NestedJoin:writing the temporay file error");
                 return false;
             }
-            //}
             if (!right.close())
                 return false;
         }
@@ -136,8 +139,14 @@ public class NestedJoin extends Join {
                  ** scanning of right table
                  **/
                 try {
-
-                    in = new ObjectInputStream(new FileInputStream(rfname));
+                    if (rescan) {
+                        if (!right.open()) {
+                            System.err.println("NestedJoin:error in scanning the right table");
+                            System.exit(1);
+                        }
+                    } else {
+                        in = new ObjectInputStream(new FileInputStream(rfname));
+                    }
                     eosr = false;
                 } catch (IOException io) {
                     System.err.println("NestedJoin:error in reading the file");
@@ -150,7 +159,11 @@ public class NestedJoin extends Join {
 
                 try {
                     if (rcurs == 0 && lcurs == 0) {
-                        rightbatch = (Batch) in.readObject();
+                        rightbatch = rescan ? right.next() : (Batch) in.readObject();
+                        if (rightbatch == null) {
+                            eosr = true;
+                            break;
+                        }
                     }
 
                     for (i = lcurs; i < leftbatch.size(); i++) {
@@ -206,9 +219,10 @@ public class NestedJoin extends Join {
 
     /** Close the operator */
     public boolean close() {
-
-        File f = new File(rfname);
-        f.delete();
+        if (rfname != null) {
+            File f = new File(rfname);
+            f.delete();
+        }
         return true;
 
     }
@@ -12,4 +12,8 @@ public class OpType {
     public static final int PROJECT = 2;
     public static final int JOIN = 3;
     public static final int SORT = 4;
+    public static final int DISTINCT = 5;
+    public static final int AGGREGATE = 6;
+    public static final int LIMIT = 7;
+    public static final int TOPN = 8;
 }
@@ -7,17 +7,33 @@ package qp.operators;
 
 import qp.utils.*;
 
+import java.util.Collections;
+import java.util.List;
+
 public class Operator {
 
 
     int optype;   //Whether it is OpType.SELECT/ Optype.PROJECT/OpType.JOIN
     Schema schema;   // Schema of the result at this operator
 
+    /** Whether Select and Project exchange column batches
+     ** with their inputs instead of pages of tuples
+     **/
+    static boolean vectorized = false;
+
     public Operator(int type) {
         this.optype = type;
     }
 
 
+    public static void setVectorized(boolean flag) {
+        vectorized = flag;
+    }
+
+    public static boolean isVectorized() {
+        return vectorized;
+    }
+
     public Schema getSchema() {
         return schema;
     }
@@ -34,6 +50,15 @@ public class Operator {
         return optype;
     }
 
+    /** Attributes the result is known to be sorted on, the interesting
+     ** order a later join or the ORDER BY can use instead of sorting
+     ** again. Empty if the result is in no particular order
+     **/
+
+    public List<Order> getOrder() {
+        return Collections.emptyList();
+    }
+
 
     public boolean open() {
         return true;
@@ -44,6 +69,19 @@ public class Operator {
         return null;
     }
 
+    /** Next page of the result, stored column by column.
+     ** Operators that do not produce columns natively transpose
+     ** the page returned by next()
+     **/
+
+    public ColumnBatch nextColumns() {
+        Batch batch = next();
+        if (batch == null) {
+            return null;
+        }
+        return ColumnBatch.fromBatch(batch, TupleLayout.of(schema));
+    }
+
     public boolean close() {
 
         return true;
@@ -2,6 +2,8 @@ package qp.operators;
 
 import qp.utils.Attribute;
 
+import java.util.List;
+
 /**
  * Created by michaellimantara on 21/3/17.
  */
@@ -27,4 +29,22 @@ public class Order {
     public OrderType getOrderType() {
         return orderType;
     }
+
+    /** Whether tuples sorted on the given orders are also sorted on the
+     ** required ones, that is, the required orders are a prefix of them
+     **/
+
+    public static boolean satisfies(List<Order> given, List<Order> required) {
+        if (required.size() > given.size()) {
+            return false;
+        }
+        for (int i = 0; i < required.size(); i++) {
+            Order order = given.get(i);
+            Order req = required.get(i);
+            if (!order.getAttribute().equals(req.getAttribute()) || order.getOrderType() != req.getOrderType()) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -6,6 +6,8 @@ package qp.operators;
 
 import qp.utils.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 
 public class Project extends Operator {
@@ -27,6 +29,7 @@ public class Project extends Operator {
      **/
 
     int[] attrIndex;
+    TupleLayout layout;  // layout of the projected tuples
 
 
     public Project(Operator base, Vector as, int type) {
@@ -48,6 +51,19 @@ public class Project extends Operator {
         return attrSet;
     }
 
+    /** The order of the input, as far as its attributes are kept **/
+
+    public List<Order> getOrder() {
+        List<Order> order = new ArrayList<>();
+        for (Order o : base.getOrder()) {
+            if (!schema.contains(o.getAttribute())) {
+                break;
+            }
+            order.add(o);
+        }
+        return order;
+    }
+
     /** Opens the connection to the base operator
      ** Also figures out what are the columns to be
      ** projected from the base operator
@@ -76,6 +92,7 @@ public class Project extends Operator {
             //  Debug.PPrint(attr);
             //System.out.println("  "+index+"  ");
         }
+        layout = TupleLayout.of(schema);
 
         if (base.open())
             return true;
@@ -87,6 +104,10 @@ public class Project extends Operator {
 
     public Batch next() {
         //System.out.println("Project:-----------------in next-----------------");
+        if (vectorized) {
+            ColumnBatch columns = nextColumns();
+            return columns == null ? null : columns.toBatch(batchsize);
+        }
         outbatch = new Batch(batchsize);
 
         /** all the tuples in the inbuffer goes to the output
@@ -105,18 +126,26 @@ public class Project extends Operator {
             Tuple basetuple = inbatch.elementAt(i);
             //Debug.PPrint(basetuple);
             //System.out.println();
-            Vector present = new Vector();
-            for (int j = 0; j < attrSet.size(); j++) {
-                Object data = basetuple.dataAt(attrIndex[j]);
-                present.add(data);
-            }
-            Tuple outtuple = new Tuple(present);
+            Tuple outtuple = basetuple.project(attrIndex, layout);
             outbatch.add(outtuple);
         }
         return outbatch;
     }
 
 
+    /** Projecting a column batch only keeps references to the
+     ** projected columns of the base batch
+     **/
+
+    public ColumnBatch nextColumns() {
+        ColumnBatch columns = base.nextColumns();
+        if (columns == null) {
+            return null;
+        }
+        return columns.project(attrIndex, layout);
+    }
+
+
     /** Close the operator */
     public boolean close() {
         return true;
@@ -8,21 +8,53 @@ package qp.operators;
 import qp.utils.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 /** Scan operator - read data from a file */
 
 public class Scan extends Operator {
 
+    /** enumeration of the ways a page formatted table file is read **/
+    public static final int READ = 0;   // page by page through read calls
+    public static final int MMAP = 1;   // memory mapped, decoded from the page cache
+
+    static int scanMode = READ;
+
+    /** Number of pages not read as the zone map ruled them out **/
+    static final AtomicLong pagesSkipped = new AtomicLong();
+
     String filename;  //corresponding file name
     String tabname;  //tablename
 
     int batchsize; // Number of tuples per out batch;
 
-    ObjectInputStream in;      // Input file being scanned
+    ObjectInputStream in;      // Input file being scanned, if stored as serialized tuples
+    TableReader reader;        // Input file being scanned, if stored in fixed-width pages
+
+    int pagenum;            // Next page of the table file to be read
+    int slot;               // Next record in the current page
+    ByteBuffer page;        // Current page of the table file
 
     boolean eos;            // To indicate whether end of stream reached or not
 
+    PrefetchReader<Batch> prefetch;              // Reads batches ahead, if enabled
+    PrefetchReader<ColumnBatch> columnPrefetch;  // Reads column batches ahead, if enabled
+
+    List<Condition> pushed = new ArrayList<>();  // Conditions of the selections over this scan
+    ZoneMap zones;          // Ranges of the columns in every page, if any
+    int[] filterIndex;      // The pushed conditions, resolved against the schema
+    Object[] filterValue;
+
+    Schema tableSchema;     // Schema of the table, if only some of its columns are read
+    int[] projection;       // Indexes in the table of the columns read, if not all
+    TupleLayout projectedLayout;
+    List<ColumnSource> sources;  // Files the columns read are decoded from, if not all
+    int rownum;             // Next record to be decoded from them
+
 
     /** Constructor - just save filename  */
 
@@ -34,10 +66,154 @@ public class Scan extends Operator {
     }
 
 
+    /** Set how the table files are read by all the scans of the query **/
+    public static void setScanMode(int mode) {
+        scanMode = mode;
+    }
+
+    public static int getScanMode() {
+        return scanMode;
+    }
+
     public String getTabName() {
         return tabname;
     }
 
+    public static long getPagesSkipped() {
+        return pagesSkipped.get();
+    }
+
+    public static void resetCounters() {
+        pagesSkipped.set(0);
+    }
+
+    /** Condition of a selection over this scan. The pages that cannot
+     ** satisfy it are skipped, the selection still filters the others
+     **/
+
+    public void pushCondition(Condition con) {
+        if (!pushed.contains(con)) {
+            pushed.add(con);
+        }
+    }
+
+    /** Reads only the columns of the table that are among attrs, which
+     ** become the schema of the scan. Follows setSchema with the schema
+     ** of the table. At least one column is read
+     **/
+
+    public void setProjection(Vector attrs) {
+        Schema table = getTableSchema();
+        Vector kept = new Vector();
+        for (int i = 0; i < table.getNumCols(); i++) {
+            Attribute attr = table.getAttribute(i);
+            for (int j = 0; j < attrs.size(); j++) {
+                if (attr.equals((Attribute) attrs.elementAt(j))) {
+                    kept.add(attr);
+                    break;
+                }
+            }
+        }
+        if (kept.isEmpty()) {
+            kept.add(table.getAttribute(0));
+        }
+        if (kept.size() == table.getNumCols()) {
+            schema = table;
+            tableSchema = null;
+            projection = null;
+            return;
+        }
+        projection = new int[kept.size()];
+        for (int j = 0; j < kept.size(); j++) {
+            projection[j] = table.indexOf((Attribute) kept.elementAt(j));
+        }
+        tableSchema = table;
+        schema = table.subSchema(kept);
+    }
+
+    /** Schema of the table file, of which the scan may read only some columns **/
+
+    public Schema getTableSchema() {
+        return tableSchema != null ? tableSchema : schema;
+    }
+
+    public int[] getProjection() {
+        return projection;
+    }
+
+    /** Whether the columns read are stored in column files of their own **/
+
+    public boolean hasColumnFiles() {
+        if (projection == null) {
+            return false;
+        }
+        for (int j = 0; j < projection.length; j++) {
+            String colname = tableSchema.getAttribute(projection[j]).getColName();
+            if (!PageFormat.isPageFile(PageFormat.columnFileName(tabname, colname))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Number of bytes a record takes in the files read by the scan,
+     ** which is less than the tuple size if some strings are stored as codes
+     **/
+
+    public int getStoredTupleSize() {
+        try {
+            if (hasColumnFiles()) {
+                int size = 0;
+                for (int j = 0; j < projection.length; j++) {
+                    String colname = tableSchema.getAttribute(projection[j]).getColName();
+                    size += PageFormat.readRecordSize(PageFormat.columnFileName(tabname, colname));
+                }
+                return size;
+            }
+            if (PageFormat.isPageFile(filename)) {
+                return PageFormat.readRecordSize(filename);
+            }
+        } catch (IOException e) {
+            System.err.println("Scan: Error reading the header of " + filename);
+        }
+        return getTableSchema().getTupleSize();
+    }
+
+    /** Dictionary the values of the attribute are decoded from once the
+     ** scan is open, null if the column is not stored as codes
+     **/
+
+    public StringDictionary getDictionary(Attribute attr) {
+        if (reader == null) {
+            return null;
+        }
+        if (sources == null) {
+            int col = reader.getFormat().getSchema().indexOf(attr);
+            return col < 0 ? null : reader.getFormat().getDictionary(col);
+        }
+        int outcol = schema.indexOf(attr);
+        for (ColumnSource source : sources) {
+            for (int i = 0; i < source.outcols.length; i++) {
+                if (source.outcols[i] == outcol) {
+                    return source.reader.getFormat().getDictionary(source.cols[i]);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Keeps the columns read by the scan of a record of the table **/
+
+    public Tuple projectRow(Tuple row) {
+        if (projection == null) {
+            return row;
+        }
+        if (projectedLayout == null) {
+            projectedLayout = TupleLayout.of(schema);
+        }
+        return row.project(projection, projectedLayout);
+    }
+
     /** Open file prepare a stream pointer to read input file */
 
     public boolean open() {
@@ -51,9 +227,22 @@ public class Scan extends Operator {
 
         //System.out.println("Scan:----------Scanning:"+tabname);
         eos = false;
+        closePrefetch();
 
         try {
-            in = new ObjectInputStream(new FileInputStream(filename));
+            if (reader != null) {
+                closeFile();    // opened again before the end, as by a nested join
+            }
+            if (PageFormat.isPageFile(filename)) {
+                reader = new TableReader(filename, getTableSchema(), scanMode == MMAP);
+                pagenum = 0;
+                slot = 0;
+                page = null;
+                loadZones();
+                openSources();
+            } else {
+                in = new ObjectInputStream(new FileInputStream(filename));
+            }
         } catch (Exception e) {
             System.err.println(" Error reading " + filename);
             return false;
@@ -63,53 +252,339 @@ public class Scan extends Operator {
     }
 
 
-    /** Next operator - get a tuple from the file
-     **
-     **
+    /** Next operator - get a tuple from the file. If read-ahead
+     ** is enabled, the batches are read by a background thread
+     ** and this only takes the next one
      ***/
 
     public Batch next() {
+        if (PrefetchReader.getDepth() == 0) {
+            return read(this::readBatch);
+        }
+        if (prefetch == null) {
+            prefetch = new PrefetchReader<>(this::readBatch, PrefetchReader.getDepth());
+        }
+        return fetch(prefetch);
+    }
+
+    /** Reads the next batch on the calling thread **/
+
+    private <T> T read(PrefetchReader.PageSource<T> source) {
+        try {
+            return source.read();
+        } catch (IOException e) {
+            System.err.println("Scan:Error reading " + filename);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /** The reading thread closes the file when it reaches the end **/
+
+    private <T> T fetch(PrefetchReader<T> reader) {
+        try {
+            return reader.next();
+        } catch (IOException e) {
+            System.err.println("Scan:Error reading " + filename);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /** Reads the next batch from the file. The errors are left to the
+     ** caller, as this may be run by the reading thread
+     **/
+
+    protected Batch readBatch() throws IOException {
 
         /** The file reached its end and no more to read **/
 
         if (eos) {
-            close();
+            closeFile();
             return null;
         }
 
+        if (sources != null) {
+            ColumnBatch columns = readProjected();
+            return columns == null ? null : columns.toBatch(batchsize);
+        }
+        if (reader != null) {
+            return nextFromPages();
+        }
+
         Batch tuples = new Batch(batchsize);
 
         while (!tuples.isFull()) {
             try {
-                Tuple data = (Tuple) in.readObject();
+                Tuple data = projectRow((Tuple) in.readObject());
                 //System.out.print("SCAN:");
                 //Debug.PPrint(data);
                 tuples.add(data);
             } catch (ClassNotFoundException cnf) {
-                System.err.println("Scan:Class not found for reading file  " + filename);
-                System.exit(1);
+                throw new IOException("Scan:Class not found for reading file  " + filename, cnf);
             } catch (EOFException EOF) {
                 /** At this point incomplete page is sent and at next call it considered
                  ** as end of file
                  **/
                 eos = true;
                 return tuples;
-            } catch (IOException e) {
-                System.err.println("Scan:Error reading " + filename);
-                System.exit(1);
             }
         }
         return tuples;
     }
 
+    /** Reads the zone map of the table if there are conditions to check
+     ** against it, and parses their constants once
+     **/
+
+    private void loadZones() {
+        zones = null;
+        if (pushed.isEmpty() || !ZoneMap.exists(tabname)) {
+            return;
+        }
+        ZoneMap map;
+        Schema table = getTableSchema();
+        try {
+            map = ZoneMap.read(ZoneMap.fileName(tabname), table);
+        } catch (IOException e) {
+            System.err.println("Scan: Error reading the zone map of " + tabname + ", every page is read");
+            return;
+        }
+        if (map.getNumTuples() != reader.getNumTuples()
+                || map.getTuplesPerPage() != reader.getFormat().getTuplesPerPage()) {
+            return;     // left from an earlier version of the table
+        }
+        filterIndex = new int[pushed.size()];
+        filterValue = new Object[pushed.size()];
+        for (int i = 0; i < pushed.size(); i++) {
+            Condition con = pushed.get(i);
+            filterIndex[i] = table.indexOf(con.getLhs());
+            String value = (String) con.getRhs();
+            int type = table.typeOf(con.getLhs());
+            if (type == Attribute.INT) {
+                filterValue[i] = Integer.valueOf(value);
+            } else if (type == Attribute.REAL) {
+                filterValue[i] = Float.valueOf(value);
+            } else {
+                filterValue[i] = value;
+            }
+        }
+        zones = map;
+    }
+
+    /** Moves past the pages that cannot satisfy every pushed condition **/
+
+    private void skipPages() {
+        if (zones == null) {
+            return;
+        }
+        while (pagenum < reader.getNumPages() && !mayMatch(pagenum)) {
+            pagenum++;
+            pagesSkipped.incrementAndGet();
+        }
+    }
+
+    private boolean mayMatch(int pagenum) {
+        for (int i = 0; i < filterIndex.length; i++) {
+            if (filterIndex[i] >= 0 && !zones.mayMatch(pagenum, filterIndex[i],
+                    pushed.get(i).getExprType(), filterValue[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Opens the files the columns read are decoded from: their column
+     ** files if they all have one, or else the table file itself
+     **/
+
+    private void openSources() throws IOException {
+        sources = null;
+        if (projection == null) {
+            return;
+        }
+        sources = new ArrayList<>();
+        rownum = 0;
+        if (hasColumnFiles()) {
+            for (int j = 0; j < projection.length; j++) {
+                Attribute attr = tableSchema.getAttribute(projection[j]);
+                TableReader colreader = new TableReader(PageFormat.columnFileName(tabname, attr.getColName()),
+                        PageFormat.columnSchema(attr), scanMode == MMAP);
+                sources.add(new ColumnSource(colreader, new int[]{0}, new int[]{j}));
+                if (colreader.getNumTuples() != reader.getNumTuples()) {
+                    closeSources();     // left from an earlier version of the table
+                    sources = new ArrayList<>();
+                    break;
+                }
+            }
+        }
+        if (sources.isEmpty()) {
+            int[] outcols = new int[projection.length];
+            for (int j = 0; j < outcols.length; j++) {
+                outcols[j] = j;
+            }
+            sources.add(new ColumnSource(reader, projection, outcols));
+        }
+    }
+
+    /** Decodes the columns read of the next records, skipping the pages
+     ** of the table ruled out by the zone map
+     **/
+
+    protected ColumnBatch readProjected() throws IOException {
+        if (eos) {
+            closeFile();
+            return null;
+        }
+        ColumnBatch columns = new ColumnBatch(TupleLayout.of(schema), batchsize);
+        int numtuples = reader.getNumTuples();
+        int perPage = reader.getFormat().getTuplesPerPage();
+        int numrows = 0;
+        while (numrows < batchsize) {
+            while (zones != null && rownum < numtuples && !mayMatch(rownum / perPage)) {
+                rownum = (rownum / perPage + 1) * perPage;
+                pagesSkipped.incrementAndGet();
+            }
+            if (rownum >= numtuples) {
+                eos = true;
+                break;
+            }
+            // stop at the end of the page, to check the zone map of the next one
+            int end = zones == null ? numtuples : Math.min(numtuples, (rownum / perPage + 1) * perPage);
+            int count = Math.min(batchsize - numrows, end - rownum);
+            for (ColumnSource source : sources) {
+                source.read(rownum, count, columns, numrows);
+            }
+            rownum += count;
+            numrows += count;
+        }
+        if (numrows == 0) {
+            closeFile();
+            return null;
+        }
+        columns.setNumRows(numrows);
+        return columns;
+    }
+
+    /** Decodes the next batch from the fixed-width pages of the table file.
+     ** The pages on disk need not hold the same number of tuples as a batch
+     **/
+
+    protected Batch nextFromPages() throws IOException {
+        Batch tuples = new Batch(batchsize);
+        PageFormat format = reader.getFormat();
+        while (!tuples.isFull()) {
+            if (page == null) {
+                skipPages();
+                if (pagenum >= reader.getNumPages()) {
+                    eos = true;
+                    break;
+                }
+                page = reader.readPage(pagenum);
+                slot = 0;
+            }
+            int numslots = reader.tuplesInPage(pagenum);
+            while (slot < numslots && !tuples.isFull()) {
+                tuples.add(format.readTuple(page, slot));
+                slot++;
+            }
+            if (slot == numslots) {
+                page = null;
+                pagenum++;
+            }
+        }
+        if (tuples.isEmpty()) {
+            closeFile();
+            return null;
+        }
+        return tuples;
+    }
+
+    /** Decodes the next batch from the pages column by column,
+     ** without building a tuple per record
+     **/
+
+    public ColumnBatch nextColumns() {
+        if (reader == null) {
+            return super.nextColumns();
+        }
+        if (PrefetchReader.getDepth() == 0) {
+            return read(this::readColumns);
+        }
+        if (columnPrefetch == null) {
+            columnPrefetch = new PrefetchReader<>(this::readColumns, PrefetchReader.getDepth());
+        }
+        return fetch(columnPrefetch);
+    }
+
+    protected ColumnBatch readColumns() throws IOException {
+        if (sources != null) {
+            return readProjected();
+        }
+        if (eos) {
+            closeFile();
+            return null;
+        }
+        ColumnBatch columns = new ColumnBatch(TupleLayout.of(schema), batchsize);
+        int numrows = 0;
+        while (numrows < batchsize) {
+            if (page == null) {
+                skipPages();
+                if (pagenum >= reader.getNumPages()) {
+                    eos = true;
+                    break;
+                }
+                page = reader.readPage(pagenum);
+                slot = 0;
+            }
+            int count = Math.min(reader.tuplesInPage(pagenum) - slot, batchsize - numrows);
+            reader.getFormat().readColumns(page, slot, count, columns, numrows);
+            numrows += count;
+            slot += count;
+            if (slot == reader.tuplesInPage(pagenum)) {
+                page = null;
+                pagenum++;
+            }
+        }
+        if (numrows == 0) {
+            closeFile();
+            return null;
+        }
+        columns.setNumRows(numrows);
+        return columns;
+    }
+
     /** Close the file.. This routine is called when the end of filed
      ** is already reached
      **/
 
 
     public boolean close() {
+        closePrefetch();
+        return closeFile();
+    }
+
+    private void closePrefetch() {
+        if (prefetch != null) {
+            prefetch.close();
+            prefetch = null;
+        }
+        if (columnPrefetch != null) {
+            columnPrefetch.close();
+            columnPrefetch = null;
+        }
+    }
+
+    /** Closes the table file, which may be done by the reading thread **/
+
+    protected boolean closeFile() {
         try {
-            in.close();
+            closeSources();
+            if (reader != null) {
+                reader.close();
+            } else if (in != null) {
+                in.close();
+            }
         } catch (IOException e) {
             System.err.println("Scan: Error closing " + filename);
             return false;
@@ -118,10 +593,70 @@ public class Scan extends Operator {
     }
 
 
+    private void closeSources() throws IOException {
+        if (sources == null) {
+            return;
+        }
+        for (ColumnSource source : sources) {
+            if (source.reader != reader) {
+                source.reader.close();
+            }
+        }
+    }
+
+
     public Object clone() {
         String newtab = tabname;
         Scan newscan = new Scan(newtab, optype);
-        newscan.setSchema((Schema) schema.clone());
+        newscan.setSchema((Schema) getTableSchema().clone());
+        if (projection != null) {
+            newscan.setProjection(schema.getAttList());
+        }
         return newscan;
     }
+
+
+    /** Decodes some columns of the records of a table or column file,
+     ** addressed by their position in the table
+     **/
+
+    static class ColumnSource {
+
+        final TableReader reader;
+        final int[] cols;       // columns decoded from the file
+        final int[] outcols;    // columns of the scan they are decoded into
+        int pagenum = -1;       // page of the file last read
+        ByteBuffer page;
+
+        ColumnSource(TableReader reader, int[] cols, int[] outcols) {
+            this.reader = reader;
+            this.cols = cols;
+            this.outcols = outcols;
+        }
+
+        /** Decodes count records from record row on, into out from outrow on.
+         ** The last page is unpinned, as the scan may read several files
+         **/
+
+        void read(int row, int count, ColumnBatch out, int outrow) throws IOException {
+            PageFormat format = reader.getFormat();
+            int perPage = format.getTuplesPerPage();
+            while (count > 0) {
+                if (row / perPage != pagenum) {
+                    pagenum = row / perPage;
+                    page = reader.readPage(pagenum);
+                }
+                int slot = row % perPage;
+                int n = Math.min(count, reader.tuplesInPage(pagenum) - slot);
+                for (int i = 0; i < cols.length; i++) {
+                    format.readColumn(page, slot, n, cols[i], out, outcols[i], outrow);
+                }
+                row += n;
+                outrow += n;
+                count -= n;
+            }
+            reader.release();
+            pagenum = -1;
+        }
+    }
 }
@@ -6,6 +6,7 @@ package qp.operators;
 
 import qp.utils.*;
 
+import java.util.List;
 import java.util.Vector;
 
 public class Select extends Operator {
@@ -22,6 +23,17 @@ public class Select extends Operator {
     Batch inbatch;   // This is the current input buffer
     Batch outbatch;  // This is the current output buffer
     int start;       // Cursor position in the input buffer
+    ColumnBatch incolumns;  // Current filtered input, when vectorized
+
+    /** The condition resolved against the schema once in open() **/
+
+    int index;       // Index of the attribute in the tuple
+    int datatype;    // Type of the attribute
+    int exprtype;    // Comparison operator
+    int intValue;    // The constant, parsed according to datatype
+    float floatValue;
+    String stringValue;
+    boolean byInstance;  // Whether strings are equal only if the same instance
 
 
     /** constructor **/
@@ -41,6 +53,12 @@ public class Select extends Operator {
         return base;
     }
 
+    /** The tuples that qualify keep the order of the input **/
+
+    public List<Order> getOrder() {
+        return base.getOrder();
+    }
+
     public void setCondition(Condition cn) {
         this.con = cn;
     }
@@ -61,10 +79,13 @@ public class Select extends Operator {
         int tuplesize = schema.getTupleSize();
         batchsize = Batch.getPageSize() / tuplesize;
 
+        resolveCondition();
+        pushToScan();
 
-        if (base.open())
+        if (base.open()) {
+            useDictionary();
             return true;
-        else
+        } else
             return false;
     }
 
@@ -87,6 +108,10 @@ public class Select extends Operator {
         /** An output buffer is initiated**/
         outbatch = new Batch(batchsize);
 
+        if (vectorized) {
+            return nextFromColumns();
+        }
+
         /** keep on checking the incoming pages until
          ** the output buffer is full
          **/
@@ -130,98 +155,262 @@ public class Select extends Operator {
     }
 
 
+    /** Fills the output buffer with the rows selected from the
+     ** column batches, materializing only those rows as tuples
+     **/
+
+    protected Batch nextFromColumns() {
+        while (!outbatch.isFull()) {
+            if (start == 0) {
+                incolumns = nextColumns();
+                if (incolumns == null) {
+                    eos = true;
+                    return outbatch;
+                }
+            }
+            int i;
+            for (i = start; i < incolumns.numRows() && !outbatch.isFull(); i++) {
+                outbatch.add(incolumns.tupleAt(i));
+            }
+            start = (i == incolumns.numRows()) ? 0 : i;
+        }
+        return outbatch;
+    }
+
+
+    /** Filters the column batches of the base operator, one column
+     ** at a time. Only the selection vector is rewritten, batches
+     ** with no qualifying row are skipped
+     **/
+
+    public ColumnBatch nextColumns() {
+        ColumnBatch columns;
+        while ((columns = base.nextColumns()) != null) {
+            int[] selected = new int[columns.numRows()];
+            int count;
+            if (datatype == Attribute.INT) {
+                count = filterInts(columns, selected);
+            } else if (datatype == Attribute.REAL) {
+                count = filterFloats(columns, selected);
+            } else {
+                count = filterStrings(columns, selected);
+            }
+            if (count > 0) {
+                columns.select(selected, count);
+                return columns;
+            }
+        }
+        return null;
+    }
+
+    /** The comparison is switched on once per batch so that the
+     ** loop over the column is a plain compare on an int[]
+     **/
+
+    private int filterInts(ColumnBatch columns, int[] selected) {
+        int[] values = columns.getIntColumn(index);
+        int n = columns.numRows();
+        int v = intValue;
+        int count = 0;
+        switch (exprtype) {
+            case Condition.LESSTHAN:
+                for (int i = 0; i < n; i++) {
+                    int row = columns.rowAt(i);
+                    if (values[row] < v) selected[count++] = row;
+                }
+                break;
+            case Condition.GREATERTHAN:
+                for (int i = 0; i < n; i++) {
+                    int row = columns.rowAt(i);
+                    if (values[row] > v) selected[count++] = row;
+                }
+                break;
+            case Condition.LTOE:
+                for (int i = 0; i < n; i++) {
+                    int row = columns.rowAt(i);
+                    if (values[row] <= v) selected[count++] = row;
+                }
+                break;
+            case Condition.GTOE:
+                for (int i = 0; i < n; i++) {
+                    int row = columns.rowAt(i);
+                    if (values[row] >= v) selected[count++] = row;
+                }
+                break;
+            case Condition.EQUAL:
+                for (int i = 0; i < n; i++) {
+                    int row = columns.rowAt(i);
+                    if (values[row] == v) selected[count++] = row;
+                }
+                break;
+            case Condition.NOTEQUAL:
+                for (int i = 0; i < n; i++) {
+                    int row = columns.rowAt(i);
+                    if (values[row] != v) selected[count++] = row;
+                }
+                break;
+            default:
+                System.out.println("Select:Incorrect condition operator");
+                break;
+        }
+        return count;
+    }
+
+    private int filterFloats(ColumnBatch columns, int[] selected) {
+        float[] values = columns.getFloatColumn(index);
+        int count = 0;
+        for (int i = 0; i < columns.numRows(); i++) {
+            int row = columns.rowAt(i);
+            float srcVal = values[row];
+            boolean keep;
+            if (srcVal != srcVal) {
+                keep = exprtype == Condition.NOTEQUAL;
+            } else {
+                keep = satisfies(Float.compare(srcVal, floatValue), exprtype);
+            }
+            if (keep) selected[count++] = row;
+        }
+        return count;
+    }
+
+    private int filterStrings(ColumnBatch columns, int[] selected) {
+        String[] values = columns.getStringColumn(index);
+        int count = 0;
+        for (int i = 0; i < columns.numRows(); i++) {
+            int row = columns.rowAt(i);
+            if (matchesString(values[row])) selected[count++] = row;
+        }
+        return count;
+    }
+
+
     /** closes the output connection
      ** i.e., no more pages to output
      **/
 
     public boolean close() {
-        /**
-         if(base.close())
-         return true;
-         else
-         return false;
-         **/
-        return true;
+        return base.close();
     }
 
 
-    /** To check whether the selection condition is satisfied for
-     the present tuple
+    /** Hands the condition to the Scan of the table under this and
+     ** the selections below it, which skips the pages ruled out by
+     ** the zone map of the table
      **/
 
-    protected boolean checkCondition(Tuple tuple) {
+    protected void pushToScan() {
+        Operator op = base;
+        while (op.getOpType() == OpType.SELECT) {
+            op = ((Select) op).getBase();
+        }
+        if (op.getOpType() == OpType.SCAN && !(op instanceof IndexScan)) {
+            ((Scan) op).pushCondition(con);
+        }
+    }
+
+
+    /** If the attribute is read from a column stored as codes, every
+     ** value is the instance held by its dictionary. The constant is
+     ** replaced with that instance, so that equality is a reference
+     ** compare. A constant not in the dictionary then equals no value
+     **/
+
+    protected void useDictionary() {
+        byInstance = false;
+        if (datatype != Attribute.STRING) {
+            return;
+        }
+        Operator op = base;
+        while (op.getOpType() == OpType.SELECT) {
+            op = ((Select) op).getBase();
+        }
+        if (op.getOpType() != OpType.SCAN) {
+            return;
+        }
+        StringDictionary dict = ((Scan) op).getDictionary(con.getLhs());
+        if (dict != null) {
+            String value = dict.canonical(stringValue);
+            if (value != null) {
+                stringValue = value;
+            }
+            byInstance = true;
+        }
+    }
+
+
+    /** Looks up the attribute and parses the constant of the
+     ** condition, so that it is not done again for every tuple
+     **/
+
+    protected void resolveCondition() {
         Attribute attr = con.getLhs();
-        int index = schema.indexOf(attr);
-        int datatype = schema.typeOf(attr);
-        Object srcValue = tuple.dataAt(index);
+        index = schema.indexOf(attr);
+        datatype = schema.typeOf(attr);
+        exprtype = con.getExprType();
         String checkValue = (String) con.getRhs();
-        int exprtype = con.getExprType();
+        if (datatype == Attribute.INT) {
+            intValue = Integer.parseInt(checkValue);
+        } else if (datatype == Attribute.REAL) {
+            floatValue = Float.parseFloat(checkValue);
+        } else {
+            stringValue = checkValue;
+        }
+    }
+
+
+    /** To check whether the selection condition is satisfied for
+     the present tuple
+     **/
 
+    protected boolean checkCondition(Tuple tuple) {
+        int flag;
         if (datatype == Attribute.INT) {
-            int srcVal = ((Integer) srcValue).intValue();
-            int checkVal = Integer.parseInt(checkValue);
-            if (exprtype == Condition.LESSTHAN) {
-                if (srcVal < checkVal)
-                    return true;
-            } else if (exprtype == Condition.GREATERTHAN) {
-                if (srcVal > checkVal)
-                    return true;
-            } else if (exprtype == Condition.LTOE) {
-                if (srcVal <= checkVal)
-                    return true;
-            } else if (exprtype == Condition.GTOE) {
-                if (srcVal >= checkVal)
-                    return true;
-            } else if (exprtype == Condition.EQUAL) {
-                if (srcVal == checkVal)
-                    return true;
-            } else if (exprtype == Condition.NOTEQUAL) {
-                if (srcVal != checkVal)
-                    return true;
-            } else {
-                System.out.println("Select:Incorrect condition operator");
+            flag = Integer.compare(tuple.getInt(index), intValue);
+        } else if (datatype == Attribute.REAL) {
+            float srcVal = tuple.getFloat(index);
+            if (srcVal != srcVal) {
+                return exprtype == Condition.NOTEQUAL;    // NaN compares false, like the float operators
             }
+            flag = Float.compare(srcVal, floatValue);
         } else if (datatype == Attribute.STRING) {
-            String srcVal = (String) srcValue;
-            int flag = srcVal.compareTo(checkValue);
-
-            if (exprtype == Condition.LESSTHAN) {
-                if (flag < 0) return true;
-
-            } else if (exprtype == Condition.GREATERTHAN) {
-                if (flag > 0) return true;
-            } else if (exprtype == Condition.LTOE) {
-                if (flag <= 0) return true;
-            } else if (exprtype == Condition.GTOE) {
-                if (flag >= 0) return true;
-            } else if (exprtype == Condition.EQUAL) {
-                if (flag == 0) return true;
-            } else if (exprtype == Condition.NOTEQUAL) {
-                if (flag != 0) return true;
-            } else {
-                System.out.println("Select: Incorrect condition operator");
-            }
+            return matchesString(tuple.getString(index));
+        } else {
+            return false;
+        }
+        return satisfies(flag, exprtype);
+    }
 
-        } else if (datatype == Attribute.REAL) {
-            float srcVal = ((Float) srcValue).floatValue();
-            float checkVal = Float.parseFloat(checkValue);
-            if (exprtype == Condition.LESSTHAN) {
-                if (srcVal < checkVal) return true;
-            } else if (exprtype == Condition.GREATERTHAN) {
-                if (srcVal > checkVal) return true;
-            } else if (exprtype == Condition.LTOE) {
-                if (srcVal <= checkVal) return true;
-            } else if (exprtype == Condition.GTOE) {
-                if (srcVal >= checkVal) return true;
-            } else if (exprtype == Condition.EQUAL) {
-                if (srcVal == checkVal) return true;
-            } else if (exprtype == Condition.NOTEQUAL) {
-                if (srcVal != checkVal) return true;
-            } else {
+    private boolean matchesString(String value) {
+        if (byInstance && exprtype == Condition.EQUAL) {
+            return value == stringValue;
+        } else if (byInstance && exprtype == Condition.NOTEQUAL) {
+            return value != stringValue;
+        }
+        return satisfies(value.compareTo(stringValue), exprtype);
+    }
+
+    /** Whether the result of comparing the attribute with the
+     ** constant satisfies the comparison operator
+     **/
+
+    protected static boolean satisfies(int flag, int exprtype) {
+        switch (exprtype) {
+            case Condition.LESSTHAN:
+                return flag < 0;
+            case Condition.GREATERTHAN:
+                return flag > 0;
+            case Condition.LTOE:
+                return flag <= 0;
+            case Condition.GTOE:
+                return flag >= 0;
+            case Condition.EQUAL:
+                return flag == 0;
+            case Condition.NOTEQUAL:
+                return flag != 0;
+            default:
                 System.out.println("Select:Incorrect condition operator");
-            }
+                return false;
         }
-        return false;
     }
 
 
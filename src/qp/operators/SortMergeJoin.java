@@ -2,47 +2,51 @@ package qp.operators;
 
 import qp.utils.Attribute;
 import qp.utils.Batch;
+import qp.utils.Condition;
 import qp.utils.Tuple;
 
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
  * Created by michaellimantara on 21/3/17.
+ *
+ * Both inputs are sorted on the join attribute and read as streams from
+ * the last merge pass of their ExternalSort. The tuples of the right input
+ * that share the current join value (the duplicate group) are kept aside
+ * and replayed for every left tuple with that value. The B buffers of the
+ * join are split between the output page, the two sorts, whose last merge
+ * passes stay open while the join runs, and the group, which is given at
+ * least a page and the buffers the sorts leave. Only the tuples of the
+ * group beyond its pages are spilled to a temporary file. An input that
+ * is already in order on its join attribute, such as the output of
+ * another sort-merge join on the same attribute, is not sorted again.
  */
 public class SortMergeJoin extends Join {
 
-    private static boolean CLEANUP_FILES = true;
+    private static int NUMBER_OF_INSTANCES = 0;
 
-    private ExternalSort leftSort;
+    private int instanceNumber;
+
+    private ExternalSort leftSort;    // null if the left input is already in order
     private ExternalSort rightSort;
+    private Operator leftSorted;      // the sort of the left input, or the input itself
+    private Operator rightSorted;
 
     private int leftJoinAttrIdx;
     private int rightJoinAttrIdx;
 
     private int batchSize;
 
-    private List<File> leftFiles;
-    private List<File> rightFiles;
-
-    private int leftBufferIdx = -1;
-    private Batch leftBuffer;
-
-    private int rightBufferOffset = 0;
-    private List<Batch> rightBuffer = new LinkedList<>();
-
-    private Batch rightRunningBuffer;
-    private int rightRunningBufferIdx = -1;
-
-    private int rightBufferSize;
-
+    private Batch leftBuffer;      // current page of the sorted left input
     private int leftTupleIdx;
+    private Batch rightBuffer;     // current page of the sorted right input
     private int rightTupleIdx;
-    private int rightFirstMatchIdx;
-    private boolean hasMatch;
+
+    private DuplicateGroup group;  // right tuples equal to the current join value
+    private boolean inGroup;       // whether the left tuple is joining the group
 
 
     public SortMergeJoin(Join join) {
@@ -50,241 +54,324 @@ public class SortMergeJoin extends Join {
         schema = join.getSchema();
         jointype = join.getJoinType();
         numBuff = join.getNumBuff();
+        instanceNumber = NUMBER_OF_INSTANCES++;
     }
 
     @Override
     public boolean open() {
-        try {
-            List<Order> leftSortOrders = Arrays.asList(new Order(getCondition().getLhs(), Order.OrderType.ASC));
-            List<Order> rightSortOrders = Arrays.asList(new Order((Attribute) getCondition().getRhs(), Order.OrderType.ASC));
-
-            // Find the batch size
-            int tupleSize = getSchema().getTupleSize();
-            batchSize = Batch.getPageSize() / tupleSize;
-
-            // Find the index of join attribute of in each relation
-            leftJoinAttrIdx = getLeft().getSchema().indexOf(getCondition().getLhs());
-            rightJoinAttrIdx = getRight().getSchema().indexOf((Attribute) getCondition().getRhs());
-
-            leftTupleIdx = 0;
-            rightTupleIdx = 0;
-            rightFirstMatchIdx = 0;
-            hasMatch = false;
-
-            // Sort the 2 relations
-            leftSort = new ExternalSort(left, leftSortOrders, numBuff);
-            rightSort = new ExternalSort(right, rightSortOrders, numBuff);
-
-            if (!(leftSort.open() && rightSort.open())) {
-                return false;
-            }
-
-            leftFiles = writeOperatorToFile(leftSort, "SMJ-Left");
-            rightFiles = writeOperatorToFile(rightSort, "SMJ-Right");
-
-            leftSort.close();
-            rightSort.close();
-
-            rightBufferSize = getNumBuff() - 3;  // reserve 1 output buf, 1 for left input, 1 for "running" right input
-
-            initializeRightBuffer();
-
-            return true;
-        } catch (IOException|ClassNotFoundException e) {
+        List<Order> leftSortOrders = Arrays.asList(new Order(getCondition().getLhs(), Order.OrderType.ASC));
+        List<Order> rightSortOrders = Arrays.asList(new Order((Attribute) getCondition().getRhs(), Order.OrderType.ASC));
+
+        // Find the batch size
+        int tupleSize = getSchema().getTupleSize();
+        batchSize = Batch.getPageSize() / tupleSize;
+
+        // Find the index of join attribute of in each relation
+        leftJoinAttrIdx = getLeft().getSchema().indexOf(getCondition().getLhs());
+        rightJoinAttrIdx = getRight().getSchema().indexOf((Attribute) getCondition().getRhs());
+
+        // Sort the 2 relations, unless they are in order already
+        boolean leftInOrder = Order.satisfies(left.getOrder(), leftSortOrders);
+        boolean rightInOrder = Order.satisfies(right.getOrder(), rightSortOrders);
+        int numSorts = (leftInOrder ? 0 : 1) + (rightInOrder ? 0 : 1);
+        if (numBuff < minBuffers(numSorts)) {
+            System.err.println("SortMergeJoin: Minimum " + minBuffers(numSorts) + " buffers are required");
             return false;
         }
-    }
+        int sortBuff = sortBuffers(numBuff, numSorts);
+        leftSort = leftInOrder ? null : new ExternalSort(left, leftSortOrders, sortBuff);
+        rightSort = rightInOrder ? null : new ExternalSort(right, rightSortOrders, sortBuff);
+        leftSorted = (leftSort == null) ? left : leftSort;
+        rightSorted = (rightSort == null) ? right : rightSort;
 
-    @Override
-    public Batch next() {
-        try {
-            return nextThrows();
-        } catch (IOException | ClassNotFoundException e) {
-            throw new RuntimeException(e);
+        if (!(leftSorted.open() && rightSorted.open())) {
+            return false;
         }
+
+        int rightBatchSize = Batch.getPageSize() / getRight().getSchema().getTupleSize();
+        // what the output page, the inputs read directly and the sorts leave
+        int groupPages = getNumBuff() - 1 - (2 - numSorts) - numSorts * sortBuff;
+        group = new DuplicateGroup(groupPages * rightBatchSize, rightBatchSize,
+                new File("SMJtemp-" + instanceNumber));
+        inGroup = false;
+
+        leftBuffer = nextBatch(leftSorted);
+        leftTupleIdx = 0;
+        rightBuffer = nextBatch(rightSorted);
+        rightTupleIdx = 0;
+        return true;
     }
 
     /**
      * Produces 1 batch of output
      */
-    private Batch nextThrows() throws IOException, ClassNotFoundException {
+    @Override
+    public Batch next() {
         Batch joinResult = new Batch(batchSize);
 
-        while (true) {
-            if (joinResult.isFull() || hasExhaustedLeftTuples() || hasExhaustedRightTuples()) {
+        while (!joinResult.isFull()) {
+            if (inGroup) {
+                Tuple rightTuple = group.next();
+                if (rightTuple != null) {
+                    joinResult.add(leftTuple().joinWith(rightTuple));
+                    continue;
+                }
+                // the left tuple has met the whole group, replay it for the next one if equal
+                advanceLeft();
+                if (leftTuple() != null && compareWithGroup(leftTuple()) == 0) {
+                    group.reset();
+                } else {
+                    inGroup = false;
+                }
+                continue;
+            }
+
+            Tuple leftTuple = leftTuple();
+            Tuple rightTuple = rightTuple();
+            if (leftTuple == null || rightTuple == null) {
                 break;
             }
-            Tuple leftTuple = readLeftTupleAtIndex(leftTupleIdx);
-            Tuple rightTuple = readRightTupleAtIndex(rightTupleIdx);
             int comparison = Tuple.compareTuples(leftTuple, rightTuple, leftJoinAttrIdx, rightJoinAttrIdx);
             if (comparison < 0) {           // if left tuple < right tuple on join attribute,
-                leftTupleIdx++;      // we move to the next left tuple
-                if (hasMatch) {
-                    rightTupleIdx = rightFirstMatchIdx;
-                }
-                hasMatch = false;
+                advanceLeft();              // we move to the next left tuple
             } else if (comparison > 0) {    // if left tuple > right tuple on join attribute,
-                rightTupleIdx++;     // we move to the next right tuple
-                hasMatch = false;
-            } else {  // if left tuple = right tuple on join attribute, we start joining the tuples
-                if (!hasMatch) {
-                    rightFirstMatchIdx = rightTupleIdx;
-                    hasMatch = true;
+                advanceRight();             // we move to the next right tuple
+            } else {                        // collect the right tuples with this value, then join
+                group.clear();
+                while (rightTuple != null
+                        && Tuple.compareTuples(rightTuple, group.isEmpty() ? rightTuple : group.first(),
+                        rightJoinAttrIdx) == 0) {
+                    group.add(rightTuple);
+                    advanceRight();
+                    rightTuple = rightTuple();
                 }
-                Tuple joinTuple = leftTuple.joinWith(rightTuple);
-                joinResult.add(joinTuple);
-                rightTupleIdx++;
+                group.reset();
+                inGroup = true;
             }
         }
-        return joinResult.isEmpty() ? null : joinResult;  // return null to signify end of result
+        if (joinResult.isEmpty()) {
+            close();    // remove the run and spill files, one input may not be used up
+            return null;  // return null to signify end of result
+        }
+        return joinResult;
     }
 
-    private Tuple readLeftTupleAtIndex(int idx) throws IOException, ClassNotFoundException, IndexOutOfBoundsException {
-        int tupleSize = getLeft().getSchema().getTupleSize();
-        int batchSize = Batch.getPageSize() / tupleSize;
-
-        int batchIndex = idx / batchSize;
-        int tupleIdxInBatch = idx % batchSize;
-
-        Batch batch = readLeftBatch(batchIndex);
-        return batch.elementAt(tupleIdxInBatch);
+    private int compareWithGroup(Tuple leftTuple) {
+        return Tuple.compareTuples(leftTuple, group.first(), leftJoinAttrIdx, rightJoinAttrIdx);
     }
 
-    private Tuple readRightTupleAtIndex(int idx) throws IOException, ClassNotFoundException {
-        int tupleSize = getRight().getSchema().getTupleSize();
-        int batchSize = Batch.getPageSize() / tupleSize;
-
-        int batchIndex = idx / batchSize;
-        int tupleIdxInBatch = idx % batchSize;
-
-        Batch batch = readRightBatch(batchIndex);
-        return batch.elementAt(tupleIdxInBatch);
+    private Tuple leftTuple() {
+        return leftBuffer == null ? null : leftBuffer.elementAt(leftTupleIdx);
     }
 
-    private boolean hasExhaustedLeftTuples() {
-        try {
-            readLeftTupleAtIndex(leftTupleIdx);
-            return false;
-        } catch (IndexOutOfBoundsException e) {
-            return true;
-        } catch (IOException | ClassNotFoundException e) {
-            throw new RuntimeException(e);
-        }
+    private Tuple rightTuple() {
+        return rightBuffer == null ? null : rightBuffer.elementAt(rightTupleIdx);
     }
 
-    private boolean hasExhaustedRightTuples() {
-        try {
-            readRightTupleAtIndex(rightTupleIdx);
-            return false;
-        } catch (IndexOutOfBoundsException e) {
-            return true;
-        } catch (IOException | ClassNotFoundException e) {
-            throw new RuntimeException(e);
+    private void advanceLeft() {
+        leftTupleIdx++;
+        if (leftTupleIdx >= leftBuffer.size()) {
+            leftBuffer = nextBatch(leftSorted);
+            leftTupleIdx = 0;
         }
     }
 
-    @Override
-    public boolean close() {
-        rightBuffer.clear();
-        leftBuffer.clear();
-
-        if (CLEANUP_FILES) {
-            for (File file: leftFiles) {
-                file.delete();
-            }
-
-            for (File file: rightFiles) {
-                file.delete();
-            }
+    private void advanceRight() {
+        rightTupleIdx++;
+        if (rightTupleIdx >= rightBuffer.size()) {
+            rightBuffer = nextBatch(rightSorted);
+            rightTupleIdx = 0;
         }
+    }
 
-        return super.close();
+    /** Number of the inputs of the join that are sorted, those not in
+     ** order on their join attribute already
+     **/
+    public static int numSorts(Join join) {
+        Condition con = join.getCondition();
+        List<Order> leftOrder = Arrays.asList(new Order(con.getLhs(), Order.OrderType.ASC));
+        List<Order> rightOrder = Arrays.asList(new Order((Attribute) con.getRhs(), Order.OrderType.ASC));
+        return (Order.satisfies(join.getLeft().getOrder(), leftOrder) ? 0 : 1)
+                + (Order.satisfies(join.getRight().getOrder(), rightOrder) ? 0 : 1);
     }
 
-    private void initializeRightBuffer() throws IOException, ClassNotFoundException {
-        rightBufferOffset = 0;
-        rightBuffer.clear();
-        for (int i = 0; i < rightBufferSize; i++) {
-            if (i >= rightFiles.size()) {
-                break;
-            }
+    /** Fewest buffers of a join with the given number of sorts: the
+     ** output page, a page of the duplicate group, a page of each input
+     ** read directly and the 3 an external sort needs for each sort
+     **/
+    public static int minBuffers(int numSorts) {
+        return 2 + (2 - numSorts) + 3 * numSorts;
+    }
 
-            Batch batch = readBatchFromFile(rightFiles.get(i));
-            rightBuffer.add(batch);
+    /** Buffers of each of the given number of sorts of a join with
+     ** numBuff buffers: those left by the output page, a page of the
+     ** duplicate group and a page of each input read directly, split
+     ** evenly. The sorts get at least 3 each if the join has its
+     ** minBuffers
+     **/
+    public static int sortBuffers(int numBuff, int numSorts) {
+        if (numSorts == 0) {
+            return 0;
         }
+        return (numBuff - 2 - (2 - numSorts)) / numSorts;
     }
 
-    private Batch readLeftBatch(int idx) throws IOException, ClassNotFoundException, IndexOutOfBoundsException {
-        if (idx == leftBufferIdx) {
-            return leftBuffer;
+    /** Next page of an input, skipping the empty pages an input read
+     ** directly, such as a Select, may return before its end
+     **/
+    private static Batch nextBatch(Operator input) {
+        Batch batch = input.next();
+        while (batch != null && batch.isEmpty()) {
+            batch = input.next();
         }
-        File file = leftFiles.get(idx);
-        leftBuffer = readBatchFromFile(file);
-        leftBufferIdx = idx;
-        return leftBuffer;
+        return batch;
     }
 
-    private Batch readRightBatch(int idx) throws IOException, ClassNotFoundException {
-        if (isInRightBuffer(idx)) {
-            return readFromBuffer(idx);
+    /** Closes the sorts, and the inputs read directly, whose files,
+     ** read-ahead threads and pinned pages would be left open otherwise
+     **/
+    @Override
+    public boolean close() {
+        if (leftSorted != null) {
+            leftSorted.close();
         }
-        if (idx < rightBufferOffset || rightBufferSize == 0) {
-            return readToRunningBuffer(idx);
+        if (rightSorted != null) {
+            rightSorted.close();
         }
-        while (!isInRightBuffer(idx)) {  // must be beyond the current buffer scope
-            advanceBuffer();             // hence we advance the buffer
+        if (group != null) {
+            group.close();
         }
-        return readFromBuffer(idx);
+        return super.close();
     }
 
-    private void advanceBuffer() throws IOException, ClassNotFoundException {
-        int nextRightBatchToRead = rightBufferOffset + rightBufferSize;
-        rightBuffer.remove(0);
-        Batch batch = readBatchFromFile(rightFiles.get(nextRightBatchToRead));
-        rightBuffer.add(batch);
-        rightBufferOffset++;
-    }
 
-    private Batch readToRunningBuffer(int idx) throws IOException, ClassNotFoundException {
-        if (rightRunningBufferIdx == idx) {
-            return rightRunningBuffer;
+    /**
+     * The right tuples of one join value, kept in memory up to capacity
+     * and written to a spill file beyond that. Once the group is complete,
+     * reset() moves the cursor back to its first tuple.
+     */
+    private static class DuplicateGroup {
+
+        private final int capacity;       // tuples kept in memory
+        private final int batchSize;      // tuples per spilled page
+        private final File spillFile;
+
+        private final List<Tuple> tuples = new ArrayList<>();
+        private Batch spillBuffer;
+        private ObjectOutputStream spillOut;
+        private ObjectInputStream spillIn;
+        private boolean spilled;
+
+        private int cursor;               // next in-memory tuple to return
+        private Batch spillPage;          // page of the spill file being returned
+        private int spillCursor;
+
+        DuplicateGroup(int capacity, int batchSize, File spillFile) {
+            this.capacity = capacity;
+            this.batchSize = batchSize;
+            this.spillFile = spillFile;
         }
-        rightRunningBuffer = readBatchFromFile(rightFiles.get(idx));
-        rightRunningBufferIdx = idx;
-        return rightRunningBuffer;
-    }
 
-    private Batch readFromBuffer(int idx) {
-        return rightBuffer.get(idx - rightBufferOffset);
-    }
+        boolean isEmpty() {
+            return tuples.isEmpty();
+        }
 
-    private boolean isInRightBuffer(int idx) {
-        return (rightBufferOffset <= idx) && (idx < rightBufferOffset + rightBufferSize);
-    }
+        Tuple first() {
+            return tuples.get(0);
+        }
+
+        void add(Tuple tuple) {
+            if (tuples.size() < capacity) {
+                tuples.add(tuple);
+                return;
+            }
+            if (spillBuffer == null) {
+                spillBuffer = new Batch(batchSize);
+            }
+            spillBuffer.add(tuple);
+            if (spillBuffer.isFull()) {
+                writeSpill();
+            }
+        }
 
-    private List<File> writeOperatorToFile(Operator operator, String prefix) throws IOException {
-        Batch batch;
-        int count = 0;
-        List<File> files = new ArrayList<>();
-        while ((batch = operator.next()) != null) {
-            File file = new File(prefix + "-" + count);
-            count += 1;
-            writeBatchToFile(batch, file);
-            files.add(file);
+        private void writeSpill() {
+            try {
+                if (spillOut == null) {
+                    spillOut = new ObjectOutputStream(new FileOutputStream(spillFile));
+                    spilled = true;
+                }
+                spillOut.writeObject(spillBuffer);
+                spillOut.reset();
+                spillBuffer = new Batch(batchSize);
+            } catch (IOException e) {
+                System.out.println("SortMergeJoin: Error in writing the temporary file");
+                System.exit(1);
+            }
         }
-        return files;
-    }
 
-    private void writeBatchToFile(Batch batch, File file) throws IOException {
-        ObjectOutputStream objectOutputStream = new ObjectOutputStream(new FileOutputStream(file));
-        objectOutputStream.writeObject(batch);
+        /** Mark the start of the group, the next tuple returned is the first one **/
+        void reset() {
+            if (spillBuffer != null && !spillBuffer.isEmpty()) {
+                writeSpill();
+            }
+            closeStreams();
+            cursor = 0;
+            spillPage = null;
+            spillCursor = 0;
+            if (spilled) {
+                try {
+                    spillIn = new ObjectInputStream(new FileInputStream(spillFile));
+                } catch (IOException e) {
+                    System.out.println("SortMergeJoin: Error in reading the temporary file");
+                    System.exit(1);
+                }
+            }
+        }
 
-    }
+        Tuple next() {
+            if (cursor < tuples.size()) {
+                return tuples.get(cursor++);
+            }
+            while (spillIn != null && (spillPage == null || spillCursor >= spillPage.size())) {
+                try {
+                    spillPage = (Batch) spillIn.readObject();
+                    spillCursor = 0;
+                } catch (EOFException e) {
+                    return null;
+                } catch (IOException | ClassNotFoundException e) {
+                    System.out.println("SortMergeJoin: Error in reading the temporary file");
+                    System.exit(1);
+                }
+            }
+            return spillPage == null ? null : spillPage.elementAt(spillCursor++);
+        }
 
-    private Batch readBatchFromFile(File file) throws IOException, ClassNotFoundException {
-        ObjectInputStream objectInputStream = new ObjectInputStream(new FileInputStream(file));
-        return (Batch) objectInputStream.readObject();
-    }
+        /** Empty the group for the next join value **/
+        void clear() {
+            closeStreams();
+            tuples.clear();
+            spillBuffer = null;
+            spilled = false;
+        }
 
+        private void closeStreams() {
+            try {
+                if (spillOut != null) {
+                    spillOut.close();
+                    spillOut = null;
+                }
+                if (spillIn != null) {
+                    spillIn.close();
+                    spillIn = null;
+                }
+            } catch (IOException e) {
+                System.out.println("SortMergeJoin: Error in closing the temporary file");
+            }
+        }
 
+        void close() {
+            clear();
+            spillFile.delete();
+        }
+    }
 }
@@ -0,0 +1,155 @@
+/**
+ * Partition files of the operators that hash their input in memory and
+ * spill what does not fit, Distinct and Aggregate
+ **/
+
+package qp.operators;
+
+import qp.utils.Batch;
+import qp.utils.Tuple;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The tuples that do not fit in memory are written by their hash to one
+ * of several partition files, one output buffer each. The partitions are
+ * kept until the operator reads them back one at a time and does each the
+ * same way, partitioning it again if it does not fit either. Every level
+ * of partitioning mixes the hash differently, so that a partition that
+ * is partitioned again spreads over the new partitions.
+ */
+public class SpillPartitions {
+
+    /** Source of the batches of the input, or of a partition **/
+
+    public interface BatchSource {
+        Batch next() throws IOException;
+    }
+
+    /** Does the tuples of a partition, given the number of times they
+     ** were partitioned
+     **/
+
+    public interface PartitionReader {
+        void read(BatchSource source, int level) throws IOException;
+    }
+
+    private static class Partition {
+        final File file;
+        final int level;    // number of times its tuples were partitioned
+
+        Partition(File file, int level) {
+            this.file = file;
+            this.level = level;
+        }
+    }
+
+    private final String prefix;       // name of the partition files, followed by their number
+    private final int batchSize;       // tuples per page written
+    private final Deque<Partition> pending = new ArrayDeque<>();
+    private int fileNum = 0;
+
+    // Partitions being written
+    private ObjectOutputStream[] outs;
+    private Batch[] buffers;
+    private File[] files;
+    private int level;
+
+    public SpillPartitions(String prefix, int batchSize) {
+        this.prefix = prefix;
+        this.batchSize = batchSize;
+    }
+
+    /** Starts writing the tuples of a source that were partitioned
+     ** level times to numPartitions new partitions
+     **/
+
+    public void start(int numPartitions, int level) throws IOException {
+        this.level = level;
+        outs = new ObjectOutputStream[numPartitions];
+        buffers = new Batch[numPartitions];
+        files = new File[numPartitions];
+        for (int p = 0; p < numPartitions; p++) {
+            files[p] = new File(prefix + fileNum++);
+            outs[p] = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(files[p])));
+            buffers[p] = new Batch(batchSize);
+        }
+    }
+
+    public boolean isWriting() {
+        return outs != null;
+    }
+
+    /** Adds the tuple to the partition of its hash, writing the output
+     ** buffer of the partition when full
+     **/
+
+    public void write(Tuple tuple, int hash) throws IOException {
+        int p = partitionOf(hash, level, outs.length);
+        buffers[p].add(tuple);
+        if (buffers[p].isFull()) {
+            outs[p].writeObject(buffers[p]);
+            outs[p].reset();
+            buffers[p] = new Batch(batchSize);
+        }
+    }
+
+    /** Writes the last buffers and keeps the partitions to be read **/
+
+    public void finish() throws IOException {
+        for (int p = 0; p < outs.length; p++) {
+            if (!buffers[p].isEmpty()) {
+                outs[p].writeObject(buffers[p]);
+            }
+            outs[p].close();
+            pending.add(new Partition(files[p], level + 1));
+        }
+        outs = null;
+        buffers = null;
+        files = null;
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /** Gives the next partition to the reader, then deletes it **/
+
+    public void readNext(PartitionReader reader) throws IOException {
+        Partition partition = pending.poll();
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(partition.file)));
+        try {
+            reader.read(() -> readBatch(in), partition.level);
+        } finally {
+            in.close();
+            partition.file.delete();
+        }
+    }
+
+    /** Deletes the partitions not read yet **/
+
+    public void clear() {
+        for (Partition partition : pending) {
+            partition.file.delete();
+        }
+        pending.clear();
+    }
+
+    private static int partitionOf(int hash, int level, int numPartitions) {
+        int h = hash * (0x9E3779B1 + 2 * level);
+        h ^= h >>> 16;
+        return Math.floorMod(h, numPartitions);
+    }
+
+    private static Batch readBatch(ObjectInputStream in) throws IOException {
+        try {
+            return (Batch) in.readObject();
+        } catch (EOFException e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Returns the first rows of its input in the ORDER BY order, for
+ * ORDER BY with LIMIT
+ **/
+
+package qp.operators;
+
+import qp.utils.Batch;
+import qp.utils.Schema;
+import qp.utils.Tuple;
+
+import java.util.*;
+
+/**
+ * Instead of sorting the whole input, the N smallest tuples seen so far
+ * are kept in a heap whose root is the largest of them, which the next
+ * tuple replaces if it is smaller. The input is read once, nothing is
+ * written to disk, and only the N tuples are held, so the optimizer only
+ * uses it when they fit in the buffers the plan below leaves (see isApplicable).
+ */
+public class TopN extends Operator {
+
+    private Operator base;
+    private List<Order> sortOrders;
+    private int limit;
+
+    private int batchSize;
+    private List<Tuple> result;     // the N tuples, in order
+    private int cursor;
+
+    public TopN(Operator base, List<Order> sortOrders, int limit, int type) {
+        super(type);
+        this.base = base;
+        this.sortOrders = sortOrders;
+        this.limit = limit;
+    }
+
+    public void setBase(Operator base) {
+        this.base = base;
+    }
+
+    public Operator getBase() {
+        return base;
+    }
+
+    public List<Order> getSortOrders() {
+        return sortOrders;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public List<Order> getOrder() {
+        return sortOrders;
+    }
+
+    /** Pages taken by the N tuples of the given schema **/
+
+    public static int numPages(int limit, Schema schema) {
+        int capacity = Math.max(1, Batch.getPageSize() / schema.getTupleSize());
+        return (int) Math.ceil(limit / (double) capacity);
+    }
+
+    /** Whether the N tuples fit in the given buffers, less the
+     ** fewest the plan below needs, which are all taken out of them
+     **/
+
+    public static boolean isApplicable(int limit, Schema schema, int numBuff, int planBuff) {
+        return numPages(limit, schema) <= numBuff - planBuff;
+    }
+
+    public boolean open() {
+        batchSize = Batch.getPageSize() / schema.getTupleSize();
+        cursor = 0;
+        result = new ArrayList<>();
+        if (limit == 0) {
+            return true;
+        }
+        if (!base.open()) {
+            return false;
+        }
+
+        Comparator<Tuple> comparator = new ExternalSort.SortComparator(sortOrders, base.getSchema(), false);
+        PriorityQueue<Tuple> heap = new PriorityQueue<>(limit, comparator.reversed());
+        Batch inbatch;
+        while ((inbatch = base.next()) != null) {
+            for (int i = 0; i < inbatch.size(); i++) {
+                Tuple tuple = inbatch.elementAt(i);
+                if (heap.size() < limit) {
+                    heap.add(tuple);
+                } else if (comparator.compare(tuple, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(tuple);
+                }
+            }
+        }
+        result.addAll(heap);
+        result.sort(comparator);
+        return true;
+    }
+
+    public Batch next() {
+        if (cursor >= result.size()) {
+            close();
+            return null;
+        }
+        Batch outbatch = new Batch(batchSize);
+        while (!outbatch.isFull() && cursor < result.size()) {
+            outbatch.add(result.get(cursor++));
+        }
+        return outbatch;
+    }
+
+    public boolean close() {
+        result = Collections.emptyList();
+        cursor = 0;
+        return true;
+    }
+
+    public Object clone() {
+        Operator newbase = (Operator) base.clone();
+        TopN newtopn = new TopN(newbase, sortOrders, limit, optype);
+        newtopn.setSchema((Schema) newbase.getSchema().clone());
+        return newtopn;
+    }
+}
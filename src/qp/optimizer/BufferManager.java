@@ -1,10 +1,15 @@
 /**
- * simple buffer manager that distributes the buffers equally among
- * all the join operators
+ * buffer manager that distributes the buffers among the join, distinct and
+ * aggregate operators of the plan and the sort of the ORDER BY
  **/
 
 package qp.optimizer;
 
+import qp.operators.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
 
 public class BufferManager {
 
@@ -12,16 +17,224 @@ public class BufferManager {
     static int numJoin;
 
     static int buffPerJoin;
+    static int buffForSort;     // buffers of the sort of the ORDER BY
+    static int spareBuffers;    // buffers allocate left to no operator
+
+    /** Fewest buffers an operator runs with **/
+    public static final int MIN_BUFFERS = 3;
 
 
     public BufferManager(int numBuffer, int numJoin) {
         this.numBuffer = numBuffer;
         this.numJoin = numJoin;
         buffPerJoin = numBuffer / numJoin;
+        buffForSort = buffPerJoin;
     }
 
+    /** Buffers of a join the plan was not allocated for **/
+
     public static int getBuffersPerJoin() {
         return buffPerJoin;
     }
 
+    public static int getBuffersForSort() {
+        return buffForSort;
+    }
+
+    /** Buffers left to be shared out by allocate **/
+
+    public static int getNumBuffers() {
+        return numBuffer;
+    }
+
+    /** Buffers allocate gave to no operator, as more of them did
+     ** not lower the cost of the plan
+     **/
+
+    public static int getSpareBuffers() {
+        return spareBuffers;
+    }
+
+    /** Pages of the BufferPool the plan may hold pinned at once: the
+     ** page of every table it reads, which is the input page the operator
+     ** reading it counts in its buffers, and a node of the index probed by
+     ** an index scan or index nested join while it holds a data page
+     **/
+
+    public static int countFrames(Operator node) {
+        if (node.getOpType() == OpType.SCAN) {
+            return (node instanceof IndexScan) ? 2 : 1;
+        } else if (node.getOpType() == OpType.JOIN) {
+            Join join = (Join) node;
+            int index = (join.getJoinType() == JoinType.INDEXNESTED) ? 1 : 0;
+            return countFrames(join.getLeft()) + countFrames(join.getRight()) + index;
+        } else if (node.getOpType() == OpType.SELECT) {
+            return countFrames(((Select) node).getBase());
+        } else if (node.getOpType() == OpType.PROJECT) {
+            return countFrames(((Project) node).getBase());
+        } else if (node.getOpType() == OpType.DISTINCT) {
+            return countFrames(((Distinct) node).getBase());
+        } else if (node.getOpType() == OpType.AGGREGATE) {
+            return countFrames(((Aggregate) node).getBase());
+        }
+        return 0;
+    }
+
+    /** Fewest buffers allocate needs for the plan, those of each join,
+     ** distinct and aggregate, and MIN_BUFFERS for the sort if sorted is set
+     **/
+
+    public static int getMinBuffers(Operator root, boolean sorted) {
+        List<Operator> ops = new ArrayList<>();
+        findOperators(root, ops);
+        int min = sorted ? MIN_BUFFERS : 0;
+        for (Operator op : ops) {
+            min += minBuffers(op);
+        }
+        return min;
+    }
+
+    /** Fewest buffers an operator runs with, MIN_BUFFERS but for a
+     ** sort-merge join, which needs them for each of its sorts as well
+     **/
+
+    public static int minBuffers(Operator op) {
+        if (op.getOpType() == OpType.JOIN && ((Join) op).getJoinType() == JoinType.SORTMERGE) {
+            return SortMergeJoin.minBuffers(SortMergeJoin.numSorts((Join) op));
+        }
+        return MIN_BUFFERS;
+    }
+
+    /** Takes pages out of those shared out by allocate, for an operator
+     ** that holds them itself, such as the heap of a TopN
+     **/
+
+    public static void reserve(int pages) {
+        numBuffer -= pages;
+    }
+
+
+    /**
+     * Allocates the buffers to the joins, distincts and aggregates of the
+     * plan, through their setNumBuff, and to the sort of the ORDER BY if
+     * sorted is set. Every operator gets its minBuffers, and the rest are
+     * handed out step by step to the operator whose extra buffers lower the
+     * cost of the plan the most, until no more buffers lower it. A join
+     * whose cost does not depend on its buffers, such as an index nested
+     * join, keeps the minimum, while a large sort or hash join gets the
+     * pages it needs to save a pass.
+     */
+
+    public static void allocate(Operator root, boolean sorted) {
+        List<Operator> ops = new ArrayList<>();
+        findOperators(root, ops);
+        int numOps = ops.size() + (sorted ? 1 : 0);
+        if (numOps == 0) {
+            spareBuffers = numBuffer;
+            return;
+        }
+        int[] alloc = new int[numOps];
+        int spare = numBuffer;
+        for (int i = 0; i < numOps; i++) {
+            alloc[i] = (i < ops.size()) ? minBuffers(ops.get(i)) : MIN_BUFFERS;
+            spare -= alloc[i];
+        }
+        int grain = Math.max(1, numBuffer / 256);   // bounds the number of plans costed
+        long cost = cost(root, ops, sorted, alloc);
+
+        while (spare > 0) {
+            int step = Math.max(grain, spare / 8);
+            step = Math.min(step, spare);
+            int best = -1;
+            long bestCost = cost;
+            for (int i = 0; i < numOps; i++) {
+                alloc[i] += step;
+                long c = cost(root, ops, sorted, alloc);
+                alloc[i] -= step;
+                if (c < bestCost) {
+                    best = i;
+                    bestCost = c;
+                }
+            }
+            if (best < 0) {
+                break;      // the cost does not go down with more buffers
+            }
+            // fewest extra buffers that get the same cost
+            int low = 0;
+            int high = step;
+            while (high - low > grain) {
+                int mid = (low + high) / 2;
+                alloc[best] += mid;
+                long c = cost(root, ops, sorted, alloc);
+                alloc[best] -= mid;
+                if (c <= bestCost) {
+                    high = mid;
+                } else {
+                    low = mid;
+                }
+            }
+            alloc[best] += high;
+            spare -= high;
+            cost = bestCost;
+        }
+
+        setNumBuff(ops, alloc);
+        if (sorted) {
+            buffForSort = alloc[numOps - 1];
+        }
+        spareBuffers = Math.max(0, spare);
+    }
+
+    private static void findOperators(Operator node, List<Operator> ops) {
+        if (node.getOpType() == OpType.DISTINCT) {
+            ops.add(node);
+            findOperators(((Distinct) node).getBase(), ops);
+        } else if (node.getOpType() == OpType.AGGREGATE) {
+            ops.add(node);
+            findOperators(((Aggregate) node).getBase(), ops);
+        } else if (node.getOpType() == OpType.JOIN) {
+            ops.add(node);
+            findOperators(((Join) node).getLeft(), ops);
+            findOperators(((Join) node).getRight(), ops);
+        } else if (node.getOpType() == OpType.SELECT) {
+            findOperators(((Select) node).getBase(), ops);
+        } else if (node.getOpType() == OpType.PROJECT) {
+            findOperators(((Project) node).getBase(), ops);
+        }
+    }
+
+    /** Cost of the plan with the given buffers, the last of which are
+     ** those of the sort if sorted is set
+     **/
+
+    private static long cost(Operator root, List<Operator> ops, boolean sorted, int[] alloc) {
+        setNumBuff(ops, alloc);
+        PlanCost pc = new PlanCost();
+        long cost = pc.getCost(root);
+        if (cost == Integer.MAX_VALUE) {
+            return cost;
+        }
+        if (sorted) {
+            cost += pc.getSortCost(root, alloc[alloc.length - 1]);
+        }
+        return cost;
+    }
+
+    /** Gives the operators their buffers, a distinct then hashes or
+     ** sorts, whichever costs less with them
+     **/
+
+    private static void setNumBuff(List<Operator> ops, int[] alloc) {
+        for (int i = 0; i < ops.size(); i++) {
+            Operator op = ops.get(i);
+            if (op.getOpType() == OpType.DISTINCT) {
+                ((Distinct) op).setNumBuff(alloc[i]);
+                PlanCost.chooseDistinct((Distinct) op);
+            } else if (op.getOpType() == OpType.AGGREGATE) {
+                ((Aggregate) op).setNumBuff(alloc[i]);
+            } else {
+                ((Join) op).setNumBuff(alloc[i]);
+            }
+        }
+    }
 }
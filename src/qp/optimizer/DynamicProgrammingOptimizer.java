@@ -0,0 +1,383 @@
+/**
+ * System R style optimizer, dynamic programming over the subsets of the
+ * relations of the query
+ **/
+
+package qp.optimizer;
+
+import qp.operators.*;
+import qp.utils.Attribute;
+import qp.utils.Condition;
+import qp.utils.SQLQuery;
+import qp.utils.Schema;
+
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.util.*;
+
+/**
+ * The plans of a connected subset of the join graph are built from the
+ * plans of two smaller subsets joined by the condition between them, so
+ * bushy trees are found as well as left-deep ones, with either subset on
+ * the left and every join method. A subset of one relation is its scan
+ * and selections. For every subset the cheapest plan is kept, together
+ * with the cheapest plan in each interesting order: sorted on the join
+ * attribute of a later join, or on the first attribute of the ORDER BY,
+ * as such a plan may cost more but save a sort above it.
+ * The columns of SELECT * are put back in the order of the FROM list.
+ * Every join condition is applied by a join of its own, so a join graph
+ * with a cycle, or that does not connect all the relations, is left to
+ * the GreedyOptimizer.
+ * A join is costed with the buffers it can be given out of those of the
+ * query: its minimum, and an even share of what the joins below it and
+ * the minimums of the operators still to come leave. A plan whose
+ * operators need more buffers than there are is dropped, and if no plan
+ * fits, the joins are done by block nested loops, which need the fewest.
+ */
+public class DynamicProgrammingOptimizer {
+
+    private final SQLQuery query;
+
+    private List<String> tables;        // relations of the FROM list, table i is bit i of a subset
+    private List<Condition> joins;      // join conditions
+    private int[] lhsTable;             // table of the left attribute of each condition
+    private int[] rhsTable;             // table of the right attribute of each condition
+    private List<Order> resultOrder;    // order asked of the plan by the ORDER BY
+    private int budget;                 // buffers shared out among the operators of the plan
+
+    /** plans kept for each subset, keyed by their interesting order, "" if none **/
+    private Map<Integer, Map<String, Plan>> memo;
+
+    /** A plan and its cost **/
+    private static class Plan {
+        final Operator root;
+        final int cost;
+
+        Plan(Operator root, int cost) {
+            this.root = root;
+            this.cost = cost;
+        }
+    }
+
+    public DynamicProgrammingOptimizer(SQLQuery query) {
+        this.query = query;
+    }
+
+    /**
+     * Plans every subset from the single relations up to all of them,
+     * then attaches the projection, or aggregation, and the distinct
+     * over the cheapest plan of all the relations, counting the sort of
+     * the ORDER BY it may need
+     */
+    public Operator getOptimizedPlan() {
+        tables = new ArrayList<>();
+        for (int i = 0; i < query.getFromList().size(); i++) {
+            tables.add((String) query.getFromList().elementAt(i));
+        }
+        if (query.getJoinList().isEmpty()) {
+            return GreedyOptimizer.attachOutput(query, leafPlan(tables.get(0)));
+        }
+
+        joins = new ArrayList<>();
+        lhsTable = new int[query.getNumJoin()];
+        rhsTable = new int[query.getNumJoin()];
+        for (int j = 0; j < query.getNumJoin(); j++) {
+            Condition con = (Condition) query.getJoinList().elementAt(j);
+            joins.add(con);
+            lhsTable[j] = tables.indexOf(con.getLhs().getTabName());
+            rhsTable[j] = tables.indexOf(((Attribute) con.getRhs()).getTabName());
+        }
+        resultOrder = PlanCost.resultOrder(query);
+        budget = BufferManager.getNumBuffers();
+
+        memo = new HashMap<>();
+        for (int i = 0; i < tables.size(); i++) {
+            Operator leaf = leafPlan(tables.get(i));
+            keep(1 << i, leaf, new PlanCost().getCost(leaf));
+        }
+
+        int all = (1 << tables.size()) - 1;
+        for (int size = 2; size <= tables.size(); size++) {
+            for (int subset = 1; subset <= all; subset++) {
+                if (Integer.bitCount(subset) == size) {
+                    planSubset(subset);
+                }
+            }
+        }
+
+        Map<String, Plan> plans = memo.get(all);
+        if (plans == null) {
+            return fitBuffers(new GreedyOptimizer(query).getOptimizedPlan());
+        }
+        Operator root = null;
+        int mincost = Integer.MAX_VALUE;
+        for (Plan plan : plans.values()) {
+            int cost = new PlanCost().getCost(plan.root, resultOrder, sortBuffers(plan.root));
+            if (root == null || cost < mincost) {
+                root = plan.root;
+                mincost = cost;
+            }
+        }
+        numberJoins(root, 0);
+        if (query.getProjectList().isEmpty()) {
+            root = fromListOrder(root);
+        }
+        return GreedyOptimizer.attachOutput(query, root);
+    }
+
+    /** The columns of SELECT * come in the order of the FROM list,
+     ** whatever order the tables are joined in
+     **/
+
+    private Operator fromListOrder(Operator root) {
+        Schema schema = root.getSchema();
+        Vector attrs = new Vector();
+        for (String tabname : tables) {
+            for (int i = 0; i < schema.getNumCols(); i++) {
+                if (schema.getAttribute(i).getTabName().equals(tabname)) {
+                    attrs.add(schema.getAttribute(i));
+                }
+            }
+        }
+        boolean same = true;
+        for (int i = 0; i < attrs.size(); i++) {
+            same = same && attrs.elementAt(i) == schema.getAttribute(i);
+        }
+        if (same) {
+            return root;
+        }
+        Project project = new Project(root, attrs, OpType.PROJECT);
+        project.setSchema(schema.subSchema(attrs));
+        return project;
+    }
+
+    /** Joins the plans of every split of the subset in two parts that
+     ** a single condition connects, each join with its share of the
+     ** buffers, unless the plan cannot get the minimum buffers of its
+     ** operators
+     **/
+
+    private void planSubset(int subset) {
+        int laterJoins = tables.size() - Integer.bitCount(subset);
+        boolean complete = laterJoins == 0;
+        for (int left = (subset - 1) & subset; left > 0; left = (left - 1) & subset) {
+            int right = subset & ~left;
+            Map<String, Plan> leftPlans = memo.get(left);
+            Map<String, Plan> rightPlans = memo.get(right);
+            if (leftPlans == null || rightPlans == null) {
+                continue;
+            }
+            int joinNum = connectingCondition(left, right);
+            if (joinNum < 0) {
+                continue;
+            }
+            Condition con = joins.get(joinNum);
+            if ((left & (1 << lhsTable[joinNum])) == 0) {
+                con = (Condition) con.clone();
+                con.flip();
+            }
+            for (Plan leftPlan : leftPlans.values()) {
+                for (Plan rightPlan : rightPlans.values()) {
+                    int belowMin = BufferManager.getMinBuffers(leftPlan.root, false)
+                            + BufferManager.getMinBuffers(rightPlan.root, false);
+                    int below = joinBuffers(leftPlan.root) + joinBuffers(rightPlan.root);
+                    for (int type = 0; type < JoinType.numJoinTypes(); type++) {
+                        Join join = new Join(leftPlan.root, rightPlan.root, con, OpType.JOIN);
+                        join.setSchema(leftPlan.root.getSchema().joinWith(rightPlan.root.getSchema()));
+                        join.setJoinType(type);
+                        int min = BufferManager.minBuffers(join);
+                        int aboveMin = BufferManager.MIN_BUFFERS * laterJoins + upperMinBuffers(join, complete);
+                        if (belowMin + min + aboveMin > budget) {
+                            continue;
+                        }
+                        int spare = Math.max(0, budget - below - min - aboveMin);
+                        join.setNumBuff(min + spare / (1 + laterJoins + upperOperators(join, complete)));
+                        int cost = new PlanCost().getCost(join);
+                        if (cost != Integer.MAX_VALUE) {
+                            keep(subset, join, cost);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** The condition between the two subsets, -1 if there is none or
+     ** more than one
+     **/
+
+    private int connectingCondition(int left, int right) {
+        int found = -1;
+        for (int j = 0; j < joins.size(); j++) {
+            int lhs = 1 << lhsTable[j];
+            int rhs = 1 << rhsTable[j];
+            if (((left & lhs) != 0 && (right & rhs) != 0) || ((left & rhs) != 0 && (right & lhs) != 0)) {
+                if (found >= 0) {
+                    return -1;
+                }
+                found = j;
+            }
+        }
+        return found;
+    }
+
+    /** Keeps the plan if it is the cheapest of the subset in its order **/
+
+    private void keep(int subset, Operator root, int cost) {
+        Map<String, Plan> plans = memo.computeIfAbsent(subset, s -> new HashMap<>());
+        String key = interestingOrder(subset, root);
+        Plan kept = plans.get(key);
+        if (kept == null || cost < kept.cost) {
+            plans.put(key, new Plan(root, cost));
+        }
+    }
+
+    /** Names the order of the plan if a later join or the ORDER BY
+     ** can use it, "" otherwise
+     **/
+
+    private String interestingOrder(int subset, Operator root) {
+        List<Order> order = root.getOrder();
+        if (order.isEmpty()) {
+            return "";
+        }
+        Order first = order.get(0);
+        Attribute attr = first.getAttribute();
+        boolean interesting = !resultOrder.isEmpty() && Order.satisfies(order, resultOrder.subList(0, 1));
+        for (int j = 0; j < joins.size() && !interesting; j++) {
+            boolean lhsIn = (subset & (1 << lhsTable[j])) != 0;
+            boolean rhsIn = (subset & (1 << rhsTable[j])) != 0;
+            Condition con = joins.get(j);
+            if (first.getOrderType() == Order.OrderType.ASC) {
+                interesting = (lhsIn && !rhsIn && attr.equals(con.getLhs()))
+                        || (rhsIn && !lhsIn && attr.equals((Attribute) con.getRhs()));
+            }
+        }
+        return interesting ? attr.getTabName() + "." + attr.getColName() + " " + first.getOrderType() : "";
+    }
+
+    /** Fewest buffers of the operators above the joins: the aggregate,
+     ** the distinct unless the sort of the ORDER BY drops the duplicates,
+     ** and that sort unless the plan leaves the result in its order. Until
+     ** the plan is complete, a later join may still leave it in order
+     **/
+
+    private int upperMinBuffers(Operator root, boolean complete) {
+        return BufferManager.MIN_BUFFERS * upperOperators(root, complete);
+    }
+
+    private int upperOperators(Operator root, boolean complete) {
+        boolean orderBy = !query.getOrderByList().isEmpty();
+        int num = query.isAggregated() ? 1 : 0;
+        if (query.isDistinct() && !orderBy) {
+            num++;
+        }
+        if (orderBy && (resultOrder.isEmpty() || (complete && !Order.satisfies(root.getOrder(), resultOrder)))) {
+            num++;
+        }
+        return num;
+    }
+
+    /** Buffers given to the joins of the plan **/
+
+    private static int joinBuffers(Operator node) {
+        if (node.getOpType() == OpType.JOIN) {
+            Join join = (Join) node;
+            return join.getNumBuff() + joinBuffers(join.getLeft()) + joinBuffers(join.getRight());
+        } else if (node.getOpType() == OpType.SELECT) {
+            return joinBuffers(((Select) node).getBase());
+        } else if (node.getOpType() == OpType.PROJECT) {
+            return joinBuffers(((Project) node).getBase());
+        }
+        return 0;
+    }
+
+    /** Buffers of the sort of the ORDER BY over the plan of all the
+     ** relations, its share of what the joins leave
+     **/
+
+    private int sortBuffers(Operator root) {
+        int spare = Math.max(0, budget - joinBuffers(root) - upperMinBuffers(root, true));
+        return BufferManager.MIN_BUFFERS + spare / Math.max(1, upperOperators(root, true));
+    }
+
+    /** The plan as it is if its operators get their minimum buffers,
+     ** otherwise with its joins done by block nested loops
+     **/
+
+    private Operator fitBuffers(Operator root) {
+        boolean orderBy = !query.getOrderByList().isEmpty();
+        boolean sortDistinct = orderBy && root.getOpType() == OpType.DISTINCT;
+        Operator plan = sortDistinct ? ((Distinct) root).getBase() : root;
+        boolean sorted = orderBy
+                && (sortDistinct || !Order.satisfies(plan.getOrder(), new ArrayList<Order>(query.getOrderByList())));
+        if (BufferManager.getMinBuffers(plan, sorted) > budget) {
+            blockNested(root);
+        }
+        return root;
+    }
+
+    /** Has the joins of the plan done by block nested loops **/
+
+    public static void blockNested(Operator node) {
+        if (node.getOpType() == OpType.JOIN) {
+            Join join = (Join) node;
+            join.setJoinType(JoinType.BLOCKNESTED);
+            blockNested(join.getLeft());
+            blockNested(join.getRight());
+        } else if (node.getOpType() == OpType.SELECT) {
+            blockNested(((Select) node).getBase());
+        } else if (node.getOpType() == OpType.PROJECT) {
+            blockNested(((Project) node).getBase());
+        } else if (node.getOpType() == OpType.DISTINCT) {
+            blockNested(((Distinct) node).getBase());
+        } else if (node.getOpType() == OpType.AGGREGATE) {
+            blockNested(((Aggregate) node).getBase());
+        }
+    }
+
+    /** Gives the joins of the plan their numbers **/
+
+    private int numberJoins(Operator node, int num) {
+        if (node.getOpType() == OpType.JOIN) {
+            Join join = (Join) node;
+            num = numberJoins(join.getLeft(), num);
+            num = numberJoins(join.getRight(), num);
+            join.setNodeIndex(num);
+            return num + 1;
+        }
+        return num;
+    }
+
+    /** Scan of the table, reading only the columns the query refers
+     ** to, under the selections on it
+     **/
+
+    private Operator leafPlan(String tabname) {
+        Scan scan = new Scan(tabname, OpType.SCAN);
+        String filename = tabname + ".md";
+        try {
+            ObjectInputStream in = new ObjectInputStream(new FileInputStream(filename));
+            scan.setSchema((Schema) in.readObject());
+            in.close();
+        } catch (Exception e) {
+            System.err.println("DynamicProgrammingOptimizer: Error reading Schema of the table " + filename);
+            System.exit(1);
+        }
+        Vector referenced = query.getReferencedAttributes();
+        if (referenced != null) {
+            scan.setProjection(referenced);
+        }
+
+        Operator root = scan;
+        for (int i = 0; i < query.getSelectionList().size(); i++) {
+            Condition con = (Condition) query.getSelectionList().elementAt(i);
+            if (con.getLhs().getTabName().equals(tabname)) {
+                Select select = new Select(root, con, OpType.SELECT);
+                select.setSchema(root.getSchema());
+                root = PlanCost.chooseSelect(select);
+            }
+        }
+        return root;
+    }
+}
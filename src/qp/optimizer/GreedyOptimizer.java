@@ -25,8 +25,13 @@ public class GreedyOptimizer {
         RelationSchemaPair(String name) {
             Schema schema = fetchSchema(name);
             this.name = name;
-            this.operator = new Scan(this.name, OpType.SCAN);
-            this.operator.setSchema(schema);
+            Scan scan = new Scan(this.name, OpType.SCAN);
+            scan.setSchema(schema);
+            Vector referenced = GreedyOptimizer.this.query.getReferencedAttributes();
+            if (referenced != null) {
+                scan.setProjection(referenced);
+            }
+            this.operator = scan;
             PlanCost pc = new PlanCost();
             this.nTuple = pc.getStatistics((Scan) this.operator);
         }
@@ -110,7 +115,7 @@ public class GreedyOptimizer {
                     OpType.SELECT
                 );
                 select.setSchema(rsp.getSchema());
-                rsp.setOperator(select);
+                rsp.setOperator(PlanCost.chooseSelect(select));
             });
 
         Operator root = null;
@@ -196,20 +201,39 @@ public class GreedyOptimizer {
                     }
                     join.setNodeIndex(joinNum);
                     joinNum++;
-                    join.setJoinType(JoinType.BLOCKNESTED);
+                    // the output of the last join is in the order of the result
+                    boolean last = joinNum == this.query.getNumJoin();
+                    join.setJoinType(chooseJoinType(join, last ? PlanCost.resultOrder(this.query) : Collections.emptyList()));
                     root = join;
                 }
             }
         }
 
 
-        // Attach projection
-        Vector projectList = this.query.getProjectList();
+        return attachOutput(this.query, root);
+    }
+
+    /**
+     * Attaches the projection, or the aggregation that stands for it, and
+     * the removal of duplicates over the plan of the joins
+     */
+    static Operator attachOutput(SQLQuery query, Operator root) {
+        // Attach projection, or the aggregation that stands for it
+        Vector projectList = query.getProjectList();
 
-        if (!projectList.isEmpty()) {
+        if (query.isAggregated()) {
+            Aggregate aggregate = new Aggregate(
+                root,
+                projectList,
+                query.getGroupByList(),
+                OpType.AGGREGATE
+            );
+            aggregate.setSchema(Aggregate.outputSchema(root.getSchema(), projectList));
+            root = aggregate;
+        } else if (!projectList.isEmpty()) {
             Project project = new Project(
                 root,
-                this.query.getProjectList(),
+                query.getProjectList(),
                 OpType.PROJECT
             );
             Schema schema = root.getSchema().subSchema(projectList);
@@ -217,6 +241,48 @@ public class GreedyOptimizer {
             root = project;
         }
 
+        // Remove the duplicates last, by hashing or sorting
+        if (query.isDistinct()) {
+            Distinct distinct = new Distinct(root, OpType.DISTINCT);
+            distinct.setSchema(root.getSchema());
+            root = PlanCost.chooseDistinct(distinct);
+        }
+
         return root;
     }
+
+    /**
+     * Block nested loops, unless the right table has an index on the join
+     * column and probing it for every left tuple reads fewer pages, or a
+     * sort-merge join makes use of an order. It is tried when an input is
+     * already sorted on its join attribute, or when its output is in the
+     * given order of the result, which saves the sort of the ORDER BY
+     */
+    private int chooseJoinType(Join join, List<Order> orders) {
+        List<Integer> candidates = new ArrayList<>();
+        candidates.add(JoinType.BLOCKNESTED);
+        if (IndexNestedJoin.isApplicable(join)) {
+            candidates.add(JoinType.INDEXNESTED);
+        }
+        Condition con = join.getCondition();
+        List<Order> leftOrder = Arrays.asList(new Order(con.getLhs(), Order.OrderType.ASC));
+        List<Order> rightOrder = Arrays.asList(new Order((Attribute) con.getRhs(), Order.OrderType.ASC));
+        if (Order.satisfies(join.getLeft().getOrder(), leftOrder)
+                || Order.satisfies(join.getRight().getOrder(), rightOrder)
+                || (!orders.isEmpty() && Order.satisfies(leftOrder, orders))) {
+            candidates.add(JoinType.SORTMERGE);
+        }
+
+        int best = JoinType.BLOCKNESTED;
+        int bestCost = Integer.MAX_VALUE;
+        for (int type : candidates) {
+            join.setJoinType(type);
+            int cost = new PlanCost().getCost(join, orders);
+            if (cost < bestCost) {
+                best = type;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
 }
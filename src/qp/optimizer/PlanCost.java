@@ -8,7 +8,11 @@ package qp.optimizer;
 import qp.operators.*;
 import qp.utils.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Vector;
 import java.util.StringTokenizer;
 import java.util.Enumeration;
 import java.io.*;
@@ -53,6 +57,49 @@ public class PlanCost {
     }
 
 
+    /** Cost of the plan and of sorting its result in the given orders,
+     ** as done for the ORDER BY, unless the plan leaves it in them
+     **/
+
+    public int getCost(Operator root, List<Order> orders) {
+        return getCost(root, orders, BufferManager.getBuffersForSort());
+    }
+
+    /** As above, with the given number of buffers for the sort **/
+
+    public int getCost(Operator root, List<Order> orders, int sortbuff) {
+        int plancost = getCost(root);
+        if (plancost == Integer.MAX_VALUE || Order.satisfies(root.getOrder(), orders)) {
+            return plancost;
+        }
+        return plancost + getSortCost(root, sortbuff);
+    }
+
+
+    /** Order the ORDER BY asks of the plan of the joins, none if the
+     ** result is aggregated or its duplicates are removed, as the ORDER BY
+     ** sorts it again then
+     **/
+
+    public static List<Order> resultOrder(SQLQuery sqlquery) {
+        if (sqlquery.isAggregated() || sqlquery.isDistinct()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<Order>(sqlquery.getOrderByList());
+    }
+
+
+    /** Cost of sorting the result of the plan last costed, in the
+     ** given number of buffers, as done for the ORDER BY
+     **/
+
+    public int getSortCost(Operator root, int numbuff) {
+        int capacity = Math.max(1, Batch.getPageSize() / root.getSchema().getTupleSize());
+        int numpages = (int) Math.ceil(numtuple / (double) capacity);
+        return externalSortCost(numpages, numbuff);
+    }
+
+
     /** get number of tuples in estimated results **/
 
     public int getNumTuples() {
@@ -72,6 +119,12 @@ public class PlanCost {
             return getStatistics((Select) node);
         } else if (node.getOpType() == OpType.PROJECT) {
             return getStatistics((Project) node);
+        } else if (node.getOpType() == OpType.DISTINCT) {
+            return getStatistics((Distinct) node);
+        } else if (node.getOpType() == OpType.AGGREGATE) {
+            return getStatistics((Aggregate) node);
+        } else if (node instanceof IndexScan) {
+            return getStatistics((IndexScan) node);
         } else if (node.getOpType() == OpType.SCAN) {
             return getStatistics((Scan) node);
 
@@ -138,8 +191,8 @@ public class PlanCost {
         int joinType = node.getJoinType();
         /** number of buffers allotted to this join**/
 
-        int numbuff = BufferManager.getBuffersPerJoin();
-        int blockSize = (numbuff - 2);
+        int numbuff = node.getNumBuff() > 0 ? node.getNumBuff() : BufferManager.getBuffersPerJoin();
+        int blockSize = Math.max(1, numbuff - 2 - PrefetchReader.getDepth());  // less the pages read ahead
 
         int joincost;
 
@@ -147,16 +200,19 @@ public class PlanCost {
 
         switch (joinType) {
             case JoinType.NESTEDJOIN:
-                joincost = leftpages * rightpages;
+                joincost = innerScansCost(node, leftpages, rightpages);
                 break;
             case JoinType.BLOCKNESTED:
-                joincost = leftpages + ((int) Math.ceil(leftpages / (1.0 * blockSize))) * rightpages;
+                joincost = leftpages + innerScansCost(node, (int) Math.ceil(leftpages / (1.0 * blockSize)), rightpages);
                 break;
             case JoinType.SORTMERGE:
-                joincost = sortMergeJoinCost(leftpages, rightpages, numbuff);
+                joincost = sortMergeJoinCost(node, leftpages, rightpages, numbuff);
                 break;
             case JoinType.HASHJOIN:
-                joincost = Integer.MAX_VALUE;
+                joincost = hashJoinCost(leftpages, rightpages, numbuff);
+                break;
+            case JoinType.INDEXNESTED:
+                joincost = indexNestedJoinCost(node, lefttuples, righttuples, rightattrdistn, rightpages);
                 break;
             default:
                 joincost = 0;
@@ -167,15 +223,219 @@ public class PlanCost {
         return outtuples;
     }
 
-    private int sortMergeJoinCost(int leftpages, int rightpages, int numbuff) {
-        int leftsort = externalSortCost(leftpages, numbuff);
-        int rightsort = externalSortCost(rightpages, numbuff);
-        return leftsort + rightsort + leftpages + rightpages;
+    /** Cost of reading the right input once per pass of a nested loop.
+     ** A base table is scanned again, and its first scan is already
+     ** counted by the Scan. Any other input is written to a file once
+     ** and the file is read in every pass
+     **/
+
+    private int innerScansCost(Join node, int numpasses, int rightpages) {
+        if (node.isRightRescannable()) {
+            return Math.max(0, numpasses - 1) * rightpages;
+        }
+        return rightpages + numpasses * rightpages;
     }
 
+    /** The merge reads both inputs from the last merge pass of their sorts,
+     ** which the sort cost already counts. Each sort runs in its share of
+     ** the buffers of the join (see SortMergeJoin.sortBuffers). An input
+     ** already in order on its join attribute is read as it is produced,
+     ** at no cost. A duplicate group of the right input larger than the
+     ** pages the sorts leave is spilled, which is not charged here. Not
+     ** feasible with fewer buffers than SortMergeJoin.minBuffers
+     **/
+
+    private int sortMergeJoinCost(Join node, int leftpages, int rightpages, int numbuff) {
+        Condition con = node.getCondition();
+        List<Order> leftorder = Arrays.asList(new Order(con.getLhs(), Order.OrderType.ASC));
+        List<Order> rightorder = Arrays.asList(new Order((Attribute) con.getRhs(), Order.OrderType.ASC));
+        boolean leftinorder = Order.satisfies(node.getLeft().getOrder(), leftorder);
+        boolean rightinorder = Order.satisfies(node.getRight().getOrder(), rightorder);
+        int numsorts = (leftinorder ? 0 : 1) + (rightinorder ? 0 : 1);
+        if (numbuff < SortMergeJoin.minBuffers(numsorts)) {
+            isFeasible = false;
+            return 0;
+        }
+        int sortbuff = SortMergeJoin.sortBuffers(numbuff, numsorts);
+        int leftsort = leftinorder ? 0 : externalSortCost(leftpages, sortbuff);
+        int rightsort = rightinorder ? 0 : externalSortCost(rightpages, sortbuff);
+        return leftsort + rightsort;
+    }
+
+    /** Grace hash join: partition both inputs into B-1 partitions, then build
+     ** each left partition in B-2 buffers and probe it with the right one.
+     ** A left partition that does not fit is built in chunks, and the
+     ** right partition is re-read once per chunk.
+     **/
+
+    private int hashJoinCost(int leftpages, int rightpages, int numbuff) {
+        if (numbuff < 3) {
+            isFeasible = false;
+            return 0;
+        }
+        int partitionpages = (int) Math.ceil(leftpages / (1.0 * (numbuff - 1)));
+        int chunks = Math.max(1, (int) Math.ceil(partitionpages / (1.0 * (numbuff - 2))));
+        return 2 * (leftpages + rightpages) + leftpages + chunks * rightpages;
+    }
+
+    /** Every left tuple descends the index of the right table and reads
+     ** one data page per matching tuple, as the table is not clustered on
+     ** the index. The right table is not scanned, so the pages counted
+     ** by its Scan are taken back. Not feasible without an index
+     **/
+
+    private int indexNestedJoinCost(Join node, int lefttuples, int righttuples, int rightdistinct, int rightpages) {
+        if (!IndexNestedJoin.isApplicable(node)) {
+            isFeasible = false;
+            return 0;
+        }
+        int height;
+        try {
+            BPlusTree tree = new BPlusTree(IndexNestedJoin.indexFileName(node));
+            height = tree.getHeight();
+            tree.close();
+        } catch (IOException io) {
+            isFeasible = false;
+            return 0;
+        }
+        int matches = (int) Math.ceil(righttuples / (double) Math.max(1, rightdistinct));
+        long probecost = (long) lefttuples * (height + matches);
+        return (int) Math.min(Integer.MAX_VALUE / 2, probecost) - rightpages;
+    }
+
+    /** The runs are written and read back once per merge pass, except
+     ** that the last pass is not written out but handed to the consumer
+     **/
+
     private int externalSortCost(int numpages, int numbuff) {
-        int numpasses = 1 + (int) Math.ceil(Math.log(Math.ceil(numpages / (1.0 * numbuff))) / Math.log(numpages -1) );
-        return numpasses * (2 * numpages);
+        if (numpages <= 0) {
+            return 0;
+        }
+        int numruns = (int) Math.ceil(numpages / (1.0 * numbuff));
+        int mergepasses = (int) Math.ceil(Math.log(numruns) / Math.log(numbuff - 1));
+        return 2 * numpages + 2 * numpages * Math.max(0, mergepasses - 1) + numpages;
+    }
+
+
+    /** The distinct tuples are at most as many as the combinations of
+     ** the distinct values of the columns, and the columns keep their
+     ** distinct values
+     **/
+
+    protected int getStatistics(Distinct node) {
+        int intuples = calculateCost(node.getBase());
+        if (isFeasible == false) {
+            return -1;
+        }
+
+        Schema schema = node.getSchema();
+        double combinations = 1;
+        for (int i = 0; i < schema.getNumCols(); i++) {
+            Integer numdistinct = (Integer) ht.get(schema.getAttribute(i));
+            combinations *= (numdistinct == null) ? intuples : Math.max(1, numdistinct.intValue());
+        }
+        int outtuples = (int) Math.min(intuples, combinations);
+
+        int capacity = Math.max(1, Batch.getPageSize() / schema.getTupleSize());
+        int inpages = (int) Math.ceil(intuples / (double) capacity);
+        int outpages = (int) Math.ceil(outtuples / (double) capacity);
+        int numbuff = node.getNumBuff() > 0 ? node.getNumBuff() : BufferManager.getBuffersPerJoin();
+        if (numbuff < 3) {
+            isFeasible = false;
+            return -1;
+        }
+
+        if (node.getDistinctType() == Distinct.SORT) {
+            cost = cost + sortDistinctCost(inpages, outpages, numbuff);
+        } else {
+            cost = cost + hashPartitionCost(inpages, outpages, numbuff);
+        }
+        return outtuples;
+    }
+
+    /** There are at most as many groups as the combinations of the
+     ** distinct values of the GROUP BY columns, and a single one without
+     ** a GROUP BY. Every aggregate has a value per group
+     **/
+
+    protected int getStatistics(Aggregate node) {
+        int intuples = calculateCost(node.getBase());
+        if (isFeasible == false) {
+            return -1;
+        }
+
+        Schema baseschema = node.getBase().getSchema();
+        Vector groupby = node.getGroupBy();
+        double combinations = 1;
+        for (int i = 0; i < groupby.size(); i++) {
+            Attribute attr = baseschema.getAttribute(baseschema.indexOf((Attribute) groupby.elementAt(i)));
+            Integer numdistinct = (Integer) ht.get(attr);
+            combinations *= (numdistinct == null) ? intuples : Math.max(1, numdistinct.intValue());
+        }
+        int outtuples = (int) Math.min(intuples, combinations);
+
+        Schema schema = node.getSchema();
+        for (int i = 0; i < schema.getNumCols(); i++) {
+            Attribute attr = schema.getAttribute(i);
+            Integer numdistinct = (Integer) ht.get(attr);
+            if (attr.isAggregated() || numdistinct == null) {
+                ht.put(attr, Integer.valueOf(outtuples));
+            } else {
+                ht.put(attr, Integer.valueOf(Math.min(outtuples, numdistinct.intValue())));
+            }
+        }
+
+        int inpages = (int) Math.ceil(intuples / (double) Math.max(1, Batch.getPageSize() / baseschema.getTupleSize()));
+        int outpages = (int) Math.ceil(outtuples / (double) Math.max(1, Batch.getPageSize() / schema.getTupleSize()));
+        int numbuff = node.getNumBuff() > 0 ? node.getNumBuff() : BufferManager.getBuffersPerJoin();
+        if (numbuff < 3) {
+            isFeasible = false;
+            return -1;
+        }
+        cost = cost + hashPartitionCost(inpages, outpages, numbuff);
+        return outtuples;
+    }
+
+    /** Nothing is written if the distinct tuples or groups fit in the
+     ** B-2 pages of the hash table. Otherwise the input is written to B-1
+     ** partitions and read back, again for every level of partitions
+     ** whose distinct tuples or groups still do not fit
+     **/
+
+    private int hashPartitionCost(int inpages, int outpages, int numbuff) {
+        if (outpages <= numbuff - 2) {
+            return 0;
+        }
+        int levels = (int) Math.ceil(Math.log(outpages / (double) (numbuff - 2)) / Math.log(numbuff - 1));
+        return 2 * inpages * Math.max(1, levels);
+    }
+
+    /** As the external sort, but the duplicates are dropped from the runs
+     ** of B pages and at every merge pass, so the passes after the first
+     ** read and write about the pages of the distinct tuples only
+     **/
+
+    private int sortDistinctCost(int inpages, int outpages, int numbuff) {
+        if (inpages <= 0) {
+            return 0;
+        }
+        int numruns = (int) Math.ceil(inpages / (1.0 * numbuff));
+        int runpages = (numruns == 1) ? outpages : inpages;
+        int mergepasses = (int) Math.ceil(Math.log(numruns) / Math.log(numbuff - 1));
+        return inpages + 2 * runpages + 2 * outpages * Math.max(0, mergepasses - 1);
+    }
+
+    /** The distinct with whichever of hashing and sorting costs less **/
+
+    public static Operator chooseDistinct(Distinct distinct) {
+        distinct.setDistinctType(Distinct.HASH);
+        int hashcost = new PlanCost().getCost(distinct);
+        distinct.setDistinctType(Distinct.SORT);
+        int sortcost = new PlanCost().getCost(distinct);
+        if (hashcost <= sortcost) {
+            distinct.setDistinctType(Distinct.HASH);
+        }
+        return distinct;
     }
 
 
@@ -191,9 +451,12 @@ public class PlanCost {
         if (isFeasible == false) {
             return Integer.MAX_VALUE;
         }
+        return selectStatistics(node.getCondition(), node.getSchema(), intuples);
+    }
 
-        Condition con = node.getCondition();
-        Schema schema = node.getSchema();
+    /** Number of tuples satisfying the condition, out of intuples **/
+
+    private int selectStatistics(Condition con, Schema schema, int intuples) {
 
         Attribute attr = con.getLhs();
 
@@ -234,6 +497,51 @@ public class PlanCost {
     }
 
 
+    /** The index is searched down to the first leaf of the range, then
+     ** the leaves of the range are read, and a data page is read per
+     ** selected tuple as the table is not clustered on the index
+     **/
+
+    protected int getStatistics(IndexScan node) {
+        int scancost = cost;
+        int intuples = getStatistics((Scan) node);
+        cost = scancost;    // the table is not scanned
+        int outtuples = selectStatistics(node.getCondition(), node.getSchema(), intuples);
+        try {
+            BPlusTree tree = new BPlusTree(node.getIndexFileName());
+            int leaves = (int) Math.ceil(outtuples / (double) tree.getLeafCapacity());
+            cost = cost + tree.getHeight() - 1 + Math.max(1, leaves) + outtuples;
+            tree.close();
+        } catch (IOException io) {
+            isFeasible = false;
+        }
+        return outtuples;
+    }
+
+
+    /** The selection itself, or an IndexScan standing for it if the
+     ** selected column of its base table is indexed and reading the
+     ** selected tuples through the index costs less
+     **/
+
+    public static Operator chooseSelect(Select select) {
+        Operator base = select.getBase();
+        Condition con = select.getCondition();
+        if (!IndexScan.isApplicable(base, con)) {
+            return select;
+        }
+        IndexScan indexscan = new IndexScan(((Scan) base).getTabName(), con, OpType.SCAN);
+        indexscan.setSchema(((Scan) base).getTableSchema());
+        if (((Scan) base).getProjection() != null) {
+            indexscan.setProjection(base.getSchema().getAttList());
+        }
+        if (new PlanCost().getCost(indexscan) < new PlanCost().getCost(select)) {
+            return indexscan;
+        }
+        return select;
+    }
+
+
     /**  the statistics file <tablename>.stat to find the statistics
      ** about that table;
      ** This table contains number of tuples in the table
@@ -243,7 +551,7 @@ public class PlanCost {
     protected int getStatistics(Scan node) {
         String tablename = node.getTabName();
         String filename = tablename + ".stat";
-        Schema schema = node.getSchema();
+        Schema schema = node.getTableSchema();  // the statistics cover every column
         int numAttr = schema.getNumCols();
         BufferedReader in = null;
         try {
@@ -291,9 +599,12 @@ public class PlanCost {
             Integer distinctValues = Integer.valueOf(temp);
             ht.put(attr, distinctValues);
         }
-        /** number of tuples per page**/
+        /** number of tuples per page, only the columns read
+         ** count if they are stored in files of their own, and
+         ** strings stored as codes take the size of the code
+         **/
 
-        int tuplesize = schema.getTupleSize();
+        int tuplesize = node.getStoredTupleSize();
         int pagesize = Batch.getPageSize() / tuplesize;
         //Batch.capacity();
         int numpages = (int) Math.ceil((double) numtuples / (double) pagesize);
@@ -61,7 +61,14 @@ public class RandomInitialPlan {
         if (numJoin != 0) {
             createJoinOp();
         }
-        createProjectOp();
+        if (sqlquery.isAggregated()) {
+            createAggregateOp();
+        } else {
+            createProjectOp();
+        }
+        if (sqlquery.isDistinct()) {
+            createDistinctOp();
+        }
         return root;
     }
 
@@ -92,6 +99,10 @@ public class RandomInitialPlan {
                 Schema schm = (Schema) _if.readObject();
                 op1.setSchema(schm);
                 _if.close();
+                /** read only the columns the query refers to **/
+                if (sqlquery.getReferencedAttributes() != null) {
+                    op1.setProjection(sqlquery.getReferencedAttributes());
+                }
             } catch (Exception e) {
                 System.err.println("RandomInitialPlan:Error reading Schema of the table" + filename);
                 System.exit(1);
@@ -118,7 +129,7 @@ public class RandomInitialPlan {
 
 
     public void createSelectOp() {
-        Select op1 = null;
+        Operator op1 = null;
 
         for (int j = 0; j < selectionlist.size(); j++) {
 
@@ -128,9 +139,11 @@ public class RandomInitialPlan {
                 //System.out.println("RandomInitial:-------------Select-------:"+tabname);
 
                 Operator tempop = (Operator) tab_op_hash.get(tabname);
-                op1 = new Select(tempop, cn, OpType.SELECT);
+                Select select = new Select(tempop, cn, OpType.SELECT);
                 /** set the schema same as base relation **/
-                op1.setSchema(tempop.getSchema());
+                select.setSchema(tempop.getSchema());
+                /** read through the index of the column instead, if cheaper **/
+                op1 = PlanCost.chooseSelect(select);
 
                 modifyHashtable(tempop, op1);
                 //tab_op_hash.put(tabname,op1);
@@ -205,6 +218,18 @@ public class RandomInitialPlan {
         }
     }
 
+    public void createAggregateOp() {
+        Operator base = root;
+        root = new Aggregate(base, projectlist, sqlquery.getGroupByList(), OpType.AGGREGATE);
+        root.setSchema(Aggregate.outputSchema(base.getSchema(), projectlist));
+    }
+
+    public void createDistinctOp() {
+        Operator base = root;
+        root = new Distinct(base, OpType.DISTINCT);
+        root.setSchema(base.getSchema());
+    }
+
     private void modifyHashtable(Operator old, Operator newop) {
         Enumeration e = tab_op_hash.keys();
         while (e.hasMoreElements()) {
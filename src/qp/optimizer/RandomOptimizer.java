@@ -9,6 +9,7 @@ import qp.utils.*;
 import qp.operators.*;
 
 import java.lang.Math;
+import java.util.List;
 import java.util.Vector;
 
 public class RandomOptimizer {
@@ -84,6 +85,9 @@ public class RandomOptimizer {
         int MINCOST = Integer.MAX_VALUE;
         Operator finalPlan = null;
 
+        /** a plan already in the order of the ORDER BY saves its sort **/
+        List<Order> orders = PlanCost.resultOrder(sqlquery);
+
 
         /** NUMTER is number of times random restart **/
 
@@ -106,7 +110,7 @@ public class RandomOptimizer {
             System.out.println("-----------initial Plan-------------");
             Debug.PPrint(initPlan);
             PlanCost pc = new PlanCost();
-            int initCost = pc.getCost(initPlan);
+            int initCost = pc.getCost(initPlan, orders);
             System.out.println(initCost);
 
             boolean flag = true;
@@ -122,7 +126,7 @@ public class RandomOptimizer {
                     System.out.println("--------------------------neighbor---------------");
                     Debug.PPrint(minNeighbor);
                     pc = new PlanCost();
-                    minNeighborCost = pc.getCost(minNeighbor);
+                    minNeighborCost = pc.getCost(minNeighbor, orders);
                     System.out.println("  " + minNeighborCost);
 
                     /** In this loop we consider from the
@@ -136,7 +140,7 @@ public class RandomOptimizer {
                         System.out.println("------------------neighbor--------------");
                         Debug.PPrint(neighbor);
                         pc = new PlanCost();
-                        int neighborCost = pc.getCost(neighbor);
+                        int neighborCost = pc.getCost(neighbor, orders);
                         System.out.println(neighborCost);
 
 
@@ -368,6 +372,10 @@ public class RandomOptimizer {
             return findNodeAt(((Select) node).getBase(), joinNum);
         } else if (node.getOpType() == OpType.PROJECT) {
             return findNodeAt(((Project) node).getBase(), joinNum);
+        } else if (node.getOpType() == OpType.DISTINCT) {
+            return findNodeAt(((Distinct) node).getBase(), joinNum);
+        } else if (node.getOpType() == OpType.AGGREGATE) {
+            return findNodeAt(((Aggregate) node).getBase(), joinNum);
         } else {
             return null;
         }
@@ -395,6 +403,15 @@ public class RandomOptimizer {
             modifySchema(base);
             Vector attrlist = ((Project) node).getProjAttr();
             node.setSchema(base.getSchema().subSchema(attrlist));
+        } else if (node.getOpType() == OpType.DISTINCT) {
+            Operator base = ((Distinct) node).getBase();
+            modifySchema(base);
+            node.setSchema(base.getSchema());
+        } else if (node.getOpType() == OpType.AGGREGATE) {
+            Operator base = ((Aggregate) node).getBase();
+            modifySchema(base);
+            Vector attrlist = ((Aggregate) node).getAggAttr();
+            node.setSchema(Aggregate.outputSchema(base.getSchema(), attrlist));
         }
     }
 
@@ -411,7 +428,8 @@ public class RandomOptimizer {
             Operator left = makeExecPlan(((Join) node).getLeft());
             Operator right = makeExecPlan(((Join) node).getRight());
             int joinType = ((Join) node).getJoinType();
-            int numbuff = BufferManager.getBuffersPerJoin();
+            int numbuff = ((Join) node).getNumBuff() > 0 ? ((Join) node).getNumBuff()
+                    : BufferManager.getBuffersPerJoin();
             switch (joinType) {
                 case JoinType.NESTEDJOIN:
 
@@ -421,9 +439,6 @@ public class RandomOptimizer {
                     nj.setNumBuff(numbuff);
                     return nj;
 
-                /** Temporarity used simple nested join,
-                 replace with hasjoin, if implemented **/
-
                 case JoinType.BLOCKNESTED:
 
                     BlockNestedJoin bnj = new BlockNestedJoin((Join) node);
@@ -442,9 +457,28 @@ public class RandomOptimizer {
 
                 case JoinType.HASHJOIN:
 
-                    NestedJoin hj = new NestedJoin((Join) node);
-                /* + other code */
+                    HashJoin hj = new HashJoin((Join) node);
+                    hj.setLeft(left);
+                    hj.setRight(right);
+                    hj.setNumBuff(numbuff);
                     return hj;
+
+                case JoinType.INDEXNESTED:
+
+                    if (!IndexNestedJoin.isApplicable((Join) node)) {
+                        // no index to probe, the right input is joined block by block instead
+                        BlockNestedJoin fallback = new BlockNestedJoin((Join) node);
+                        fallback.setJoinType(JoinType.BLOCKNESTED);
+                        fallback.setLeft(left);
+                        fallback.setRight(right);
+                        fallback.setNumBuff(numbuff);
+                        return fallback;
+                    }
+                    IndexNestedJoin inj = new IndexNestedJoin((Join) node);
+                    inj.setLeft(left);
+                    inj.setRight(right);
+                    inj.setNumBuff(numbuff);
+                    return inj;
                 default:
                     return node;
             }
@@ -456,6 +490,20 @@ public class RandomOptimizer {
             Operator base = makeExecPlan(((Project) node).getBase());
             ((Project) node).setBase(base);
             return node;
+        } else if (node.getOpType() == OpType.DISTINCT) {
+            Operator base = makeExecPlan(((Distinct) node).getBase());
+            ((Distinct) node).setBase(base);
+            if (((Distinct) node).getNumBuff() <= 0) {
+                ((Distinct) node).setNumBuff(BufferManager.getBuffersPerJoin());
+            }
+            return PlanCost.chooseDistinct((Distinct) node);
+        } else if (node.getOpType() == OpType.AGGREGATE) {
+            Operator base = makeExecPlan(((Aggregate) node).getBase());
+            ((Aggregate) node).setBase(base);
+            if (((Aggregate) node).getNumBuff() <= 0) {
+                ((Aggregate) node).setNumBuff(BufferManager.getBuffersPerJoin());
+            }
+            return node;
         } else {
             return node;
         }
@@ -1,7 +1,7 @@
 
 //----------------------------------------------------
 // The following code was generated by CUP v0.10k
-// Mon Mar 27 19:12:16 SGT 2017
+// Sat Oct 17 09:56:32 UTC 2026
 //----------------------------------------------------
 
 package qp.parser;
@@ -13,7 +13,7 @@ import qp.operators.Order;
 import qp.operators.Order.OrderType;
 
 /** CUP v0.10k generated parser.
-  * @version Mon Mar 27 19:12:16 SGT 2017
+  * @version Sat Oct 17 09:56:32 UTC 2026
   */
 public class parser extends java_cup.runtime.lr_parser {
 
@@ -26,16 +26,21 @@ public class parser extends java_cup.runtime.lr_parser {
   /** Production table. */
   protected static final short _production_table[][] = 
     unpackFromStrings(new String[] {
-    "\000\035\000\002\003\005\000\002\002\004\000\002\003" +
-    "\010\000\002\003\010\000\002\003\006\000\002\003\006" +
-    "\000\002\004\005\000\002\004\003\000\002\010\006\000" +
-    "\002\010\004\000\002\013\002\000\002\013\003\000\002" +
-    "\013\003\000\002\006\005\000\002\006\003\000\002\007" +
-    "\005\000\002\007\003\000\002\011\005\000\002\011\005" +
-    "\000\002\011\004\000\002\011\004\000\002\005\005\000" +
-    "\002\005\004\000\002\012\003\000\002\012\003\000\002" +
-    "\012\003\000\002\012\003\000\002\012\003\000\002\012" +
-    "\003" });
+    "\000\055\000\002\003\005\000\002\002\004\000\002\003" +
+    "\003\000\002\004\005\000\002\004\003\000\002\005\005" +
+    "\000\002\005\003\000\002\006\010\000\002\006\010\000" +
+    "\002\006\006\000\002\006\006\000\002\006\011\000\002" +
+    "\006\007\000\002\007\005\000\002\007\003\000\002\011" +
+    "\003\000\002\011\006\000\002\012\003\000\002\012\003" +
+    "\000\002\012\003\000\002\012\003\000\002\012\003\000" +
+    "\002\013\005\000\002\013\003\000\002\016\006\000\002" +
+    "\016\004\000\002\021\002\000\002\021\003\000\002\021" +
+    "\003\000\002\014\005\000\002\014\003\000\002\015\005" +
+    "\000\002\015\003\000\002\017\005\000\002\017\005\000" +
+    "\002\017\004\000\002\017\004\000\002\010\005\000\002" +
+    "\010\004\000\002\020\003\000\002\020\003\000\002\020" +
+    "\003\000\002\020\003\000\002\020\003\000\002\020\003" +
+    "" });
 
   /** Access to production table. */
   public short[][] production_table() {return _production_table;}
@@ -43,43 +48,67 @@ public class parser extends java_cup.runtime.lr_parser {
   /** Parse-action table. */
   protected static final short[][] _action_table = 
     unpackFromStrings(new String[] {
-    "\000\061\000\004\021\005\001\002\000\006\002\053\024" +
-    "\052\001\002\000\006\004\006\010\007\001\002\000\006" +
-    "\003\047\007\050\001\002\000\004\022\043\001\002\000" +
-    "\006\005\012\022\013\001\002\000\006\005\ufffa\022\ufffa" +
-    "\001\002\000\004\004\006\001\002\000\004\004\014\001" +
-    "\002\000\012\002\ufff3\005\ufff3\023\ufff3\024\ufff3\001\002" +
-    "\000\012\002\ufffd\005\016\023\017\024\ufffd\001\002\000" +
-    "\004\004\041\001\002\000\006\003\021\004\006\001\002" +
-    "\000\010\002\uffff\005\037\024\uffff\001\002\000\004\030" +
-    "\036\001\002\000\020\003\025\011\027\012\031\013\032" +
-    "\014\024\015\026\016\030\001\002\000\010\002\ufff1\005" +
-    "\ufff1\024\ufff1\001\002\000\006\004\uffe7\030\uffe7\001\002" +
-    "\000\010\002\uffee\005\uffee\024\uffee\001\002\000\006\004" +
-    "\uffe5\030\uffe5\001\002\000\006\004\uffea\030\uffea\001\002" +
-    "\000\006\004\uffe6\030\uffe6\001\002\000\006\004\uffe9\030" +
-    "\uffe9\001\002\000\006\004\uffe8\030\uffe8\001\002\000\006" +
-    "\004\006\030\035\001\002\000\010\002\uffef\005\uffef\024" +
-    "\uffef\001\002\000\010\002\ufff0\005\ufff0\024\ufff0\001\002" +
-    "\000\010\002\uffed\005\uffed\024\uffed\001\002\000\006\003" +
-    "\021\004\006\001\002\000\010\002\ufff2\005\ufff2\024\ufff2" +
-    "\001\002\000\012\002\ufff4\005\ufff4\023\ufff4\024\ufff4\001" +
-    "\002\000\006\005\ufffb\022\ufffb\001\002\000\004\004\014" +
-    "\001\002\000\012\002\ufffc\005\016\023\045\024\ufffc\001" +
-    "\002\000\006\003\021\004\006\001\002\000\010\002\ufffe" +
-    "\005\037\024\ufffe\001\002\000\034\002\uffeb\003\uffeb\005" +
-    "\uffeb\011\uffeb\012\uffeb\013\uffeb\014\uffeb\015\uffeb\016\uffeb" +
-    "\022\uffeb\024\uffeb\026\uffeb\027\uffeb\001\002\000\004\004" +
-    "\051\001\002\000\034\002\uffec\003\uffec\005\uffec\011\uffec" +
-    "\012\uffec\013\uffec\014\uffec\015\uffec\016\uffec\022\uffec\024" +
-    "\uffec\026\uffec\027\uffec\001\002\000\004\004\006\001\002" +
-    "\000\004\002\000\001\002\000\010\002\001\005\061\024" +
-    "\001\001\002\000\014\002\ufff7\005\ufff7\024\ufff7\026\056" +
-    "\027\057\001\002\000\010\002\ufff6\005\ufff6\024\ufff6\001" +
-    "\002\000\010\002\ufff5\005\ufff5\024\ufff5\001\002\000\010" +
-    "\002\ufff8\005\ufff8\024\ufff8\001\002\000\004\004\006\001" +
-    "\002\000\014\002\ufff7\005\ufff7\024\ufff7\026\056\027\057" +
-    "\001\002\000\010\002\ufff9\005\ufff9\024\ufff9\001\002" });
+    "\000\113\000\004\021\010\001\002\000\004\002\115\001" +
+    "\002\000\010\002\ufffd\024\104\040\ufffd\001\002\000\006" +
+    "\002\uffff\040\102\001\002\000\012\002\ufffb\024\ufffb\030" +
+    "\075\040\ufffb\001\002\000\022\004\021\010\017\025\020" +
+    "\031\016\032\024\033\013\034\015\035\011\001\002\000" +
+    "\004\036\uffec\001\002\000\004\036\072\001\002\000\004" +
+    "\036\uffee\001\002\000\006\005\ufff2\022\ufff2\001\002\000" +
+    "\004\036\uffed\001\002\000\004\036\ufff0\001\002\000\004" +
+    "\022\066\001\002\000\016\004\021\031\016\032\024\033" +
+    "\013\034\015\035\011\001\002\000\006\003\056\007\057" +
+    "\001\002\000\006\005\025\022\026\001\002\000\006\005" +
+    "\ufff3\022\ufff3\001\002\000\004\036\uffef\001\002\000\016" +
+    "\004\021\031\016\032\024\033\013\034\015\035\011\001" +
+    "\002\000\004\004\027\001\002\000\016\002\uffe3\005\uffe3" +
+    "\023\uffe3\024\uffe3\030\uffe3\040\uffe3\001\002\000\016\002" +
+    "\ufff8\005\031\023\032\024\ufff8\030\ufff8\040\ufff8\001\002" +
+    "\000\004\004\054\001\002\000\006\003\034\004\021\001" +
+    "\002\000\014\002\ufffa\005\052\024\ufffa\030\ufffa\040\ufffa" +
+    "\001\002\000\004\042\051\001\002\000\020\003\040\011" +
+    "\042\012\045\013\044\014\037\015\041\016\043\001\002" +
+    "\000\014\002\uffe1\005\uffe1\024\uffe1\030\uffe1\040\uffe1\001" +
+    "\002\000\006\004\uffd7\042\uffd7\001\002\000\014\002\uffde" +
+    "\005\uffde\024\uffde\030\uffde\040\uffde\001\002\000\006\004" +
+    "\uffd5\042\uffd5\001\002\000\006\004\uffda\042\uffda\001\002" +
+    "\000\006\004\uffd6\042\uffd6\001\002\000\006\004\uffd8\042" +
+    "\uffd8\001\002\000\006\004\uffd9\042\uffd9\001\002\000\006" +
+    "\004\021\042\050\001\002\000\014\002\uffdf\005\uffdf\024" +
+    "\uffdf\030\uffdf\040\uffdf\001\002\000\014\002\uffe0\005\uffe0" +
+    "\024\uffe0\030\uffe0\040\uffe0\001\002\000\014\002\uffdd\005" +
+    "\uffdd\024\uffdd\030\uffdd\040\uffdd\001\002\000\006\003\034" +
+    "\004\021\001\002\000\014\002\uffe2\005\uffe2\024\uffe2\030" +
+    "\uffe2\040\uffe2\001\002\000\016\002\uffe4\005\uffe4\023\uffe4" +
+    "\024\uffe4\030\uffe4\040\uffe4\001\002\000\006\005\ufff4\022" +
+    "\ufff4\001\002\000\042\002\uffdb\003\uffdb\005\uffdb\011\uffdb" +
+    "\012\uffdb\013\uffdb\014\uffdb\015\uffdb\016\uffdb\022\uffdb\024" +
+    "\uffdb\026\uffdb\027\uffdb\030\uffdb\037\uffdb\040\uffdb\001\002" +
+    "\000\004\004\060\001\002\000\042\002\uffdc\003\uffdc\005" +
+    "\uffdc\011\uffdc\012\uffdc\013\uffdc\014\uffdc\015\uffdc\016\uffdc" +
+    "\022\uffdc\024\uffdc\026\uffdc\027\uffdc\030\uffdc\037\uffdc\040" +
+    "\uffdc\001\002\000\006\005\025\022\062\001\002\000\004" +
+    "\004\027\001\002\000\016\002\ufff5\005\031\023\064\024" +
+    "\ufff5\030\ufff5\040\ufff5\001\002\000\006\003\034\004\021" +
+    "\001\002\000\014\002\ufff6\005\052\024\ufff6\030\ufff6\040" +
+    "\ufff6\001\002\000\004\004\027\001\002\000\016\002\ufff7" +
+    "\005\031\023\070\024\ufff7\030\ufff7\040\ufff7\001\002\000" +
+    "\006\003\034\004\021\001\002\000\014\002\ufff9\005\052" +
+    "\024\ufff9\030\ufff9\040\ufff9\001\002\000\004\004\021\001" +
+    "\002\000\004\037\074\001\002\000\006\005\ufff1\022\ufff1" +
+    "\001\002\000\004\004\021\001\002\000\012\002\ufffc\005" +
+    "\100\024\ufffc\040\ufffc\001\002\000\012\002\uffea\005\uffea" +
+    "\024\uffea\040\uffea\001\002\000\004\004\021\001\002\000" +
+    "\012\002\uffeb\005\uffeb\024\uffeb\040\uffeb\001\002\000\004" +
+    "\041\103\001\002\000\004\002\001\001\002\000\004\004" +
+    "\021\001\002\000\010\002\ufffe\005\112\040\ufffe\001\002" +
+    "\000\014\002\uffe7\005\uffe7\026\110\027\107\040\uffe7\001" +
+    "\002\000\010\002\uffe5\005\uffe5\040\uffe5\001\002\000\010" +
+    "\002\uffe6\005\uffe6\040\uffe6\001\002\000\010\002\uffe8\005" +
+    "\uffe8\040\uffe8\001\002\000\004\004\021\001\002\000\014" +
+    "\002\uffe7\005\uffe7\026\110\027\107\040\uffe7\001\002\000" +
+    "\010\002\uffe9\005\uffe9\040\uffe9\001\002\000\004\002\000" +
+    "\001\002" });
 
   /** Access to parse-action table. */
   public short[][] action_table() {return _action_table;}
@@ -87,25 +116,36 @@ public class parser extends java_cup.runtime.lr_parser {
   /** <code>reduce_goto</code> table. */
   protected static final short[][] _reduce_table = 
     unpackFromStrings(new String[] {
-    "\000\061\000\004\003\003\001\001\000\002\001\001\000" +
-    "\006\004\007\005\010\001\001\000\002\001\001\000\002" +
-    "\001\001\000\002\001\001\000\002\001\001\000\004\005" +
-    "\041\001\001\000\004\006\014\001\001\000\002\001\001" +
-    "\000\002\001\001\000\002\001\001\000\010\005\021\007" +
-    "\017\011\022\001\001\000\002\001\001\000\002\001\001" +
-    "\000\004\012\032\001\001\000\002\001\001\000\002\001" +
+    "\000\113\000\012\003\003\004\005\005\004\006\006\001" +
     "\001\000\002\001\001\000\002\001\001\000\002\001\001" +
+    "\000\002\001\001\000\012\007\021\010\013\011\022\012" +
+    "\011\001\001\000\002\001\001\000\002\001\001\000\002" +
+    "\001\001\000\002\001\001\000\002\001\001\000\002\001" +
+    "\001\000\002\001\001\000\012\007\060\010\013\011\022" +
+    "\012\011\001\001\000\002\001\001\000\002\001\001\000" +
+    "\002\001\001\000\002\001\001\000\010\010\013\011\054" +
+    "\012\011\001\001\000\004\014\027\001\001\000\002\001" +
+    "\001\000\002\001\001\000\002\001\001\000\010\010\034" +
+    "\015\032\017\035\001\001\000\002\001\001\000\002\001" +
+    "\001\000\004\020\045\001\001\000\002\001\001\000\002" +
+    "\001\001\000\002\001\001\000\002\001\001\000\002\001" +
+    "\001\000\002\001\001\000\002\001\001\000\002\001\001" +
+    "\000\004\010\046\001\001\000\002\001\001\000\002\001" +
+    "\001\000\002\001\001\000\006\010\034\017\052\001\001" +
     "\000\002\001\001\000\002\001\001\000\002\001\001\000" +
-    "\004\005\033\001\001\000\002\001\001\000\002\001\001" +
-    "\000\002\001\001\000\006\005\021\011\037\001\001\000" +
+    "\002\001\001\000\002\001\001\000\002\001\001\000\002" +
+    "\001\001\000\004\014\062\001\001\000\002\001\001\000" +
+    "\010\010\034\015\064\017\035\001\001\000\002\001\001" +
+    "\000\004\014\066\001\001\000\002\001\001\000\010\010" +
+    "\034\015\070\017\035\001\001\000\002\001\001\000\004" +
+    "\010\072\001\001\000\002\001\001\000\002\001\001\000" +
+    "\006\010\076\013\075\001\001\000\002\001\001\000\002" +
+    "\001\001\000\004\010\100\001\001\000\002\001\001\000" +
+    "\002\001\001\000\002\001\001\000\006\010\105\016\104" +
+    "\001\001\000\002\001\001\000\004\021\110\001\001\000" +
     "\002\001\001\000\002\001\001\000\002\001\001\000\004" +
-    "\006\043\001\001\000\002\001\001\000\010\005\021\007" +
-    "\045\011\022\001\001\000\002\001\001\000\002\001\001" +
-    "\000\002\001\001\000\002\001\001\000\006\005\054\010" +
-    "\053\001\001\000\002\001\001\000\002\001\001\000\004" +
-    "\013\057\001\001\000\002\001\001\000\002\001\001\000" +
-    "\002\001\001\000\004\005\061\001\001\000\004\013\062" +
-    "\001\001\000\002\001\001" });
+    "\010\112\001\001\000\004\021\113\001\001\000\002\001" +
+    "\001\000\002\001\001" });
 
   /** Access to <code>reduce_goto</code> table. */
   public short[][] reduce_table() {return _reduce_table;}
@@ -161,7 +201,9 @@ public class parser extends java_cup.runtime.lr_parser {
 	 	
 	 	      /* use the normal error message reporting to put out the message */
 	 	      report_error("Fatal error occurred, stop parsing.", info);
-	 	
+
+	 	      /* so that a query the grammar rejects is not run in part */
+	 	      throw new Exception("Can't recover from previous error(s)");
 	 	}
 	 
 	 	public void syntax_error(Symbol cur_token){}
@@ -197,73 +239,73 @@ class CUP$parser$actions {
       switch (CUP$parser$act_num)
         {
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 28: // op ::= EQUAL 
+          case 44: // op ::= EQUAL 
             {
               Condition RESULT = null;
 		
 	 RESULT=new Condition(Condition.EQUAL);
 	
-              CUP$parser$result = new java_cup.runtime.Symbol(8/*op*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(14/*op*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 27: // op ::= NOTEQUAL 
+          case 43: // op ::= NOTEQUAL 
             {
               Condition RESULT = null;
 			
 	  RESULT = new Condition(Condition.NOTEQUAL);
 	
-              CUP$parser$result = new java_cup.runtime.Symbol(8/*op*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(14/*op*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 26: // op ::= GTOE 
+          case 42: // op ::= GTOE 
             {
               Condition RESULT = null;
 		
 	RESULT=new Condition(Condition.GTOE);
 	
-              CUP$parser$result = new java_cup.runtime.Symbol(8/*op*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(14/*op*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 25: // op ::= LTOE 
+          case 41: // op ::= LTOE 
             {
               Condition RESULT = null;
 		
 	RESULT=new Condition(Condition.LTOE);
 	
-              CUP$parser$result = new java_cup.runtime.Symbol(8/*op*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(14/*op*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 24: // op ::= GREATERTHAN 
+          case 40: // op ::= GREATERTHAN 
             {
               Condition RESULT = null;
 		
 	RESULT=new Condition(Condition.GREATERTHAN);
 	
-              CUP$parser$result = new java_cup.runtime.Symbol(8/*op*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(14/*op*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 23: // op ::= LESSTHAN 
+          case 39: // op ::= LESSTHAN 
             {
               Condition RESULT = null;
 		
 	RESULT=new Condition(Condition.LESSTHAN);
 	
-              CUP$parser$result = new java_cup.runtime.Symbol(8/*op*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(14/*op*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 22: // attribute ::= ID error 
+          case 38: // attribute ::= ID error 
             {
               Attribute RESULT = null;
 		int ileft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).left;
@@ -276,12 +318,12 @@ class CUP$parser$actions {
 		System.out.println("syntax error: incorrect attribute:"+ i.text());
 		System.exit(0);
 		
-              CUP$parser$result = new java_cup.runtime.Symbol(3/*attribute*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(6/*attribute*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 21: // attribute ::= ID DOT ID 
+          case 37: // attribute ::= ID DOT ID 
             {
               Attribute RESULT = null;
 		int i1left = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
@@ -293,12 +335,12 @@ class CUP$parser$actions {
 		
 		RESULT= new Attribute(i1.text(),i2.text());
 		
-              CUP$parser$result = new java_cup.runtime.Symbol(3/*attribute*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(6/*attribute*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 20: // condition ::= error STRINGLIT 
+          case 36: // condition ::= error STRINGLIT 
             {
               Condition RESULT = null;
 		int pleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).left;
@@ -311,12 +353,12 @@ class CUP$parser$actions {
 		System.out.println("syntax error: incorrect condition:"+s.text());
 		System.exit(0);
 		
-              CUP$parser$result = new java_cup.runtime.Symbol(7/*condition*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(13/*condition*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 19: // condition ::= attribute error 
+          case 35: // condition ::= attribute error 
             {
               Condition RESULT = null;
 		int atleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).left;
@@ -329,12 +371,12 @@ class CUP$parser$actions {
 		System.out.println("syntax error: incorrect condition");
 		System.exit(0);
 		
-              CUP$parser$result = new java_cup.runtime.Symbol(7/*condition*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(13/*condition*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 18: // condition ::= attribute op attribute 
+          case 34: // condition ::= attribute op attribute 
             {
               Condition RESULT = null;
 		int a1left = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
@@ -351,12 +393,12 @@ class CUP$parser$actions {
 		c.setOpType(Condition.JOIN);
 		RESULT=c;
 	      
-              CUP$parser$result = new java_cup.runtime.Symbol(7/*condition*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(13/*condition*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 17: // condition ::= attribute op STRINGLIT 
+          case 33: // condition ::= attribute op STRINGLIT 
             {
               Condition RESULT = null;
 		int atleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
@@ -374,12 +416,12 @@ class CUP$parser$actions {
 		RESULT=c;
 
 	     
-              CUP$parser$result = new java_cup.runtime.Symbol(7/*condition*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(13/*condition*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 16: // conditionlist ::= condition 
+          case 32: // conditionlist ::= condition 
             {
               Vector RESULT = null;
 		int cleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
@@ -390,12 +432,12 @@ class CUP$parser$actions {
 		clist.add(c);
 	        RESULT=clist;
 		
-              CUP$parser$result = new java_cup.runtime.Symbol(5/*conditionlist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(11/*conditionlist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 15: // conditionlist ::= conditionlist COMMA condition 
+          case 31: // conditionlist ::= conditionlist COMMA condition 
             {
               Vector RESULT = null;
 		int clistleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
@@ -408,12 +450,12 @@ class CUP$parser$actions {
 		clist.add(c);
 		RESULT=clist;
 		
-              CUP$parser$result = new java_cup.runtime.Symbol(5/*conditionlist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(11/*conditionlist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 14: // tablelist ::= ID 
+          case 30: // tablelist ::= ID 
             {
               Vector RESULT = null;
 		int ileft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
@@ -424,12 +466,12 @@ class CUP$parser$actions {
 		tlist.add(i.text());
 		RESULT=tlist;
 	      
-              CUP$parser$result = new java_cup.runtime.Symbol(4/*tablelist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(10/*tablelist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 13: // tablelist ::= tablelist COMMA ID 
+          case 29: // tablelist ::= tablelist COMMA ID 
             {
               Vector RESULT = null;
 		int tlistleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
@@ -442,39 +484,39 @@ class CUP$parser$actions {
 		tlist.add(i.text());
 		RESULT=tlist;
 	       
-              CUP$parser$result = new java_cup.runtime.Symbol(4/*tablelist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(10/*tablelist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 12: // ordering ::= DESC 
+          case 28: // ordering ::= DESC 
             {
               OrderType RESULT = null;
 		 RESULT=OrderType.DESC; 
-              CUP$parser$result = new java_cup.runtime.Symbol(9/*ordering*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(15/*ordering*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 11: // ordering ::= ASC 
+          case 27: // ordering ::= ASC 
             {
               OrderType RESULT = null;
 		 RESULT=OrderType.ASC; 
-              CUP$parser$result = new java_cup.runtime.Symbol(9/*ordering*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(15/*ordering*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 10: // ordering ::= 
+          case 26: // ordering ::= 
             {
               OrderType RESULT = null;
 		 RESULT=OrderType.ASC; 
-              CUP$parser$result = new java_cup.runtime.Symbol(9/*ordering*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(15/*ordering*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 9: // orderinglist ::= attribute ordering 
+          case 25: // orderinglist ::= attribute ordering 
             {
               Vector RESULT = null;
 		int aleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).left;
@@ -488,12 +530,12 @@ class CUP$parser$actions {
                 os.add(new Order((Attribute) a, o));
                 RESULT=os;
             
-              CUP$parser$result = new java_cup.runtime.Symbol(6/*orderinglist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(12/*orderinglist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 8: // orderinglist ::= orderinglist COMMA attribute ordering 
+          case 24: // orderinglist ::= orderinglist COMMA attribute ordering 
             {
               Vector RESULT = null;
 		int osleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-3)).left;
@@ -509,12 +551,123 @@ class CUP$parser$actions {
                 os.add(new Order((Attribute) a, o));
                 RESULT=os;
            
-              CUP$parser$result = new java_cup.runtime.Symbol(6/*orderinglist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-3)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(12/*orderinglist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-3)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 23: // grouplist ::= attribute 
+            {
+              Vector RESULT = null;
+		int aleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
+		int aright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right;
+		Attribute a = (Attribute)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-0)).value;
+		
+		Vector gs = new Vector();
+		gs.add(a);
+		RESULT=gs;
+		
+              CUP$parser$result = new java_cup.runtime.Symbol(9/*grouplist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 22: // grouplist ::= grouplist COMMA attribute 
+            {
+              Vector RESULT = null;
+		int gsleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
+		int gsright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).right;
+		Vector gs = (Vector)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-2)).value;
+		int aleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
+		int aright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right;
+		Attribute a = (Attribute)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-0)).value;
+		
+		gs.add(a);
+		RESULT=gs;
+		
+              CUP$parser$result = new java_cup.runtime.Symbol(9/*grouplist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 21: // aggregate ::= AVG 
+            {
+              Integer RESULT = null;
+		 RESULT=Integer.valueOf(Attribute.AVG); 
+              CUP$parser$result = new java_cup.runtime.Symbol(8/*aggregate*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 20: // aggregate ::= COUNT 
+            {
+              Integer RESULT = null;
+		 RESULT=Integer.valueOf(Attribute.COUNT); 
+              CUP$parser$result = new java_cup.runtime.Symbol(8/*aggregate*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 19: // aggregate ::= SUM 
+            {
+              Integer RESULT = null;
+		 RESULT=Integer.valueOf(Attribute.SUM); 
+              CUP$parser$result = new java_cup.runtime.Symbol(8/*aggregate*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 18: // aggregate ::= MIN 
+            {
+              Integer RESULT = null;
+		 RESULT=Integer.valueOf(Attribute.MIN); 
+              CUP$parser$result = new java_cup.runtime.Symbol(8/*aggregate*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 17: // aggregate ::= MAX 
+            {
+              Integer RESULT = null;
+		 RESULT=Integer.valueOf(Attribute.MAX); 
+              CUP$parser$result = new java_cup.runtime.Symbol(8/*aggregate*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 16: // selectattribute ::= aggregate LPAREN attribute RPAREN 
+            {
+              Attribute RESULT = null;
+		int fleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-3)).left;
+		int fright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-3)).right;
+		Integer f = (Integer)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-3)).value;
+		int aleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).left;
+		int aright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-1)).right;
+		Attribute a = (Attribute)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-1)).value;
+		
+		a.setAggType(f.intValue());
+		RESULT=a;
+		
+              CUP$parser$result = new java_cup.runtime.Symbol(7/*selectattribute*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-3)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 7: // attlist ::= attribute 
+          case 15: // selectattribute ::= attribute 
+            {
+              Attribute RESULT = null;
+		int aleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
+		int aright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right;
+		Attribute a = (Attribute)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-0)).value;
+		
+		RESULT=a;
+		
+              CUP$parser$result = new java_cup.runtime.Symbol(7/*selectattribute*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 14: // attlist ::= selectattribute 
             {
               Vector RESULT = null;
 		int atleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
@@ -525,12 +678,12 @@ class CUP$parser$actions {
 		v.add(at);
 		RESULT = v;
 		
-              CUP$parser$result = new java_cup.runtime.Symbol(2/*attlist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(5/*attlist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 6: // attlist ::= attlist COMMA attribute 
+          case 13: // attlist ::= attlist COMMA selectattribute 
             {
               Vector RESULT = null;
 		int asleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
@@ -543,12 +696,55 @@ class CUP$parser$actions {
 		  as.add(a);
 		  RESULT=as;
 		  
-              CUP$parser$result = new java_cup.runtime.Symbol(2/*attlist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(5/*attlist*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 5: // sqlquery ::= SELECT STAR FROM tablelist 
+          case 12: // selectquery ::= SELECT DISTINCT attlist FROM tablelist 
+            {
+              SQLQuery RESULT = null;
+		int aleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
+		int aright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).right;
+		Vector a = (Vector)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-2)).value;
+		int tleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
+		int tright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right;
+		Vector t = (Vector)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-0)).value;
+		
+                SQLQuery sq = new SQLQuery(a,t);
+                sq.setIsDistinct(true);
+                parser.query=sq;
+                RESULT=sq;
+                
+              CUP$parser$result = new java_cup.runtime.Symbol(4/*selectquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-4)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 11: // selectquery ::= SELECT DISTINCT attlist FROM tablelist WHERE conditionlist 
+            {
+              SQLQuery RESULT = null;
+		int aleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-4)).left;
+		int aright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-4)).right;
+		Vector a = (Vector)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-4)).value;
+		int tleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
+		int tright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).right;
+		Vector t = (Vector)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-2)).value;
+		int cleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
+		int cright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right;
+		Vector c = (Vector)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-0)).value;
+		
+                SQLQuery sq = new SQLQuery(a,t,c);
+                sq.setIsDistinct(true);
+                parser.query=sq;
+                RESULT=sq;
+                
+              CUP$parser$result = new java_cup.runtime.Symbol(4/*selectquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-6)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 10: // selectquery ::= SELECT STAR FROM tablelist 
             {
               SQLQuery RESULT = null;
 		int tleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
@@ -560,12 +756,12 @@ class CUP$parser$actions {
                 parser.query=sq;
                 RESULT=sq;
                 
-              CUP$parser$result = new java_cup.runtime.Symbol(1/*sqlquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-3)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(4/*selectquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-3)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 4: // sqlquery ::= SELECT attlist FROM tablelist 
+          case 9: // selectquery ::= SELECT attlist FROM tablelist 
             {
               SQLQuery RESULT = null;
 		int aleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
@@ -580,12 +776,12 @@ class CUP$parser$actions {
                  parser.query=sq;
                 RESULT=sq;
                 
-              CUP$parser$result = new java_cup.runtime.Symbol(1/*sqlquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-3)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(4/*selectquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-3)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 3: // sqlquery ::= SELECT STAR FROM tablelist WHERE conditionlist 
+          case 8: // selectquery ::= SELECT STAR FROM tablelist WHERE conditionlist 
             {
               SQLQuery RESULT = null;
 		int tleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
@@ -600,12 +796,12 @@ class CUP$parser$actions {
 		parser.query=sq;
 		RESULT=sq;
 		
-              CUP$parser$result = new java_cup.runtime.Symbol(1/*sqlquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-5)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(4/*selectquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-5)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 2: // sqlquery ::= SELECT attlist FROM tablelist WHERE conditionlist 
+          case 7: // selectquery ::= SELECT attlist FROM tablelist WHERE conditionlist 
             {
               SQLQuery RESULT = null;
 		int aleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-4)).left;
@@ -623,7 +819,87 @@ class CUP$parser$actions {
 	         parser.query=sq;
 		RESULT=sq;
 		
-              CUP$parser$result = new java_cup.runtime.Symbol(1/*sqlquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-5)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+              CUP$parser$result = new java_cup.runtime.Symbol(4/*selectquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-5)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 6: // groupedquery ::= selectquery 
+            {
+              SQLQuery RESULT = null;
+		int sleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
+		int sright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right;
+		SQLQuery s = (SQLQuery)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-0)).value;
+		
+		RESULT=s;
+		
+              CUP$parser$result = new java_cup.runtime.Symbol(3/*groupedquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 5: // groupedquery ::= selectquery GROUPBY grouplist 
+            {
+              SQLQuery RESULT = null;
+		int sleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
+		int sright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).right;
+		SQLQuery s = (SQLQuery)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-2)).value;
+		int gleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
+		int gright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right;
+		Vector g = (Vector)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-0)).value;
+		
+		s.setGroupByList(g);
+		parser.query=s;
+		RESULT=s;
+		
+              CUP$parser$result = new java_cup.runtime.Symbol(3/*groupedquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 4: // orderedquery ::= groupedquery 
+            {
+              SQLQuery RESULT = null;
+		int sleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
+		int sright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right;
+		SQLQuery s = (SQLQuery)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-0)).value;
+		
+		RESULT=s;
+		
+              CUP$parser$result = new java_cup.runtime.Symbol(2/*orderedquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 3: // orderedquery ::= groupedquery ORDERBY orderinglist 
+            {
+              SQLQuery RESULT = null;
+		int sleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
+		int sright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).right;
+		SQLQuery s = (SQLQuery)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-2)).value;
+		int osleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
+		int osright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right;
+		Vector os = (Vector)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-0)).value;
+		
+		s.setOrderByList(os);
+		parser.query=s;
+		RESULT=s;
+		
+              CUP$parser$result = new java_cup.runtime.Symbol(2/*orderedquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
+            }
+          return CUP$parser$result;
+
+          /*. . . . . . . . . . . . . . . . . . . .*/
+          case 2: // sqlquery ::= orderedquery 
+            {
+              SQLQuery RESULT = null;
+		int sleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
+		int sright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right;
+		SQLQuery s = (SQLQuery)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-0)).value;
+		
+		RESULT=s;
+		
+              CUP$parser$result = new java_cup.runtime.Symbol(1/*sqlquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
           return CUP$parser$result;
 
@@ -642,19 +918,19 @@ class CUP$parser$actions {
           return CUP$parser$result;
 
           /*. . . . . . . . . . . . . . . . . . . .*/
-          case 0: // sqlquery ::= sqlquery ORDERBY orderinglist 
+          case 0: // sqlquery ::= orderedquery LIMIT INTLIT 
             {
               SQLQuery RESULT = null;
 		int sleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left;
 		int sright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).right;
 		SQLQuery s = (SQLQuery)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-2)).value;
-		int osleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
-		int osright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right;
-		Vector os = (Vector)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-0)).value;
+		int nleft = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).left;
+		int nright = ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right;
+		TokenValue n = (TokenValue)((java_cup.runtime.Symbol) CUP$parser$stack.elementAt(CUP$parser$top-0)).value;
 		
-		s.setOrderByList(os);
+		s.setLimit(n.toInteger().intValue());
 		parser.query=s;
-	
+		RESULT=s;
 		
               CUP$parser$result = new java_cup.runtime.Symbol(1/*sqlquery*/, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-2)).left, ((java_cup.runtime.Symbol)CUP$parser$stack.elementAt(CUP$parser$top-0)).right, RESULT);
             }
@@ -1,7 +1,8 @@
 package qp.parser;
+
 //----------------------------------------------------
 // The following code was generated by CUP v0.10k
-// Mon Mar 27 19:03:07 SGT 2017
+// Sat Oct 17 08:12:16 UTC 2026
 //----------------------------------------------------
 
 /** CUP generated class containing symbol constants. */
@@ -11,24 +12,34 @@ public class sym {
   public static final int WHERE = 17;
   public static final int FROM = 16;
   public static final int AND = 13;
+  public static final int GROUPBY = 22;
   public static final int DESC = 21;
   public static final int SELECT = 15;
+  public static final int RPAREN = 29;
   public static final int OR = 14;
   public static final int EQUAL = 11;
   public static final int SEMI = 4;
   public static final int NOTEQUAL = 12;
+  public static final int SUM = 25;
   public static final int LTOE = 9;
   public static final int STAR = 6;
-  public static final int ASC = 20;
+  public static final int LPAREN = 28;
   public static final int ID = 2;
+  public static final int LIMIT = 30;
   public static final int GTOE = 10;
+  public static final int INTLIT = 31;
   public static final int COMMA = 3;
   public static final int LESSTHAN = 7;
   public static final int EOF = 0;
-  public static final int STRINGLIT = 22;
+  public static final int STRINGLIT = 32;
   public static final int DISTINCT = 19;
+  public static final int AVG = 27;
   public static final int error = 1;
   public static final int DOT = 5;
+  public static final int MIN = 24;
+  public static final int ASC = 20;
+  public static final int MAX = 23;
+  public static final int COUNT = 26;
   public static final int GREATERTHAN = 8;
 }
 
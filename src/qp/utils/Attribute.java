@@ -9,6 +9,11 @@ import java.io.Serializable;
 
 public class Attribute implements Serializable {
 
+    /** Kept from before the aggregate function was added, so that
+     ** the schemas of the tables written before can still be read
+     **/
+    private static final long serialVersionUID = -8745428824512213992L;
+
     /** enumerating type of attribute **/
     public static final int INT = 1;
     public static final int STRING = 2;
@@ -19,12 +24,24 @@ public class Attribute implements Serializable {
     public static final int PK = 1;   // primary key
     public static final int FK = 2;   // Foreign key
 
+    /** enumeration of the aggregate function applied to the attribute **/
+
+    public static final int NONE = 0;
+    public static final int MAX = 1;
+    public static final int MIN = 2;
+    public static final int SUM = 3;
+    public static final int COUNT = 4;
+    public static final int AVG = 5;
+
+    private static final String[] AGG_NAMES = {"", "MAX", "MIN", "SUM", "COUNT", "AVG"};
+
 
     String tblname;        //tabel to which this attribute belongs
     String colname;         //name of the attribute **/
     int type;  // whether integer or real or string
     int key = -1;   // type of the key
     int attrsize;   // Number of bytes for this attribute
+    int aggtype = NONE;   // aggregate function of the column in a GROUP BY result
 
 
     public Attribute(String tbl, String col) {
@@ -108,8 +125,35 @@ public class Attribute implements Serializable {
         return type;
     }
 
+    public void setAggType(int agg) {
+        aggtype = agg;
+    }
+
+    public int getAggType() {
+        return aggtype;
+    }
+
+    public boolean isAggregated() {
+        return aggtype != NONE;
+    }
+
+    /** Name of the aggregate function, as in the query **/
+
+    public String getAggName() {
+        return AGG_NAMES[aggtype];
+    }
+
+    /** The column the aggregate function is applied to **/
+
+    public Attribute getBaseAttribute() {
+        Attribute base = (Attribute) clone();
+        base.setAggType(NONE);
+        return base;
+    }
+
     public boolean equals(Attribute attr) {
-        if (this.tblname.equals(attr.getTabName()) && this.colname.equals(attr.getColName()))
+        if (this.tblname.equals(attr.getTabName()) && this.colname.equals(attr.getColName())
+                && this.aggtype == attr.getAggType())
             return true;
         else
             return false;
@@ -122,6 +166,7 @@ public class Attribute implements Serializable {
         newattr.setType(type);
         newattr.setKeyType(key);
         newattr.setAttrSize(attrsize);
+        newattr.setAggType(aggtype);
         return newattr;
     }
 
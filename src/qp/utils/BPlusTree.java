@@ -0,0 +1,440 @@
+/**
+ * Disk resident B+-tree over one column of a page formatted table
+ **/
+
+package qp.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The index of column col of table T is stored in the file T.col.idx as
+ * a sequence of pages. Page 0 is the header page, the other pages are
+ * nodes:
+ *   - leaf     : (key, rid) entries in key order, and the next leaf page
+ *   - internal : child0 followed by (key, child) entries, where key is the
+ *                smallest key under child
+ * The rid of a record is its position in the table file, so that the record
+ * is found in data page rid / tuplesPerPage at slot rid % tuplesPerPage.
+ *
+ * The tables are read only, so the tree is bulk loaded bottom up from the
+ * sorted entries with full nodes, and never updated afterwards.
+ */
+public class BPlusTree {
+
+    public static final int MAGIC = 0x51504931;  // "QPI1"
+    private static final int NODE_HEADER = 12;   // isLeaf, numKeys, next leaf
+
+    /** Number of index pages read over all the trees of the query,
+     ** counted from the read-ahead threads as well
+     **/
+    private static final AtomicLong pagesRead = new AtomicLong();
+
+    private String filename;
+    private FileChannel channel;
+    private int pageSize;
+    private int keyType;
+    private int keyWidth;
+    private int entrySize;
+    private int root;
+    private int height;       // number of levels, 1 if the root is a leaf
+    private int numEntries;
+    private int numLeaves;
+
+    private byte[] scratch;
+
+
+    /** Opens an existing index file **/
+
+    public BPlusTree(String filename) throws IOException {
+        this.filename = filename;
+        channel = new RandomAccessFile(filename, "r").getChannel();
+        ByteBuffer header = ByteBuffer.allocate(36);
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("BPlusTree: Not an index file " + filename);
+        }
+        pageSize = header.getInt(4);
+        keyType = header.getInt(8);
+        keyWidth = header.getInt(12);
+        root = header.getInt(16);
+        height = header.getInt(20);
+        numEntries = header.getInt(24);
+        numLeaves = header.getInt(28);
+        entrySize = keyWidth + 4;
+        scratch = new byte[keyWidth];
+    }
+
+    /** Name of the index file of the given column **/
+
+    public static String fileName(String tabname, String colname) {
+        return tabname + "." + colname + ".idx";
+    }
+
+    /** Whether the given column of the table has an index **/
+
+    public static boolean exists(String tabname, String colname) {
+        return new File(fileName(tabname, colname)).exists();
+    }
+
+    public static long getPagesRead() {
+        return pagesRead.get();
+    }
+
+    public static void resetCounters() {
+        pagesRead.set(0);
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getNumEntries() {
+        return numEntries;
+    }
+
+    public int getNumLeaves() {
+        return numLeaves;
+    }
+
+    /** Number of entries in a leaf page **/
+
+    public int getLeafCapacity() {
+        return (pageSize - NODE_HEADER) / entrySize;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    /** Building **/
+
+    /**
+     * Builds the index of column col over the page formatted table file.
+     * The (key, rid) entries are sorted in memory and loaded into full
+     * leaves, then the internal levels are built over the leaves.
+     */
+
+    public static void build(String tblfile, Schema schema, int col, String idxfile) throws IOException {
+        TableReader reader = new TableReader(tblfile, schema);
+        PageFormat format = reader.getFormat();
+        Attribute attr = schema.getAttribute(col);
+        int keyType = attr.getType();
+        int keyWidth = PageFormat.columnWidth(attr);
+
+        Object[] keys = new Object[reader.getNumTuples()];
+        Integer[] order = new Integer[keys.length];
+        int rid = 0;
+        for (int p = 0; p < reader.getNumPages(); p++) {
+            ByteBuffer page = reader.readPage(p);
+            for (int slot = 0; slot < reader.tuplesInPage(p); slot++) {
+                keys[rid] = format.readTuple(page, slot).dataAt(col);
+                order[rid] = rid;
+                rid++;
+            }
+        }
+        reader.close();
+        Arrays.sort(order, (r, q) -> {
+            int c = compare(keyType, keys[r], keys[q]);
+            return c != 0 ? c : Integer.compare(r, q);
+        });
+
+        int entrySize = keyWidth + 4;
+        int pageSize = Math.max(format.getPageSize(), NODE_HEADER + 4 + 3 * entrySize);
+        BPlusTree tree = new BPlusTree(idxfile, pageSize, keyType, keyWidth);
+        tree.load(keys, order);
+    }
+
+    private BPlusTree(String idxfile, int pageSize, int keyType, int keyWidth) throws IOException {
+        BufferPool.invalidate(idxfile);
+        RandomAccessFile file = new RandomAccessFile(idxfile, "rw");
+        file.setLength(0);
+        this.channel = file.getChannel();
+        this.pageSize = pageSize;
+        this.keyType = keyType;
+        this.keyWidth = keyWidth;
+        this.entrySize = keyWidth + 4;
+        this.scratch = new byte[keyWidth];
+    }
+
+    private void load(Object[] keys, Integer[] order) throws IOException {
+        int nextPage = 1;
+
+        // leaves, every one linked to the next
+        int leafCapacity = getLeafCapacity();
+        List<Object> levelKeys = new ArrayList<>();      // smallest key of every node of the level
+        List<Integer> levelPages = new ArrayList<>();
+        int numLeafPages = Math.max(1, (order.length + leafCapacity - 1) / leafCapacity);
+        for (int leaf = 0; leaf < numLeafPages; leaf++) {
+            ByteBuffer page = ByteBuffer.allocate(pageSize);
+            int from = leaf * leafCapacity;
+            int to = Math.min(order.length, from + leafCapacity);
+            page.putInt(0, 1);
+            page.putInt(4, to - from);
+            page.putInt(8, leaf + 1 < numLeafPages ? nextPage + 1 : -1);
+            for (int i = from; i < to; i++) {
+                int pos = NODE_HEADER + (i - from) * entrySize;
+                writeKey(page, pos, keys[order[i]]);
+                page.putInt(pos + keyWidth, order[i]);
+            }
+            writePage(nextPage, page);
+            levelKeys.add(from < to ? keys[order[from]] : null);
+            levelPages.add(nextPage);
+            nextPage++;
+        }
+        numLeaves = numLeafPages;
+        numEntries = order.length;
+        height = 1;
+
+        // internal levels, until a single node is left
+        int fanout = (pageSize - NODE_HEADER - 4) / entrySize + 1;
+        while (levelPages.size() > 1) {
+            List<Object> upperKeys = new ArrayList<>();
+            List<Integer> upperPages = new ArrayList<>();
+            for (int from = 0; from < levelPages.size(); from += fanout) {
+                int to = Math.min(levelPages.size(), from + fanout);
+                ByteBuffer page = ByteBuffer.allocate(pageSize);
+                page.putInt(0, 0);
+                page.putInt(4, to - from - 1);
+                page.putInt(8, -1);
+                page.putInt(NODE_HEADER, levelPages.get(from));
+                for (int i = from + 1; i < to; i++) {
+                    int pos = NODE_HEADER + 4 + (i - from - 1) * entrySize;
+                    writeKey(page, pos, levelKeys.get(i));
+                    page.putInt(pos + keyWidth, levelPages.get(i));
+                }
+                writePage(nextPage, page);
+                upperKeys.add(levelKeys.get(from));
+                upperPages.add(nextPage);
+                nextPage++;
+            }
+            levelKeys = upperKeys;
+            levelPages = upperPages;
+            height++;
+        }
+        root = levelPages.get(0);
+
+        ByteBuffer header = ByteBuffer.allocate(pageSize);
+        header.putInt(0, MAGIC);
+        header.putInt(4, pageSize);
+        header.putInt(8, keyType);
+        header.putInt(12, keyWidth);
+        header.putInt(16, root);
+        header.putInt(20, height);
+        header.putInt(24, numEntries);
+        header.putInt(28, numLeaves);
+        writePage(0, header);
+        channel.close();
+    }
+
+    private void writePage(int pageNum, ByteBuffer page) throws IOException {
+        page.clear();
+        while (page.hasRemaining()) {
+            channel.write(page, (long) pageNum * pageSize + page.position());
+        }
+    }
+
+    private void writeKey(ByteBuffer page, int pos, Object key) {
+        if (keyType == Attribute.INT) {
+            page.putInt(pos, (Integer) key);
+        } else if (keyType == Attribute.REAL) {
+            page.putFloat(pos, (Float) key);
+        } else {
+            byte[] bytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+            page.putShort(pos, (short) bytes.length);
+            page.position(pos + 2);
+            page.put(bytes);
+        }
+    }
+
+
+    /** Searching **/
+
+    /** Copies the node out of the buffer pool, where the upper
+     ** levels of the tree stay between searches
+     **/
+
+    private ByteBuffer readPage(int pageNum, ByteBuffer page) throws IOException {
+        BufferPool.Frame frame = BufferPool.pin(filename, pageNum, pageSize, buffer -> {
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, (long) pageNum * pageSize + buffer.position());
+                if (n < 0) {
+                    throw new EOFException("BPlusTree: Unexpected end of index file");
+                }
+            }
+            pagesRead.incrementAndGet();
+        });
+        page.clear();
+        page.put(frame.getPage());
+        page.clear();
+        BufferPool.unpin(frame);
+        return page;
+    }
+
+    private Object readKey(ByteBuffer page, int pos) {
+        if (keyType == Attribute.INT) {
+            return page.getInt(pos);
+        } else if (keyType == Attribute.REAL) {
+            return page.getFloat(pos);
+        } else {
+            int length = page.getShort(pos) & 0xFFFF;
+            page.position(pos + 2);
+            page.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Compares two keys of the given Attribute type **/
+
+    private static int compare(int keyType, Object key, Object other) {
+        if (keyType == Attribute.INT) {
+            return Integer.compare(((Number) key).intValue(), ((Number) other).intValue());
+        } else if (keyType == Attribute.REAL) {
+            return Float.compare(((Number) key).floatValue(), ((Number) other).floatValue());
+        }
+        return ((String) key).compareTo((String) other);
+    }
+
+    /** A bound of the range searched, compared with the key stored at
+     ** a position of a node
+     **/
+
+    private interface Bound {
+        int compareKey(ByteBuffer page, int pos);   // <0, 0 or >0 as the stored key is below, at or above the bound
+    }
+
+    private Bound bound(Object value) {
+        return value == null ? null : (page, pos) -> compare(keyType, readKey(page, pos), value);
+    }
+
+    /**
+     * Returns a cursor over the rids of the entries with low <= key <= high,
+     * in key order. A null bound is open, and the bounds are left out of the
+     * range unless the corresponding inclusive flag is set.
+     */
+
+    public Cursor find(Object low, boolean lowInclusive, Object high, boolean highInclusive) throws IOException {
+        return search(bound(low), lowInclusive, bound(high), highInclusive);
+    }
+
+    /** Cursor over the rids of the entries equal to the key of an INT
+     ** index, compared on the int stored in the node without boxing
+     **/
+
+    public Cursor find(int key) throws IOException {
+        Bound bound = (page, pos) -> Integer.compare(page.getInt(pos), key);
+        return search(bound, true, bound, true);
+    }
+
+    /** Same for the key of a REAL index **/
+
+    public Cursor find(float key) throws IOException {
+        Bound bound = (page, pos) -> Float.compare(page.getFloat(pos), key);
+        return search(bound, true, bound, true);
+    }
+
+    /** Same for the key of a STRING index **/
+
+    public Cursor find(String key) throws IOException {
+        Bound bound = (page, pos) -> ((String) readKey(page, pos)).compareTo(key);
+        return search(bound, true, bound, true);
+    }
+
+    private Cursor search(Bound low, boolean lowInclusive, Bound high, boolean highInclusive) throws IOException {
+        ByteBuffer page = ByteBuffer.allocate(pageSize);
+        int pageNum = root;
+        readPage(pageNum, page);
+
+        // go down to the leftmost leaf that may hold low
+        while (page.getInt(0) == 0) {
+            int numKeys = page.getInt(4);
+            int child = 0;
+            if (low != null) {
+                while (child < numKeys
+                        && low.compareKey(page, NODE_HEADER + 4 + child * entrySize) < 0) {
+                    child++;
+                }
+            }
+            pageNum = child == 0 ? page.getInt(NODE_HEADER)
+                    : page.getInt(NODE_HEADER + 4 + (child - 1) * entrySize + keyWidth);
+            readPage(pageNum, page);
+        }
+        return new Cursor(page, low, lowInclusive, high, highInclusive);
+    }
+
+    /** Iterates over the rids of a range of keys, leaf by leaf **/
+
+    public class Cursor {
+
+        private final ByteBuffer leaf;
+        private final Bound high;
+        private final boolean highInclusive;
+        private int pos;
+        private boolean done;
+
+        private Cursor(ByteBuffer leaf, Bound low, boolean lowInclusive, Bound high, boolean highInclusive) throws IOException {
+            this.leaf = leaf;
+            this.high = high;
+            this.highInclusive = highInclusive;
+            this.pos = 0;
+            this.done = false;
+
+            // skip the entries below low, which may fill whole leaves
+            if (low != null) {
+                while (true) {
+                    if (pos == leaf.getInt(4)) {
+                        if (!nextLeaf()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    int cmp = low.compareKey(leaf, NODE_HEADER + pos * entrySize);
+                    if (cmp > 0 || (cmp == 0 && lowInclusive)) {
+                        break;
+                    }
+                    pos++;
+                }
+            }
+        }
+
+        private boolean nextLeaf() throws IOException {
+            int next = leaf.getInt(8);
+            if (next < 0) {
+                done = true;
+                return false;
+            }
+            readPage(next, leaf);
+            pos = 0;
+            return true;
+        }
+
+        /** The next rid in the range, -1 at its end **/
+
+        public int next() throws IOException {
+            while (!done && pos == leaf.getInt(4)) {
+                nextLeaf();
+            }
+            if (done) {
+                return -1;
+            }
+            int entry = NODE_HEADER + pos * entrySize;
+            if (high != null) {
+                int cmp = high.compareKey(leaf, entry);
+                if (cmp > 0 || (cmp == 0 && !highInclusive)) {
+                    done = true;
+                    return -1;
+                }
+            }
+            pos++;
+            return leaf.getInt(entry + keyWidth);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * Fixed number of page frames shared by every file read by the query
+ **/
+
+package qp.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The pages of the table files, column files and indexes are read
+ * through the pool. A page is pinned while it is being decoded, and a
+ * pinned page stays in its frame. Once every frame holds a page, the
+ * ReplacementPolicy chooses the unpinned frame whose page is replaced.
+ * A page read again while it is in the pool, such as a page of the inner
+ * table of a nested join or a node of an index, is not read from the file.
+ *
+ * The pool never holds more pages than it has frames: a pin with every
+ * frame pinned is an error, as the plan needs more buffers than given.
+ * Pages may be pinned by the threads reading ahead, so the pool is
+ * shared under its lock and a page is read outside of it.
+ */
+public class BufferPool {
+
+    public static final int DEFAULT_FRAMES = 64;
+
+    private static Frame[] frames;
+    private static Map<String, Frame> pages;    // frame of each page in the pool
+    private static ReplacementPolicy policy = new ReplacementPolicy.LRU();
+
+    /** Number of pins that found their page in the pool, and that read it **/
+    private static long hits = 0;
+    private static long misses = 0;
+
+    static {
+        setNumFrames(DEFAULT_FRAMES);
+    }
+
+
+    /** A frame of the pool and the page it holds **/
+
+    public static class Frame {
+
+        final int index;
+        String filename;        // file of the page, null if the frame is free
+        int pageNum;
+        ByteBuffer data;
+        int pinCount;
+        boolean loading;        // being read from the file
+
+        Frame(int index) {
+            this.index = index;
+        }
+
+        /** The page, with a position and limit of its own for the caller **/
+
+        public ByteBuffer getPage() {
+            ByteBuffer page = data.duplicate();
+            page.clear();
+            return page;
+        }
+
+        /** Whether the page of the frame may be replaced **/
+
+        public boolean isReplaceable() {
+            return pinCount == 0 && !loading;
+        }
+    }
+
+    /** Reads a page of the file into the buffer of a frame **/
+
+    public interface Loader {
+        void load(ByteBuffer page) throws IOException;
+    }
+
+
+    /** Empties the pool and gives it the number of frames of the query **/
+
+    public static synchronized void setNumFrames(int numFrames) {
+        frames = new Frame[Math.max(1, numFrames)];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new Frame(i);
+        }
+        pages = new HashMap<>();
+        policy.init(frames.length);
+    }
+
+    public static synchronized int getNumFrames() {
+        return frames.length;
+    }
+
+    public static synchronized void setPolicy(ReplacementPolicy replacement) {
+        policy = replacement;
+        setNumFrames(frames.length);
+    }
+
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    public static synchronized void resetCounters() {
+        hits = 0;
+        misses = 0;
+    }
+
+    private static String key(String filename, int pageNum) {
+        return filename + "#" + pageNum;
+    }
+
+
+    /**
+     * Pins page pageNum of the file, of pageSize bytes. If it is not in the
+     * pool, it is read by the loader into the frame chosen by the policy.
+     * The page must be unpinned once the caller is done with it.
+     */
+
+    public static Frame pin(String filename, int pageNum, int pageSize, Loader loader) throws IOException {
+        Frame frame;
+        String key = key(filename, pageNum);
+        synchronized (BufferPool.class) {
+            while (true) {
+                frame = pages.get(key);
+                if (frame == null) {
+                    break;
+                }
+                if (!frame.loading) {
+                    frame.pinCount++;
+                    hits++;
+                    policy.accessed(frame.index);
+                    return frame;
+                }
+                try {
+                    BufferPool.class.wait();    // read by another thread
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("BufferPool: Interrupted while waiting for " + key);
+                }
+            }
+
+            frame = freeFrame();
+            if (frame == null) {
+                frame = victim();
+            }
+            if (frame.filename != null) {
+                pages.remove(key(frame.filename, frame.pageNum));
+            }
+            frame.filename = filename;
+            frame.pageNum = pageNum;
+            frame.pinCount = 1;
+            frame.loading = true;
+            pages.put(key, frame);
+            misses++;
+            policy.loaded(frame.index);
+            policy.accessed(frame.index);
+        }
+
+        // the frame is pinned and loading, so no other thread touches it
+        try {
+            if (frame.data == null || frame.data.capacity() != pageSize) {
+                frame.data = ByteBuffer.allocate(pageSize);
+            }
+            loader.load(frame.data);
+        } catch (IOException | RuntimeException e) {
+            synchronized (BufferPool.class) {
+                pages.remove(key);
+                frame.filename = null;
+                frame.pinCount = 0;
+                frame.loading = false;
+                BufferPool.class.notifyAll();
+            }
+            throw e;
+        }
+        synchronized (BufferPool.class) {
+            frame.loading = false;
+            BufferPool.class.notifyAll();
+        }
+        return frame;
+    }
+
+    private static Frame freeFrame() {
+        for (Frame frame : frames) {
+            if (frame.filename == null && frame.isReplaceable()) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    private static Frame victim() {
+        int victim = policy.victim(frames);
+        if (victim < 0) {
+            throw new RuntimeException("BufferPool: All " + frames.length
+                    + " buffers are pinned, the plan needs more buffers");
+        }
+        return frames[victim];
+    }
+
+    public static synchronized void unpin(Frame frame) {
+        frame.pinCount--;
+    }
+
+    /** Drops the pages of a file that is being written again **/
+
+    public static synchronized void invalidate(String filename) {
+        for (Frame frame : frames) {
+            if (filename.equals(frame.filename)) {
+                pages.remove(key(frame.filename, frame.pageNum));
+                frame.filename = null;   // free once unpinned
+            }
+        }
+    }
+}
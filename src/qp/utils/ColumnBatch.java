@@ -0,0 +1,168 @@
+/**
+ * ColumnBatch represents a page stored column by column
+ **/
+
+package qp.utils;
+
+/**
+ * Every column is kept in one typed array (int[], float[] or String[])
+ * indexed by row, and a selection vector lists the rows that are still
+ * qualifying. Filtering a batch only rewrites the selection vector, and
+ * projecting it only drops column references, so no tuple is copied
+ * until the batch is turned back into a Batch of tuples.
+ */
+public class ColumnBatch {
+
+    private TupleLayout layout;
+    private Object[] columns;   // int[], float[] or String[] for each column
+    private int numRows;        // number of rows stored in the columns
+    private int[] selection;    // rows that are selected, null when all are
+    private int numSelected;
+
+
+    /** Allocates empty columns for capacity rows **/
+
+    public ColumnBatch(TupleLayout layout, int capacity) {
+        this.layout = layout;
+        this.columns = new Object[layout.getNumCols()];
+        for (int i = 0; i < columns.length; i++) {
+            switch (layout.typeOf(i)) {
+                case Attribute.INT:
+                    columns[i] = new int[capacity];
+                    break;
+                case Attribute.REAL:
+                    columns[i] = new float[capacity];
+                    break;
+                default:
+                    columns[i] = new String[capacity];
+                    break;
+            }
+        }
+        this.numRows = 0;
+        this.selection = null;
+    }
+
+    private ColumnBatch(TupleLayout layout, Object[] columns, int numRows, int[] selection, int numSelected) {
+        this.layout = layout;
+        this.columns = columns;
+        this.numRows = numRows;
+        this.selection = selection;
+        this.numSelected = numSelected;
+    }
+
+    /** Transposes a page of tuples into columns **/
+
+    public static ColumnBatch fromBatch(Batch batch, TupleLayout layout) {
+        ColumnBatch cb = new ColumnBatch(layout, batch.size());
+        for (int col = 0; col < cb.columns.length; col++) {
+            switch (layout.typeOf(col)) {
+                case Attribute.INT: {
+                    int[] values = (int[]) cb.columns[col];
+                    for (int row = 0; row < batch.size(); row++) {
+                        values[row] = batch.elementAt(row).getInt(col);
+                    }
+                    break;
+                }
+                case Attribute.REAL: {
+                    float[] values = (float[]) cb.columns[col];
+                    for (int row = 0; row < batch.size(); row++) {
+                        values[row] = batch.elementAt(row).getFloat(col);
+                    }
+                    break;
+                }
+                default: {
+                    String[] values = (String[]) cb.columns[col];
+                    for (int row = 0; row < batch.size(); row++) {
+                        values[row] = batch.elementAt(row).getString(col);
+                    }
+                    break;
+                }
+            }
+        }
+        cb.setNumRows(batch.size());
+        return cb;
+    }
+
+    public TupleLayout getLayout() {
+        return layout;
+    }
+
+    /** Number of selected rows **/
+
+    public int numRows() {
+        return selection == null ? numRows : numSelected;
+    }
+
+    /** Physical row of the i-th selected row **/
+
+    public int rowAt(int i) {
+        return selection == null ? i : selection[i];
+    }
+
+    /** Number of rows written into the columns; clears the selection **/
+
+    public void setNumRows(int n) {
+        numRows = n;
+        selection = null;
+    }
+
+    /** Keep only the given physical rows, which must be selected now **/
+
+    public void select(int[] rows, int count) {
+        selection = rows;
+        numSelected = count;
+    }
+
+    public int[] getIntColumn(int col) {
+        return (int[]) columns[col];
+    }
+
+    public float[] getFloatColumn(int col) {
+        return (float[]) columns[col];
+    }
+
+    public String[] getStringColumn(int col) {
+        return (String[]) columns[col];
+    }
+
+    /** Keeps the given columns, sharing their arrays and the selection **/
+
+    public ColumnBatch project(int[] cols, TupleLayout projected) {
+        Object[] kept = new Object[cols.length];
+        for (int i = 0; i < cols.length; i++) {
+            kept[i] = columns[cols[i]];
+        }
+        return new ColumnBatch(projected, kept, numRows, selection, numSelected);
+    }
+
+    /** Materializes the i-th selected row as a tuple **/
+
+    public Tuple tupleAt(int i) {
+        int row = rowAt(i);
+        Tuple t = Tuple.allocate(layout);
+        for (int col = 0; col < columns.length; col++) {
+            switch (layout.typeOf(col)) {
+                case Attribute.INT:
+                    t.setInt(col, ((int[]) columns[col])[row]);
+                    break;
+                case Attribute.REAL:
+                    t.setFloat(col, ((float[]) columns[col])[row]);
+                    break;
+                default:
+                    t.setString(col, ((String[]) columns[col])[row]);
+                    break;
+            }
+        }
+        return t;
+    }
+
+    /** Materializes the selected rows as a page of tuples **/
+
+    public Batch toBatch(int capacity) {
+        Batch batch = new Batch(Math.max(capacity, numRows()));
+        for (int i = 0; i < numRows(); i++) {
+            batch.add(tupleAt(i));
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * Fixed-width binary page layout of a table file
+ **/
+
+package qp.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Vector;
+
+/**
+ * A table file is a sequence of pages of exactly pageSize bytes.
+ * Page 0 is the header page, pages 1..n hold the records.
+ *
+ * Every record is laid out at a fixed offset computed from the Schema:
+ *   - INT    : 4 byte big endian int, padded to the attribute size
+ *   - REAL   : 4 byte IEEE float, padded to the attribute size
+ *   - STRING : 2 byte length followed by the UTF-8 bytes, padded to the attribute size,
+ *              or the 4 byte code of the value if the column has a StringDictionary
+ * so a data page holds pageSize / recordSize records and the record size
+ * equals Schema.getTupleSize() for the tables generated by RandomDB.
+ * The header page flags the dictionary encoded columns, one byte per
+ * column after the fixed fields.
+ */
+public class PageFormat {
+
+    public static final int MAGIC = 0x51504731;  // "QPG1"
+    public static final int HEADER_SIZE = 20;    // magic, pageSize, recordSize, numCols, numTuples
+
+    private Schema schema;
+    private TupleLayout layout;
+    private int pageSize;
+    private int[] types;     // type of each column
+    private int[] offsets;   // byte offset of each column in a record
+    private int[] widths;    // number of bytes reserved for each column
+    private StringDictionary[] dicts;  // dictionary of each encoded column, null for the others
+    private int recordSize;
+    private int tuplesPerPage;
+
+    private byte[] scratch;  // decoding buffer for strings
+
+
+    public PageFormat(Schema schema, int pageSize) {
+        this(schema, pageSize, null);
+    }
+
+    /** dicts holds the dictionary of every STRING column stored as
+     ** codes, and null for the others. May be null if there are none
+     **/
+
+    public PageFormat(Schema schema, int pageSize, StringDictionary[] dicts) {
+        this.schema = schema;
+        this.layout = TupleLayout.of(schema);
+        this.pageSize = pageSize;
+
+        int numCols = schema.getNumCols();
+        types = new int[numCols];
+        offsets = new int[numCols];
+        widths = new int[numCols];
+        this.dicts = new StringDictionary[numCols];
+        int offset = 0;
+        for (int i = 0; i < numCols; i++) {
+            Attribute attr = schema.getAttribute(i);
+            types[i] = attr.getType();
+            if (dicts != null && dicts[i] != null && types[i] == Attribute.STRING) {
+                this.dicts[i] = dicts[i];
+                widths[i] = 4;
+            } else {
+                widths[i] = columnWidth(attr);
+            }
+            offsets[i] = offset;
+            offset += widths[i];
+        }
+        recordSize = offset;
+        if (pageSize < HEADER_SIZE + numCols || pageSize < recordSize) {
+            throw new RuntimeException("PageFormat: Tuple too large to fit in page");
+        }
+        tuplesPerPage = pageSize / recordSize;
+        scratch = new byte[recordSize];
+    }
+
+    /** Number of bytes a column occupies in a record **/
+
+    public static int columnWidth(Attribute attr) {
+        if (attr.getType() == Attribute.STRING) {
+            return Math.max(2, attr.getAttrSize());
+        } else {
+            return Math.max(4, attr.getAttrSize());
+        }
+    }
+
+    /** A column of a table may also be stored on its own, in the file
+     ** T.col.col written in this format with a one column schema.
+     ** Its records are in the same order as the records of T.tbl
+     **/
+
+    public static String columnFileName(String tabname, String colname) {
+        return tabname + "." + colname + ".col";
+    }
+
+    public static Schema columnSchema(Attribute attr) {
+        Vector attrs = new Vector();
+        attrs.add(attr);
+        Schema schema = new Schema(attrs);
+        schema.setTupleSize(attr.getAttrSize());
+        return schema;
+    }
+
+    /** Whether the given file is written in this format
+     ** (as opposed to a stream of serialized Tuples)
+     **/
+
+    public static boolean isPageFile(String filename) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getRecordSize() {
+        return recordSize;
+    }
+
+    public int getTuplesPerPage() {
+        return tuplesPerPage;
+    }
+
+    public int getNumCols() {
+        return types.length;
+    }
+
+    public int getType(int col) {
+        return types[col];
+    }
+
+    public int getOffset(int col) {
+        return offsets[col];
+    }
+
+    /** Dictionary of the column, null if it is not stored as codes **/
+
+    public StringDictionary getDictionary(int col) {
+        return dicts[col];
+    }
+
+    /** Number of data pages needed for the given number of tuples **/
+
+    public int numPages(int numTuples) {
+        return (numTuples + tuplesPerPage - 1) / tuplesPerPage;
+    }
+
+
+    /** Header page **/
+
+    public void writeHeader(ByteBuffer page, int numTuples) {
+        page.putInt(0, MAGIC);
+        page.putInt(4, pageSize);
+        page.putInt(8, recordSize);
+        page.putInt(12, getNumCols());
+        page.putInt(16, numTuples);
+        for (int i = 0; i < dicts.length; i++) {
+            page.put(HEADER_SIZE + i, (byte) (dicts[i] != null ? 1 : 0));
+        }
+    }
+
+    /** Loads the dictionaries of the columns the header page flags as
+     ** encoded, to build the format of the file with
+     **/
+
+    public static StringDictionary[] readDictionaries(ByteBuffer page, Schema schema) throws IOException {
+        StringDictionary[] dicts = new StringDictionary[schema.getNumCols()];
+        for (int i = 0; i < dicts.length; i++) {
+            if (page.get(HEADER_SIZE + i) != 0) {
+                Attribute attr = schema.getAttribute(i);
+                dicts[i] = StringDictionary.load(StringDictionary.fileName(attr.getTabName(), attr.getColName()));
+            }
+        }
+        return dicts;
+    }
+
+    /** Validates the header page against this layout and returns the number of tuples **/
+
+    public int readHeader(ByteBuffer page) {
+        if (page.getInt(0) != MAGIC) {
+            throw new RuntimeException("PageFormat: Not a page formatted table file");
+        }
+        if (page.getInt(4) != pageSize || page.getInt(8) != recordSize || page.getInt(12) != getNumCols()) {
+            throw new RuntimeException("PageFormat: Table file does not match the schema");
+        }
+        return page.getInt(16);
+    }
+
+    /** Reads the page size stored in the header of a table file **/
+
+    public static int readPageSize(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("PageFormat: Not a page formatted table file " + filename);
+            }
+            return in.readInt();
+        }
+    }
+
+    /** Reads the record size stored in the header of a table file **/
+
+    public static int readRecordSize(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("PageFormat: Not a page formatted table file " + filename);
+            }
+            in.readInt();
+            return in.readInt();
+        }
+    }
+
+
+    /** Records **/
+
+    public void writeTuple(ByteBuffer page, int slot, Tuple tuple) {
+        int base = slot * recordSize;
+        for (int i = 0; i < types.length; i++) {
+            int pos = base + offsets[i];
+            if (types[i] == Attribute.INT) {
+                page.putInt(pos, tuple.getInt(i));
+            } else if (types[i] == Attribute.REAL) {
+                page.putFloat(pos, tuple.getFloat(i));
+            } else if (dicts[i] != null) {
+                String data = tuple.getString(i);
+                int code = dicts[i].code(data);
+                if (code < 0) {
+                    throw new RuntimeException("PageFormat: String not in the dictionary of column "
+                            + schema.getAttribute(i).getColName() + ": " + data);
+                }
+                page.putInt(pos, code);
+            } else {
+                String data = tuple.getString(i);
+                byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > widths[i] - 2) {
+                    throw new RuntimeException("PageFormat: String too long for column "
+                            + schema.getAttribute(i).getColName() + ": " + data);
+                }
+                page.putShort(pos, (short) bytes.length);
+                page.position(pos + 2);
+                page.put(bytes);
+            }
+        }
+    }
+
+    public Tuple readTuple(ByteBuffer page, int slot) {
+        int base = slot * recordSize;
+        Tuple tuple = Tuple.allocate(layout);
+        for (int i = 0; i < types.length; i++) {
+            int pos = base + offsets[i];
+            if (types[i] == Attribute.INT) {
+                tuple.setInt(i, page.getInt(pos));
+            } else if (types[i] == Attribute.REAL) {
+                tuple.setFloat(i, page.getFloat(pos));
+            } else if (dicts[i] != null) {
+                tuple.setString(i, dicts[i].value(page.getInt(pos)));
+            } else {
+                tuple.setString(i, readString(page, pos));
+            }
+        }
+        return tuple;
+    }
+
+    /** Decodes count records starting at slot straight into the
+     ** columns of out, starting at row
+     **/
+
+    public void readColumns(ByteBuffer page, int slot, int count, ColumnBatch out, int row) {
+        for (int i = 0; i < types.length; i++) {
+            readColumn(page, slot, count, i, out, i, row);
+        }
+    }
+
+    /** Decodes column col of count records starting at slot into
+     ** column outCol of out, starting at row
+     **/
+
+    public void readColumn(ByteBuffer page, int slot, int count, int col, ColumnBatch out, int outCol, int row) {
+        int pos = slot * recordSize + offsets[col];
+        if (types[col] == Attribute.INT) {
+            int[] values = out.getIntColumn(outCol);
+            for (int r = row; r < row + count; r++, pos += recordSize) {
+                values[r] = page.getInt(pos);
+            }
+        } else if (types[col] == Attribute.REAL) {
+            float[] values = out.getFloatColumn(outCol);
+            for (int r = row; r < row + count; r++, pos += recordSize) {
+                values[r] = page.getFloat(pos);
+            }
+        } else if (dicts[col] != null) {
+            StringDictionary dict = dicts[col];
+            String[] values = out.getStringColumn(outCol);
+            for (int r = row; r < row + count; r++, pos += recordSize) {
+                values[r] = dict.value(page.getInt(pos));
+            }
+        } else {
+            String[] values = out.getStringColumn(outCol);
+            for (int r = row; r < row + count; r++, pos += recordSize) {
+                values[r] = readString(page, pos);
+            }
+        }
+    }
+
+    private String readString(ByteBuffer page, int pos) {
+        int length = page.getShort(pos) & 0xFFFF;
+        page.position(pos + 2);
+        page.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Reads pages ahead of the consumer on a background thread
+ **/
+
+package qp.utils;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The pages returned by a PageSource are read by a background thread into
+ * a queue of depth pages, so that the next pages are being read while the
+ * consumer works on the current one. The consumer only waits (stalls) when
+ * the queue is empty. The depth is counted against the buffers of the
+ * operator that reads through it. The thread is never interrupted, as
+ * that would close the file channel it reads from; close() asks it to
+ * stop and waits until it has, so the file can then be closed or
+ * replaced. An error raised after close() is taken as the end.
+ */
+public class PrefetchReader<T> {
+
+    /** Reads the next page, null at the end **/
+    public interface PageSource<T> {
+        T read() throws IOException;
+    }
+
+    /** Number of pages read ahead by every reader, 0 to read synchronously **/
+    private static int depth = 0;
+
+    /** Time the consumers waited for a page, over all the readers **/
+    private static final AtomicLong stallNanos = new AtomicLong();
+
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> pages;
+    private final Thread thread;
+    private volatile boolean closed = false;
+    private boolean ended = false;
+
+
+    public PrefetchReader(PageSource<T> source, int depth) {
+        this.pages = new ArrayBlockingQueue<>(Math.max(1, depth));
+        this.thread = new Thread(() -> {
+            Object last = END;
+            try {
+                T page;
+                while (!closed && (page = source.read()) != null) {
+                    if (!hand(page)) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    last = e;   // handed to the consumer in place of the end
+                }
+            }
+            hand(last);
+        }, "prefetch");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public static void setDepth(int pages) {
+        depth = Math.max(0, pages);
+    }
+
+    public static int getDepth() {
+        return depth;
+    }
+
+    /** Stall time in milliseconds **/
+    public static long getStallTime() {
+        return stallNanos.get() / 1000000;
+    }
+
+    public static void resetCounters() {
+        stallNanos.set(0);
+    }
+
+
+    /** The next page, waiting for it if it is not read yet. Null at the end **/
+
+    @SuppressWarnings("unchecked")
+    public T next() throws IOException {
+        if (ended) {
+            return null;
+        }
+        Object page = pages.poll();
+        if (page == null) {
+            long start = System.nanoTime();
+            try {
+                page = pages.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("PrefetchReader: Interrupted while waiting for a page", e);
+            } finally {
+                stallNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+        if (page == END) {
+            ended = true;
+            return null;
+        }
+        if (page instanceof IOException) {
+            ended = true;
+            throw (IOException) page;
+        }
+        return (T) page;
+    }
+
+    /** Puts the page in the queue once there is room, false if the
+     ** reader is closed first
+     **/
+
+    private boolean hand(Object page) {
+        try {
+            while (!closed) {
+                if (pages.offer(page, 10, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /** Stops reading ahead, the pages not returned yet are dropped.
+     ** Returns once the thread is done with the page it is reading
+     **/
+
+    public void close() {
+        closed = true;
+        pages.clear();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        pages.clear();
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Chooses the frame of the buffer pool whose page is replaced
+ **/
+
+package qp.utils;
+
+import java.util.Arrays;
+
+/**
+ * The pool tells the policy about every page it loads into a frame and
+ * every pin of a frame, and asks it for a victim once every frame holds
+ * a page. Only frames that are not pinned may be chosen.
+ */
+public interface ReplacementPolicy {
+
+    /** Prepares the policy for a pool of the given number of frames **/
+    void init(int numFrames);
+
+    /** A new page was loaded into the frame **/
+    void loaded(int frame);
+
+    /** The page in the frame was pinned **/
+    void accessed(int frame);
+
+    /** The frame to load the next page into, -1 if every frame is pinned **/
+    int victim(BufferPool.Frame[] frames);
+
+
+    /** The policy of the given name: lru, clock, lruk or mru **/
+
+    static ReplacementPolicy forName(String name) {
+        switch (name) {
+            case "lru":
+                return new LRU();
+            case "clock":
+                return new Clock();
+            case "lruk":
+                return new LRUK(2);
+            case "mru":
+                return new MRU();
+            default:
+                return null;
+        }
+    }
+
+
+    /** Replaces the page used least recently **/
+
+    class LRU implements ReplacementPolicy {
+
+        long[] lastUsed;
+        long clock;
+
+        public void init(int numFrames) {
+            lastUsed = new long[numFrames];
+            clock = 0;
+        }
+
+        public void loaded(int frame) {
+        }
+
+        public void accessed(int frame) {
+            lastUsed[frame] = ++clock;
+        }
+
+        public int victim(BufferPool.Frame[] frames) {
+            int victim = -1;
+            for (int i = 0; i < frames.length; i++) {
+                if (frames[i].isReplaceable() && (victim < 0 || lastUsed[i] < lastUsed[victim])) {
+                    victim = i;
+                }
+            }
+            return victim;
+        }
+    }
+
+
+    /** Replaces the page used most recently. When a table larger than
+     ** the pool is scanned over and over, as the inner table of a block
+     ** nested join, LRU replaces every page just before it is read again,
+     ** while MRU keeps the first pages of the table in the pool
+     **/
+
+    class MRU extends LRU {
+
+        public int victim(BufferPool.Frame[] frames) {
+            int victim = -1;
+            for (int i = 0; i < frames.length; i++) {
+                if (frames[i].isReplaceable() && (victim < 0 || lastUsed[i] > lastUsed[victim])) {
+                    victim = i;
+                }
+            }
+            return victim;
+        }
+    }
+
+
+    /** Approximates LRU with a reference bit per frame: the hand goes
+     ** round the frames, clearing the bits that are set, and stops at
+     ** the first replaceable frame whose bit is clear
+     **/
+
+    class Clock implements ReplacementPolicy {
+
+        boolean[] referenced;
+        int hand;
+
+        public void init(int numFrames) {
+            referenced = new boolean[numFrames];
+            hand = 0;
+        }
+
+        public void loaded(int frame) {
+        }
+
+        public void accessed(int frame) {
+            referenced[frame] = true;
+        }
+
+        public int victim(BufferPool.Frame[] frames) {
+            for (int step = 0; step < 2 * frames.length; step++) {
+                int frame = hand;
+                hand = (hand + 1) % frames.length;
+                if (!frames[frame].isReplaceable()) {
+                    continue;
+                }
+                if (referenced[frame]) {
+                    referenced[frame] = false;
+                } else {
+                    return frame;
+                }
+            }
+            return -1;
+        }
+    }
+
+
+    /** Replaces the page whose k-th most recent use is the oldest. Pages
+     ** used fewer than k times since they were loaded go first, in LRU
+     ** order, so that a page read once by a scan does not push out the
+     ** pages used again and again, such as the inner nodes of an index
+     **/
+
+    class LRUK implements ReplacementPolicy {
+
+        final int k;
+        long[][] history;   // last k uses of the page in each frame, most recent first
+        long clock;
+
+        public LRUK(int k) {
+            this.k = k;
+        }
+
+        public void init(int numFrames) {
+            history = new long[numFrames][k];
+            clock = 0;
+        }
+
+        public void loaded(int frame) {
+            Arrays.fill(history[frame], 0);
+        }
+
+        public void accessed(int frame) {
+            long[] uses = history[frame];
+            System.arraycopy(uses, 0, uses, 1, k - 1);
+            uses[0] = ++clock;
+        }
+
+        public int victim(BufferPool.Frame[] frames) {
+            int victim = -1;
+            for (int i = 0; i < frames.length; i++) {
+                if (frames[i].isReplaceable() && (victim < 0 || older(i, victim))) {
+                    victim = i;
+                }
+            }
+            return victim;
+        }
+
+        /** Whether the page in frame a is to be replaced before the one in frame b **/
+        private boolean older(int a, int b) {
+            long kthA = history[a][k - 1];
+            long kthB = history[b][k - 1];
+            if (kthA != kthB) {
+                return kthA < kthB;
+            }
+            return history[a][0] < history[b][0];
+        }
+    }
+}
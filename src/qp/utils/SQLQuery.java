@@ -5,6 +5,8 @@
 
 package qp.utils;
 
+import qp.operators.Order;
+
 import java.util.Vector;
 
 public class SQLQuery {
@@ -21,8 +23,10 @@ public class SQLQuery {
     Vector selectionList;    //List of select predicates
     Vector joinList;           //List of join predicates
 
-    Vector orderByList;        //List of attibutes in groupby clause
+    Vector orderByList;        //List of attibutes in orderby clause
+    Vector groupByList = new Vector();   //List of attributes in groupby clause
     boolean isDistinct = false;   // Whether distinct key word appeared in select clause
+    int limit = -1;               // Number of rows in the limit clause, -1 if none
     public boolean isAscending = true;
 
 
@@ -108,6 +112,71 @@ public class SQLQuery {
         return orderByList;
     }
 
+    public void setGroupByList(Vector list) {
+        groupByList = list;
+    }
+
+    public Vector getGroupByList() {
+        return groupByList;
+    }
+
+    public void setLimit(int rows) {
+        limit = rows;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean hasLimit() {
+        return limit >= 0;
+    }
+
+    /** Whether the result has a row per group rather than per tuple,
+     ** as the query has a GROUP BY or an aggregate function
+     **/
+
+    public boolean isAggregated() {
+        if (!groupByList.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < projectList.size(); i++) {
+            if (((Attribute) projectList.elementAt(i)).isAggregated()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Attributes the query refers to anywhere, the only ones the
+     ** scans need to read. Null if every attribute is selected
+     **/
+
+    public Vector getReferencedAttributes() {
+        if (projectList.isEmpty()) {
+            return null;
+        }
+        Vector attrs = new Vector();
+        for (int i = 0; i < projectList.size(); i++) {
+            Attribute attr = (Attribute) projectList.elementAt(i);
+            attrs.add(attr.isAggregated() ? attr.getBaseAttribute() : attr);
+        }
+        attrs.addAll(groupByList);
+        if (conditionList != null) {
+            for (int i = 0; i < conditionList.size(); i++) {
+                Condition cn = (Condition) conditionList.elementAt(i);
+                attrs.add(cn.getLhs());
+                if (cn.getOpType() == Condition.JOIN) {
+                    attrs.add(cn.getRhs());
+                }
+            }
+        }
+        for (int i = 0; i < orderByList.size(); i++) {
+            attrs.add(((Order) orderByList.elementAt(i)).getAttribute());
+        }
+        return attrs;
+    }
+
     public int getNumJoin() {
         if (joinList == null)
             return 0;
@@ -0,0 +1,125 @@
+/**
+ * Distinct values of a STRING column, each stored in the pages as an int code
+ **/
+
+package qp.utils;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The dictionary of column col of table T is kept next to the table in
+ * T.col.dict, written by ConvertTxtToTbl with -dictionary. The values are
+ * sorted, so that the code of a value is its rank and codes compare like
+ * the strings they stand for.
+ *
+ * A dictionary file is loaded once however many files of the table are
+ * read, and a code is always decoded to the same String instance. Two
+ * values of the column are then equal exactly when they are the same
+ * instance, which is how Select compares them.
+ */
+public class StringDictionary {
+
+    public static final int MAGIC = 0x51504431;  // "QPD1"
+
+    /** Dictionaries loaded so far, with the time their file was written **/
+    private static final Map<String, StringDictionary> loaded = new HashMap<>();
+
+    private String[] values;    // in increasing order, indexed by code
+    private long modified;
+
+
+    /** The dictionary of the given values **/
+
+    public StringDictionary(Collection<String> strings) {
+        values = new TreeSet<>(strings).toArray(new String[0]);
+    }
+
+    private StringDictionary(String[] values) {
+        this.values = values;
+    }
+
+    public static String fileName(String tabname, String colname) {
+        return tabname + "." + colname + ".dict";
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /** The value of the given code **/
+
+    public String value(int code) {
+        return values[code];
+    }
+
+    /** The code of the given value, -1 if it is not in the dictionary **/
+
+    public int code(String value) {
+        int lo = 0;
+        int hi = values.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = values[mid].compareTo(value);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** The instance the given value is decoded to, null if it is not in the dictionary **/
+
+    public String canonical(String value) {
+        int code = code(value);
+        return code < 0 ? null : values[code];
+    }
+
+
+    /** Storing **/
+
+    public void write(String filename) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+        out.writeInt(MAGIC);
+        out.writeInt(values.length);
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+        out.close();
+    }
+
+    /** Reads the dictionary file, or returns the one already read
+     ** if the file has not been written again since
+     **/
+
+    public static synchronized StringDictionary load(String filename) throws IOException {
+        File file = new File(filename);
+        StringDictionary dict = loaded.get(filename);
+        if (dict != null && dict.modified == file.lastModified()) {
+            return dict;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("StringDictionary: Not a dictionary file " + filename);
+            }
+            String[] values = new String[in.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readUTF();
+            }
+            dict = new StringDictionary(values);
+        } finally {
+            in.close();
+        }
+        dict.modified = file.lastModified();
+        loaded.put(filename, dict);
+        return dict;
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Reads the pages of a page formatted table file
+ **/
+
+package qp.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TableReader {
+
+    /** Number of bytes copied in by read calls, and number of bytes
+     ** of mapped pages decoded, over all the readers of this query.
+     ** Pages may be read ahead by other threads
+     **/
+    private static final AtomicLong bytesRead = new AtomicLong();
+    private static final AtomicLong bytesMapped = new AtomicLong();
+
+    private String filename;
+    private PageFormat format;
+    private FileChannel channel;
+    private ByteBuffer page;    // header page, or the whole file if memory mapped
+    private MappedByteBuffer mapped;  // whole file, if memory mapped
+    private BufferPool.Frame frame;   // page pinned in the buffer pool, if any
+    private int numTuples;
+    private int numPages;       // number of data pages
+
+
+    public TableReader(String filename, Schema schema) throws IOException {
+        this(filename, schema, false);
+    }
+
+    /** If map is set, the file is mapped into memory and pages are
+     ** decoded straight from the page cache instead of being copied
+     ** into a buffer by a read call for every page. Otherwise the pages
+     ** are read through the BufferPool
+     **/
+
+    public TableReader(String filename, Schema schema, boolean map) throws IOException {
+        this.filename = filename;
+        int pageSize = PageFormat.readPageSize(filename);
+        channel = new RandomAccessFile(filename, "r").getChannel();
+
+        if (map) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            page = mapped.duplicate();
+            page.limit(pageSize);
+            bytesMapped.addAndGet(pageSize);
+        } else {
+            page = pin(0, pageSize);
+        }
+        try {
+            format = new PageFormat(schema, pageSize, PageFormat.readDictionaries(page, schema));
+            numTuples = format.readHeader(page);
+        } finally {
+            release();
+        }
+        numPages = format.numPages(numTuples);
+    }
+
+    public static long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public static long getBytesMapped() {
+        return bytesMapped.get();
+    }
+
+    public static void resetCounters() {
+        bytesRead.set(0);
+        bytesMapped.set(0);
+    }
+
+    public boolean isMapped() {
+        return mapped != null;
+    }
+
+    public PageFormat getFormat() {
+        return format;
+    }
+
+    public int getNumTuples() {
+        return numTuples;
+    }
+
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /** number of records stored in the given data page **/
+
+    public int tuplesInPage(int pageNum) {
+        int perPage = format.getTuplesPerPage();
+        return Math.min(perPage, numTuples - pageNum * perPage);
+    }
+
+
+    /** Reads the data page pageNum (counting from 0). The returned
+     ** buffer stays valid until the next call, or until release
+     **/
+
+    public ByteBuffer readPage(int pageNum) throws IOException {
+        int pageSize = format.getPageSize();
+        if (mapped != null) {
+            int start = (pageNum + 1) * pageSize;
+            page.limit(start + pageSize);
+            page.position(start);
+            bytesMapped.addAndGet(pageSize);
+            return page.slice();
+        }
+        release();
+        return pin(pageNum + 1, pageSize);
+    }
+
+    /** Pins the page of the file, which is read only if it is not in the pool **/
+
+    private ByteBuffer pin(int filePage, int pageSize) throws IOException {
+        frame = BufferPool.pin(filename, filePage, pageSize, buffer -> {
+            readFully(buffer, (long) filePage * pageSize);
+            bytesRead.addAndGet(pageSize);
+        });
+        return frame.getPage();
+    }
+
+    /** Unpins the page last read, which must not be used afterwards **/
+
+    public void release() {
+        if (frame != null) {
+            BufferPool.unpin(frame);
+            frame = null;
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new EOFException("TableReader: Unexpected end of file " + filename);
+            }
+        }
+        buffer.clear();
+    }
+
+    public void close() throws IOException {
+        release();
+        mapped = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Writes tuples of a table into a page formatted table file
+ **/
+
+package qp.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class TableWriter {
+
+    private PageFormat format;
+    private FileChannel channel;
+    private ByteBuffer page;    // page currently being filled
+    private int slot;           // next free slot in the page
+    private int numTuples;
+
+
+    public TableWriter(String filename, Schema schema, int pageSize) throws IOException {
+        this(filename, schema, pageSize, null);
+    }
+
+    /** The STRING columns with a dictionary in dicts are written as codes **/
+
+    public TableWriter(String filename, Schema schema, int pageSize, StringDictionary[] dicts) throws IOException {
+        format = new PageFormat(schema, pageSize, dicts);
+        BufferPool.invalidate(filename);
+        channel = new RandomAccessFile(filename, "rw").getChannel();
+        channel.truncate(0);
+        page = ByteBuffer.allocate(pageSize);
+
+        /** reserve the header page, it is filled in on close **/
+        channel.write(ByteBuffer.allocate(pageSize), 0);
+        channel.position(pageSize);
+        slot = 0;
+        numTuples = 0;
+    }
+
+    public PageFormat getFormat() {
+        return format;
+    }
+
+    public int getNumTuples() {
+        return numTuples;
+    }
+
+
+    /** insert the tuple at the next free slot, writing out the page when full **/
+
+    public void write(Tuple tuple) throws IOException {
+        format.writeTuple(page, slot, tuple);
+        slot++;
+        numTuples++;
+        if (slot == format.getTuplesPerPage()) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        page.clear();
+        channel.write(page);
+        page = ByteBuffer.allocate(format.getPageSize());
+        slot = 0;
+    }
+
+
+    /** write the last partially filled page and the header **/
+
+    public void close() throws IOException {
+        if (slot > 0) {
+            flush();
+        }
+        ByteBuffer header = ByteBuffer.allocate(format.getPageSize());
+        format.writeHeader(header, numTuples);
+        channel.write(header, 0);
+        channel.close();
+    }
+}
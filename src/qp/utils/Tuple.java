@@ -3,31 +3,156 @@
  **********/
 package qp.utils;
 
+import java.io.*;
 import java.util.Vector;
-import java.io.Serializable;
 
 /**
- * Tuple - a simple object which holds a Vector
- * of data
+ * Tuple - holds the data of a record in primitive arrays,
+ * INT columns in an int[], REAL columns in a float[] and
+ * STRING columns in a String[], as described by its TupleLayout
  */
 
 public class Tuple implements Serializable {
-    public Vector _data;
 
+    /** Kept from the Vector based tuple so that tables and
+     ** files of serialized tuples written before can still be read
+     **/
+    private static final long serialVersionUID = 8738898719856953652L;
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("_data", Vector.class)
+    };
+
+    private static final int[] NO_INTS = new int[0];
+    private static final float[] NO_FLOATS = new float[0];
+    private static final String[] NO_STRINGS = new String[0];
+
+    private transient TupleLayout layout;
+    private transient int[] ints;
+    private transient float[] floats;
+    private transient String[] strings;
+
+
+    public Tuple(TupleLayout layout, int[] ints, float[] floats, String[] strings) {
+        this.layout = layout;
+        this.ints = ints;
+        this.floats = floats;
+        this.strings = strings;
+    }
+
+    /** Builds the tuple from boxed Integer/Float/String values **/
 
     public Tuple(Vector d) {
-        _data = d;
+        fromVector(d);
+    }
+
+    /** An empty tuple of the given layout, to be filled with the set methods **/
+
+    public static Tuple allocate(TupleLayout layout) {
+        return new Tuple(layout,
+                layout.getNumInts() == 0 ? NO_INTS : new int[layout.getNumInts()],
+                layout.getNumFloats() == 0 ? NO_FLOATS : new float[layout.getNumFloats()],
+                layout.getNumStrings() == 0 ? NO_STRINGS : new String[layout.getNumStrings()]);
+    }
+
+    private void fromVector(Vector d) {
+        int[] types = new int[d.size()];
+        for (int i = 0; i < d.size(); i++) {
+            Object data = d.elementAt(i);
+            if (data instanceof Integer) {
+                types[i] = Attribute.INT;
+            } else if (data instanceof Float) {
+                types[i] = Attribute.REAL;
+            } else if (data instanceof String) {
+                types[i] = Attribute.STRING;
+            } else {
+                throw new RuntimeException("Tuple: Unknown data type " + data);
+            }
+        }
+        Tuple t = allocate(TupleLayout.of(types));
+        for (int i = 0; i < d.size(); i++) {
+            t.setData(i, d.elementAt(i));
+        }
+        layout = t.layout;
+        ints = t.ints;
+        floats = t.floats;
+        strings = t.strings;
+    }
+
+    public TupleLayout getLayout() {
+        return layout;
+    }
+
+    /** Number of columns **/
+
+    public int size() {
+        return layout.getNumCols();
+    }
+
+    public int typeAt(int index) {
+        return layout.typeOf(index);
+    }
+
+    public int getInt(int index) {
+        return ints[layout.slotOf(index)];
+    }
+
+    public float getFloat(int index) {
+        return floats[layout.slotOf(index)];
+    }
+
+    public String getString(int index) {
+        return strings[layout.slotOf(index)];
+    }
+
+    public void setInt(int index, int value) {
+        ints[layout.slotOf(index)] = value;
+    }
+
+    public void setFloat(int index, float value) {
+        floats[layout.slotOf(index)] = value;
+    }
+
+    public void setString(int index, String value) {
+        strings[layout.slotOf(index)] = value;
     }
 
     /**
-     * Accessor for data
+     * Accessor for data, boxes every column. Use the typed
+     * accessors in the operators
      */
     public Vector data() {
-        return _data;
+        Vector d = new Vector(size());
+        for (int i = 0; i < size(); i++) {
+            d.add(dataAt(i));
+        }
+        return d;
     }
 
     public Object dataAt(int index) {
-        return _data.elementAt(index);
+        int slot = layout.slotOf(index);
+        switch (layout.typeOf(index)) {
+            case Attribute.INT:
+                return ints[slot];
+            case Attribute.REAL:
+                return floats[slot];
+            default:
+                return strings[slot];
+        }
+    }
+
+    private void setData(int index, Object data) {
+        int slot = layout.slotOf(index);
+        switch (layout.typeOf(index)) {
+            case Attribute.INT:
+                ints[slot] = (Integer) data;
+                break;
+            case Attribute.REAL:
+                floats[slot] = (Float) data;
+                break;
+            default:
+                strings[slot] = (String) data;
+                break;
+        }
     }
 
 
@@ -37,13 +162,7 @@ public class Tuple implements Serializable {
      **/
 
     public boolean checkJoin(Tuple right, int leftindex, int rightindex) {
-        Object leftData = dataAt(leftindex);
-        Object rightData = right.dataAt(rightindex);
-
-        if (leftData.equals(rightData))
-            return true;
-        else
-            return false;
+        return compareTuples(this, right, leftindex, rightindex) == 0;
     }
 
 
@@ -53,9 +172,63 @@ public class Tuple implements Serializable {
 
 
     public Tuple joinWith(Tuple right) { //, Attribute leftAttr, Attribute rightAttr){
-        Vector newData = new Vector(this.data());
-        newData.addAll(right.data());
-        return new Tuple(newData);
+        TupleLayout joined = layout.joinWith(right.layout);
+        return new Tuple(joined,
+                concat(ints, right.ints),
+                concat(floats, right.floats),
+                concat(strings, right.strings));
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        if (b.length == 0) return a;
+        if (a.length == 0) return b;
+        int[] c = new int[a.length + b.length];
+        System.arraycopy(a, 0, c, 0, a.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    private static float[] concat(float[] a, float[] b) {
+        if (b.length == 0) return a;
+        if (a.length == 0) return b;
+        float[] c = new float[a.length + b.length];
+        System.arraycopy(a, 0, c, 0, a.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    private static String[] concat(String[] a, String[] b) {
+        if (b.length == 0) return a;
+        if (a.length == 0) return b;
+        String[] c = new String[a.length + b.length];
+        System.arraycopy(a, 0, c, 0, a.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+
+    /**
+     * Keeps only the columns at the given indexes, in that order
+     **/
+
+    public Tuple project(int[] columns, TupleLayout projected) {
+        Tuple t = allocate(projected);
+        for (int i = 0; i < columns.length; i++) {
+            int from = layout.slotOf(columns[i]);
+            int to = projected.slotOf(i);
+            switch (projected.typeOf(i)) {
+                case Attribute.INT:
+                    t.ints[to] = ints[from];
+                    break;
+                case Attribute.REAL:
+                    t.floats[to] = floats[from];
+                    break;
+                default:
+                    t.strings[to] = strings[from];
+                    break;
+            }
+        }
+        return t;
     }
 
 
@@ -73,31 +246,68 @@ public class Tuple implements Serializable {
      **/
 
     public static int compareTuples(Tuple left, Tuple right, int leftIndex, int rightIndex) {
-        Object leftdata = left.dataAt(leftIndex);
-        Object rightdata = right.dataAt(rightIndex);
-        if (leftdata instanceof Integer) {
-            return ((Integer) leftdata).compareTo((Integer) rightdata);
-        } else if (leftdata instanceof String) {
-            return ((String) leftdata).compareTo((String) rightdata);
-
-        } else if (leftdata instanceof Float) {
-            return ((Float) leftdata).compareTo((Float) rightdata);
-        } else {
-            System.out.println("Tuple: Unknown comparision of the tuples");
-            System.exit(1);
-            return 0;
+        int leftSlot = left.layout.slotOf(leftIndex);
+        int rightSlot = right.layout.slotOf(rightIndex);
+        switch (left.layout.typeOf(leftIndex)) {
+            case Attribute.INT:
+                return Integer.compare(left.ints[leftSlot], right.ints[rightSlot]);
+            case Attribute.STRING:
+                String leftValue = left.strings[leftSlot];
+                String rightValue = right.strings[rightSlot];
+                // values decoded from the same dictionary are the same instance
+                return leftValue == rightValue ? 0 : leftValue.compareTo(rightValue);
+            case Attribute.REAL:
+                return Float.compare(left.floats[leftSlot], right.floats[rightSlot]);
+            default:
+                System.out.println("Tuple: Unknown comparision of the tuples");
+                System.exit(1);
+                return 0;
         }
     }
 
 
-}
-
-
-
-
-
-
-
-
+    /**
+     * The layout is written once per stream, followed by the raw column
+     * values. Tuples written before as a Vector of boxed values are
+     * recognized by their _data field on reading
+     **/
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("_data", null);
+        out.writeFields();
+        out.writeObject(layout);
+        for (int v : ints) {
+            out.writeInt(v);
+        }
+        for (float v : floats) {
+            out.writeFloat(v);
+        }
+        for (String v : strings) {
+            out.writeUTF(v);
+        }
+    }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Vector legacy = (Vector) fields.get("_data", null);
+        if (legacy != null) {
+            fromVector(legacy);
+            return;
+        }
+        Tuple t = allocate((TupleLayout) in.readObject());
+        for (int i = 0; i < t.ints.length; i++) {
+            t.ints[i] = in.readInt();
+        }
+        for (int i = 0; i < t.floats.length; i++) {
+            t.floats[i] = in.readFloat();
+        }
+        for (int i = 0; i < t.strings.length; i++) {
+            t.strings[i] = in.readUTF();
+        }
+        layout = t.layout;
+        ints = t.ints;
+        floats = t.floats;
+        strings = t.strings;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Column layout of a tuple, shared by all the tuples of the same schema
+ **/
+
+package qp.utils;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tuples keep INT columns in an int[], REAL columns in a float[] and
+ * STRING columns in a String[]. The layout maps every column of the tuple
+ * to its type and to its slot in the array of that type.
+ *
+ * Layouts are interned by their column types, so tuples of the same shape
+ * share one instance and joining or projecting does not allocate new ones.
+ */
+public class TupleLayout implements Serializable {
+
+    /** Fixed so that files written by a build of this class can still
+     ** be read after it changes
+     **/
+    private static final long serialVersionUID = 7948807643432695567L;
+
+    private static final ConcurrentHashMap<String, TupleLayout> layouts = new ConcurrentHashMap<>();
+
+    private final int[] types;   // Attribute.INT / REAL / STRING of each column
+    private final int[] slots;   // index of each column in the array of its type
+    private final int numInts;
+    private final int numFloats;
+    private final int numStrings;
+
+    private final transient ConcurrentHashMap<TupleLayout, TupleLayout> joined = new ConcurrentHashMap<>();
+
+    private TupleLayout(int[] types) {
+        this.types = types;
+        this.slots = new int[types.length];
+        int ni = 0, nf = 0, ns = 0;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == Attribute.INT) {
+                slots[i] = ni++;
+            } else if (types[i] == Attribute.REAL) {
+                slots[i] = nf++;
+            } else if (types[i] == Attribute.STRING) {
+                slots[i] = ns++;
+            } else {
+                throw new RuntimeException("TupleLayout: Unknown attribute type " + types[i]);
+            }
+        }
+        numInts = ni;
+        numFloats = nf;
+        numStrings = ns;
+    }
+
+    /** The layout of tuples with the given column types **/
+
+    public static TupleLayout of(int[] types) {
+        StringBuilder key = new StringBuilder(types.length);
+        for (int type : types) {
+            key.append((char) ('0' + type));
+        }
+        TupleLayout layout = layouts.get(key.toString());
+        if (layout == null) {
+            layout = layouts.computeIfAbsent(key.toString(), k -> new TupleLayout(types.clone()));
+        }
+        return layout;
+    }
+
+    /** The layout of tuples of the given schema **/
+
+    public static TupleLayout of(Schema schema) {
+        int[] types = new int[schema.getNumCols()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = schema.typeOf(i);
+        }
+        return of(types);
+    }
+
+    public int getNumCols() {
+        return types.length;
+    }
+
+    public int typeOf(int col) {
+        return types[col];
+    }
+
+    public int slotOf(int col) {
+        return slots[col];
+    }
+
+    public int getNumInts() {
+        return numInts;
+    }
+
+    public int getNumFloats() {
+        return numFloats;
+    }
+
+    public int getNumStrings() {
+        return numStrings;
+    }
+
+    /** Layout of the tuple resulting from joining with right **/
+
+    public TupleLayout joinWith(TupleLayout right) {
+        TupleLayout result = joined.get(right);
+        if (result == null) {
+            int[] joinedTypes = new int[types.length + right.types.length];
+            System.arraycopy(types, 0, joinedTypes, 0, types.length);
+            System.arraycopy(right.types, 0, joinedTypes, types.length, right.types.length);
+            result = of(joinedTypes);
+            joined.put(right, result);
+        }
+        return result;
+    }
+
+    /** Layout of the tuple keeping only the columns at the given indexes **/
+
+    public TupleLayout project(int[] columns) {
+        int[] projected = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            projected[i] = types[columns[i]];
+        }
+        return of(projected);
+    }
+
+    /** Keep the layouts interned when tuples are read back from a file **/
+
+    private Object readResolve() throws ObjectStreamException {
+        return of(types);
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * In-memory hash table of tuples on one column
+ **/
+
+package qp.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tuples are keyed on the value of the column in its own type: the int of
+ * an INT column, the bits of the float of a REAL column, and the String
+ * of a STRING column, so building and probing the table does not box
+ * every column value through Tuple.dataAt.
+ */
+public class TupleTable {
+
+    private final int index;        // column the tuples are keyed on
+    private final boolean strings;  // the column is a STRING, otherwise an INT or REAL
+    private final Map<Integer, List<Tuple>> intTable = new HashMap<>();
+    private final Map<String, List<Tuple>> stringTable = new HashMap<>();
+
+    /** Table on the column at index, of the given Attribute type **/
+
+    public TupleTable(int index, int type) {
+        this.index = index;
+        this.strings = type == Attribute.STRING;
+    }
+
+    public void add(Tuple t) {
+        if (strings) {
+            stringTable.computeIfAbsent(t.getString(index), k -> new ArrayList<>()).add(t);
+        } else {
+            intTable.computeIfAbsent(intKey(t, index), k -> new ArrayList<>()).add(t);
+        }
+    }
+
+    /** Tuples whose column equals the column at probeIndex of the
+     ** probe tuple, null if there are none
+     **/
+
+    public List<Tuple> get(Tuple probe, int probeIndex) {
+        if (strings) {
+            return stringTable.get(probe.getString(probeIndex));
+        }
+        return intTable.get(intKey(probe, probeIndex));
+    }
+
+    public boolean isEmpty() {
+        return intTable.isEmpty() && stringTable.isEmpty();
+    }
+
+    public void clear() {
+        intTable.clear();
+        stringTable.clear();
+    }
+
+    /** Hash code of the column at index, the same as that of its boxed value **/
+
+    public static int hash(Tuple t, int index) {
+        if (t.typeAt(index) == Attribute.STRING) {
+            return t.getString(index).hashCode();
+        }
+        return intKey(t, index);
+    }
+
+    /** The int of an INT column, the bits of the float of a REAL column **/
+
+    private static int intKey(Tuple t, int index) {
+        if (t.typeAt(index) == Attribute.INT) {
+            return t.getInt(index);
+        }
+        return Float.floatToIntBits(t.getFloat(index));
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Smallest and largest value of every column in every page of a table
+ **/
+
+package qp.utils;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The zone map of table T is kept next to the table in T.zone, written
+ * by ConvertTxtToTbl along with the pages. A selection over a Scan can
+ * then skip every page whose range of the selected column cannot satisfy
+ * the condition, without reading it. Values are ordered as Select compares
+ * them, so that a skipped page never holds a tuple Select would keep.
+ */
+public class ZoneMap {
+
+    public static final int MAGIC = 0x51505A31;  // "QPZ1"
+
+    private Schema schema;
+    private int tuplesPerPage;
+    private int numTuples;
+    private List<Object[]> mins = new ArrayList<>();   // per page, per column
+    private List<Object[]> maxs = new ArrayList<>();
+
+
+    /** An empty zone map, filled in by add() as the table is written **/
+
+    public ZoneMap(Schema schema, int tuplesPerPage) {
+        this.schema = schema;
+        this.tuplesPerPage = tuplesPerPage;
+        this.numTuples = 0;
+    }
+
+    public static String fileName(String tabname) {
+        return tabname + ".zone";
+    }
+
+    public static boolean exists(String tabname) {
+        return new File(fileName(tabname)).exists();
+    }
+
+    public int getNumTuples() {
+        return numTuples;
+    }
+
+    public int getTuplesPerPage() {
+        return tuplesPerPage;
+    }
+
+    public int getNumPages() {
+        return mins.size();
+    }
+
+
+    /** Extends the ranges of the page the tuple is written to **/
+
+    public void add(Tuple tuple) {
+        if (numTuples % tuplesPerPage == 0) {
+            mins.add(new Object[schema.getNumCols()]);
+            maxs.add(new Object[schema.getNumCols()]);
+        }
+        Object[] min = mins.get(mins.size() - 1);
+        Object[] max = maxs.get(maxs.size() - 1);
+        for (int i = 0; i < schema.getNumCols(); i++) {
+            Object value = tuple.dataAt(i);
+            if (min[i] == null || compare(value, min[i]) < 0) {
+                min[i] = value;
+            }
+            if (max[i] == null || compare(value, max[i]) > 0) {
+                max[i] = value;
+            }
+        }
+        numTuples++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object value, Object other) {
+        return ((Comparable) value).compareTo(other);
+    }
+
+
+    /** Whether some tuple of the page may satisfy the comparison
+     ** of column col with the value
+     **/
+
+    public boolean mayMatch(int page, int col, int exprtype, Object value) {
+        if (value instanceof Float && ((Float) value).isNaN()) {
+            return true;
+        }
+        int low = compare(mins.get(page)[col], value);
+        int high = compare(maxs.get(page)[col], value);
+        switch (exprtype) {
+            case Condition.EQUAL:
+                return low <= 0 && high >= 0;
+            case Condition.NOTEQUAL:
+                return low != 0 || high != 0;
+            case Condition.LESSTHAN:
+                return low < 0;
+            case Condition.LTOE:
+                return low <= 0;
+            case Condition.GREATERTHAN:
+                return high > 0;
+            case Condition.GTOE:
+                return high >= 0;
+            default:
+                return true;
+        }
+    }
+
+
+    /** Storing **/
+
+    public void write(String filename) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+        out.writeInt(MAGIC);
+        out.writeInt(tuplesPerPage);
+        out.writeInt(numTuples);
+        out.writeInt(schema.getNumCols());
+        for (int p = 0; p < mins.size(); p++) {
+            for (int i = 0; i < schema.getNumCols(); i++) {
+                writeValue(out, schema.typeOf(i), mins.get(p)[i]);
+                writeValue(out, schema.typeOf(i), maxs.get(p)[i]);
+            }
+        }
+        out.close();
+    }
+
+    public static ZoneMap read(String filename, Schema schema) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("ZoneMap: Not a zone map file " + filename);
+            }
+            ZoneMap zones = new ZoneMap(schema, in.readInt());
+            zones.numTuples = in.readInt();
+            if (in.readInt() != schema.getNumCols()) {
+                throw new IOException("ZoneMap: Zone map does not match the schema " + filename);
+            }
+            int numPages = (zones.numTuples + zones.tuplesPerPage - 1) / zones.tuplesPerPage;
+            for (int p = 0; p < numPages; p++) {
+                Object[] min = new Object[schema.getNumCols()];
+                Object[] max = new Object[schema.getNumCols()];
+                for (int i = 0; i < schema.getNumCols(); i++) {
+                    min[i] = readValue(in, schema.typeOf(i));
+                    max[i] = readValue(in, schema.typeOf(i));
+                }
+                zones.mins.add(min);
+                zones.maxs.add(max);
+            }
+            return zones;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, int type, Object value) throws IOException {
+        if (type == Attribute.INT) {
+            out.writeInt((Integer) value);
+        } else if (type == Attribute.REAL) {
+            out.writeFloat((Float) value);
+        } else {
+            out.writeUTF((String) value);
+        }
+    }
+
+    private static Object readValue(DataInputStream in, int type) throws IOException {
+        if (type == Attribute.INT) {
+            return in.readInt();
+        } else if (type == Attribute.REAL) {
+            return in.readFloat();
+        } else {
+            return in.readUTF();
+        }
+    }
+}